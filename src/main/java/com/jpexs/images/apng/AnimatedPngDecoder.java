@@ -2,24 +2,33 @@ package com.jpexs.images.apng;
 
 import com.jpexs.images.apng.data.AnimatedPngData;
 import com.jpexs.images.apng.data.AnimationFrameData;
-import com.jpexs.images.apng.chunks.Actl;
 import com.jpexs.images.apng.chunks.Chunk;
 import com.jpexs.images.apng.chunks.Fctl;
-import com.jpexs.images.apng.chunks.Fdat;
 import com.jpexs.images.apng.chunks.Idat;
 import com.jpexs.images.apng.chunks.Iend;
 import com.jpexs.images.apng.chunks.Ihdr;
-import java.awt.AlphaComposite;
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
+import com.jpexs.images.apng.chunks.Plte;
+import com.jpexs.images.apng.chunks.Trns;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import javax.imageio.ImageIO;
 
 /**
@@ -44,6 +53,7 @@ import javax.imageio.ImageIO;
  * @author JPEXS
  * @see AnimatedPngData
  * @see AnimatedPngEncoder
+ * @see ApngFrameReader
  */
 public class AnimatedPngDecoder {
 
@@ -62,96 +72,586 @@ public class AnimatedPngDecoder {
      *                     data is invalid
      */
     public static AnimatedPngData decode(InputStream is) throws IOException {
+        return decode(is, new DecodeOptions());
+    }
+
+    /**
+     * Decodes an Animated PNG from the given input stream with the specified
+     * options.
+     * <p>
+     * Pixels of the returned frames are borrowed from the buffer pool of the
+     * options. They can be returned to the pool when the frames are no longer
+     * used, see {@link AnimatedPngIcon#dispose()}.
+     * </p>
+     *
+     * @param is the input stream to read the PNG data from
+     * @param options the decoding options
+     * @return an {@link AnimatedPngData} object containing the decoded animation
+     * @throws IOException if an I/O error occurs during reading or if the PNG
+     *                     data is invalid
+     */
+    public static AnimatedPngData decode(InputStream is, DecodeOptions options) throws IOException {
+        return decode(new ApngFrameReader(is, options), options);
+    }
+
+    /**
+     * Decodes an Animated PNG file.
+     * <p>
+     * The file is memory-mapped, chunk data is read directly from the mapped
+     * buffer without copying it to the heap.
+     * </p>
+     *
+     * @param path the path of the PNG file
+     * @return an {@link AnimatedPngData} object containing the decoded animation
+     * @throws IOException if an I/O error occurs during reading or if the PNG
+     *                     data is invalid
+     */
+    public static AnimatedPngData decode(Path path) throws IOException {
+        return decode(path, new DecodeOptions());
+    }
+
+    /**
+     * Decodes an Animated PNG file with the specified options.
+     * <p>
+     * The file is memory-mapped as in {@link #decode(Path)}.
+     * </p>
+     *
+     * @param path the path of the PNG file
+     * @param options the decoding options
+     * @return an {@link AnimatedPngData} object containing the decoded animation
+     * @throws IOException if an I/O error occurs during reading or if the PNG
+     *                     data is invalid
+     */
+    public static AnimatedPngData decode(Path path, DecodeOptions options) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return decode(createReader(channel, options), options);
+        }
+    }
+
+    /**
+     * Decodes an Animated PNG from a file channel.
+     * <p>
+     * The channel is memory-mapped from its current position to its end, chunk
+     * data is read directly from the mapped buffer without copying it to the
+     * heap. Files larger than 2 GB are read as a stream.
+     * </p>
+     *
+     * @param channel the file channel to read the PNG data from
+     * @return an {@link AnimatedPngData} object containing the decoded animation
+     * @throws IOException if an I/O error occurs during reading or if the PNG
+     *                     data is invalid
+     */
+    public static AnimatedPngData decode(FileChannel channel) throws IOException {
+        DecodeOptions options = new DecodeOptions();
+        return decode(createReader(channel, options), options);
+    }
+
+    private static ApngFrameReader createReader(FileChannel channel, DecodeOptions options) throws IOException {
+        long position = channel.position();
+        long size = channel.size() - position;
+        if (size > Integer.MAX_VALUE) {
+            return new ApngFrameReader(Channels.newInputStream(channel), options);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return new ApngFrameReader(buffer, options);
+    }
+
+    /**
+     * Decodes an Animated PNG from the given input stream, decoding frames in
+     * parallel.
+     * <p>
+     * Inflating and unfiltering of frame data is submitted to the executor,
+     * only compositing of the decoded frames runs in the calling thread in
+     * frame order.
+     * </p>
+     *
+     * @param is the input stream to read the PNG data from
+     * @param executor the executor to decode frames on, for example a
+     *     {@link ForkJoinPool}
+     * @return an {@link AnimatedPngData} object containing the decoded animation
+     * @throws IOException if an I/O error occurs during reading or if the PNG
+     *                     data is invalid
+     */
+    public static AnimatedPngData decode(InputStream is, Executor executor) throws IOException {
+        DecodeOptions options = new DecodeOptions();
+        return decode(new ApngFrameReader(is, options), options, executor);
+    }
+
+    /**
+     * Decodes an Animated PNG file, decoding frames in parallel.
+     * <p>
+     * The file is memory-mapped as in {@link #decode(Path)}, inflating and
+     * unfiltering of frame data is submitted to the executor.
+     * </p>
+     *
+     * @param path the path of the PNG file
+     * @param executor the executor to decode frames on, for example a
+     *     {@link ForkJoinPool}
+     * @return an {@link AnimatedPngData} object containing the decoded animation
+     * @throws IOException if an I/O error occurs during reading or if the PNG
+     *                     data is invalid
+     */
+    public static AnimatedPngData decode(Path path, Executor executor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            DecodeOptions options = new DecodeOptions();
+            return decode(createReader(channel, options), options, executor);
+        }
+    }
+
+    /**
+     * Decodes an Animated PNG from the given input stream asynchronously.
+     * <p>
+     * Decoding runs on the executor and the calling thread is not blocked.
+     * Cancellation of the returned future is checked between chunks, after
+     * cancelling or completing the future by other means (for example on a
+     * timeout), decoding stops at the next chunk and its buffers are released.
+     * The stream is not closed.
+     * </p>
+     *
+     * @param is the input stream to read the PNG data from
+     * @param executor the executor to decode on
+     * @return the future of the decoded animation, completed exceptionally
+     *     with {@link IOException} if the PNG data is invalid
+     */
+    public static CompletableFuture<AnimatedPngData> decodeAsync(InputStream is, Executor executor) {
+        return decodeAsync(is, new DecodeOptions(), executor);
+    }
+
+    /**
+     * Decodes an Animated PNG from the given input stream asynchronously with
+     * the specified options.
+     *
+     * @param is the input stream to read the PNG data from
+     * @param options the decoding options
+     * @param executor the executor to decode on
+     * @return the future of the decoded animation
+     * @see #decodeAsync(InputStream, Executor)
+     */
+    public static CompletableFuture<AnimatedPngData> decodeAsync(InputStream is, DecodeOptions options, Executor executor) {
+        return AsyncTask.submit(executor, task -> {
+            ApngFrameReader reader = new ApngFrameReader(is, options);
+            reader.setTask(task);
+            return decode(reader, options);
+        });
+    }
+
+    /**
+     * Decodes an Animated PNG file asynchronously.
+     * <p>
+     * The file is opened and memory-mapped as in {@link #decode(Path)} on the
+     * executor, cancellation behaves as in
+     * {@link #decodeAsync(InputStream, Executor)}.
+     * </p>
+     *
+     * @param path the path of the PNG file
+     * @param executor the executor to decode on
+     * @return the future of the decoded animation
+     */
+    public static CompletableFuture<AnimatedPngData> decodeAsync(Path path, Executor executor) {
+        return decodeAsync(path, new DecodeOptions(), executor);
+    }
+
+    /**
+     * Decodes an Animated PNG file asynchronously with the specified options.
+     *
+     * @param path the path of the PNG file
+     * @param options the decoding options
+     * @param executor the executor to decode on
+     * @return the future of the decoded animation
+     * @see #decodeAsync(Path, Executor)
+     */
+    public static CompletableFuture<AnimatedPngData> decodeAsync(Path path, DecodeOptions options, Executor executor) {
+        return AsyncTask.submit(executor, task -> {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ApngFrameReader reader = createReader(channel, options);
+                reader.setTask(task);
+                return decode(reader, options);
+            }
+        });
+    }
+
+    /**
+     * Decodes single frame of an Animated PNG from the given input stream.
+     * <p>
+     * Only the frames the requested frame depends on are decoded. Frames
+     * before its key frame, frames disposed before it and frames fully covered
+     * by later frames are not inflated at all. Frames are composited on a
+     * single canvas and the stream is read only up to the requested frame.
+     * </p>
+     *
+     * @param is the input stream to read the PNG data from
+     * @param frame the index of the frame
+     * @return the frame
+     * @throws IOException if an I/O error occurs during reading or if the PNG
+     *                     data is invalid
+     * @throws IndexOutOfBoundsException if the PNG does not contain the frame
+     */
+    public static AnimationFrameData decodeFrame(InputStream is, int frame) throws IOException {
+        return decodeFrame(is, frame, new DecodeOptions());
+    }
+
+    /**
+     * Decodes single frame of an Animated PNG from the given input stream with
+     * the specified options.
+     *
+     * @param is the input stream to read the PNG data from
+     * @param frame the index of the frame
+     * @param options the decoding options
+     * @return the frame
+     * @throws IOException if an I/O error occurs during reading or if the PNG
+     *                     data is invalid
+     * @throws IndexOutOfBoundsException if the PNG does not contain the frame
+     * @see #decodeFrame(InputStream, int)
+     */
+    public static AnimationFrameData decodeFrame(InputStream is, int frame, DecodeOptions options) throws IOException {
+        return decodeFrame(new ApngFrameReader(is, options), frame);
+    }
+
+    /**
+     * Decodes single frame of an Animated PNG file.
+     *
+     * @param path the path of the PNG file
+     * @param frame the index of the frame
+     * @return the frame
+     * @throws IOException if an I/O error occurs during reading or if the PNG
+     *                     data is invalid
+     * @throws IndexOutOfBoundsException if the PNG does not contain the frame
+     * @see #decodeFrame(InputStream, int)
+     */
+    public static AnimationFrameData decodeFrame(Path path, int frame) throws IOException {
+        return decodeFrame(path, frame, new DecodeOptions());
+    }
+
+    /**
+     * Decodes single frame of an Animated PNG file with the specified options.
+     *
+     * @param path the path of the PNG file
+     * @param frame the index of the frame
+     * @param options the decoding options
+     * @return the frame
+     * @throws IOException if an I/O error occurs during reading or if the PNG
+     *                     data is invalid
+     * @throws IndexOutOfBoundsException if the PNG does not contain the frame
+     * @see #decodeFrame(InputStream, int)
+     */
+    public static AnimationFrameData decodeFrame(Path path, int frame, DecodeOptions options) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return decodeFrame(createReader(channel, options), frame);
+        }
+    }
+
+    private static AnimationFrameData decodeFrame(ApngFrameReader reader, int frame) throws IOException {
+        if (frame < 0) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " out of range");
+        }
+        //frames from the key frame on, earlier frames are not needed
+        List<EncodedFrame> encodedFrames = new ArrayList<>();
+        KeyFrameTracker keyFrames = new KeyFrameTracker(reader.getWidth(), reader.getHeight());
+        int keyFrame = 0;
+        int frameCount = 0;
+        while (frameCount <= frame) {
+            EncodedFrame encodedFrame = reader.readEncodedFrame();
+            if (encodedFrame == null) {
+                throw new IndexOutOfBoundsException("Frame " + frame + " out of range 0-" + (frameCount - 1));
+            }
+            int newKeyFrame = keyFrames.addFrame(encodedFrame.fctl);
+            if (newKeyFrame > keyFrame) {
+                encodedFrames.subList(0, newKeyFrame - keyFrame).clear();
+                keyFrame = newKeyFrame;
+            }
+            encodedFrames.add(encodedFrame);
+            frameCount++;
+        }
+
+        FrameDecoder frameDecoder = reader.getFrameDecoder();
+        BufferPool pool = frameDecoder.getBufferPool();
+        int width = frameDecoder.getCanvasWidth();
+        int height = frameDecoder.getCanvasHeight();
+        int[] canvas = new int[width * height];
+        Fctl frameFctl = encodedFrames.get(frame - keyFrame).fctl;
+        for (int i = keyFrame; i <= frame; i++) {
+            EncodedFrame encodedFrame = encodedFrames.get(i - keyFrame);
+            //release compressed data as soon as possible
+            encodedFrames.set(i - keyFrame, null);
+            Fctl fctl = encodedFrame.fctl;
+            FrameRegion region = frameDecoder.getRegion(fctl);
+            if (i < frame && !isVisible(encodedFrames, keyFrame, fctl, i, frame)) {
+                if (KeyFrameTracker.getEffectiveDisposeOp(fctl, i) == Fctl.DISPOSE_OP_BACKGROUND) {
+                    FrameCompositor.fillRegion(canvas, width, region.x, region.y, region.width, region.height, 0);
+                }
+                continue;
+            }
+            int[] subFramePixels = FrameCompositor.getArgbPixels(reader.decodeSubFrame(encodedFrame));
+            FrameCompositor.drawFrame(canvas, width, subFramePixels, region.x, region.y, region.width, region.height, fctl.getBlendOp());
+            pool.returnInts(subFramePixels);
+        }
+        return new AnimationFrameData(FrameCompositor.createArgbImage(canvas, width, height), frameFctl.getDelayNum(), frameFctl.getDelayDen());
+    }
+
+    /**
+     * Checks whether pixels of the frame can be seen in the last frame. Frames
+     * disposed to background or previous are not, and neither are frames
+     * whose region is overwritten by a later frame with source blending. The
+     * list of frames starts with the frame at index firstFrame.
+     */
+    private static boolean isVisible(List<EncodedFrame> encodedFrames, int firstFrame, Fctl fctl, int index, int lastFrame) {
+        if (KeyFrameTracker.getEffectiveDisposeOp(fctl, index) != Fctl.DISPOSE_OP_NONE) {
+            return false;
+        }
+        for (int i = index + 1; i <= lastFrame; i++) {
+            Fctl later = encodedFrames.get(i - firstFrame).fctl;
+            if (later.getBlendOp() == Fctl.BLEND_OP_SOURCE
+                    && (i == lastFrame || later.getDisposeOp() != Fctl.DISPOSE_OP_PREVIOUS)
+                    && later.getxOffset() <= fctl.getxOffset()
+                    && later.getyOffset() <= fctl.getyOffset()
+                    && later.getxOffset() + later.getWidth() >= fctl.getxOffset() + fctl.getWidth()
+                    && later.getyOffset() + later.getHeight() >= fctl.getyOffset() + fctl.getHeight()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static AnimatedPngData decode(ApngFrameReader reader, DecodeOptions options) throws IOException {
+        reader.setRetainingFrames(true);
+        if (options.getFrameStorage() == FrameStorage.COMPRESSED) {
+            return decodeCompressed(reader, options);
+        }
+        IndexedFrameCompositor indexedCompositor = createIndexedCompositor(reader, options);
+        if (indexedCompositor != null) {
+            return decodeIndexed(reader, options, indexedCompositor);
+        }
+        SparseFrameStore store = createStore(reader, options);
         List<AnimationFrameData> frames = new ArrayList<>();
-        Png png = new Png(is);
-
-        int width = 0;
-        int height = 0;
-        int numPlays = 0;
-
-        Ihdr hdr = null;
-        Actl actl = null;
-        Fctl fctl = null;
-        List<Chunk> otherChunks = new ArrayList<>();
-        BufferedImage outputBuffer = null;
-        Idat idat = null;
-        for (Chunk chunk : png.getChunks()) {
-            if (chunk instanceof Ihdr) {
-                hdr = (Ihdr) chunk;
-                outputBuffer = new BufferedImage((int) hdr.getWidth(), (int) hdr.getHeight(), BufferedImage.TYPE_INT_ARGB);
-                Graphics g = outputBuffer.getGraphics();
-                g.setColor(new Color(0, 0, 0, 0));
-                g.fillRect(0, 0, outputBuffer.getWidth(), outputBuffer.getHeight());
-                width = (int) hdr.getWidth();
-                height = (int) hdr.getHeight();
-            } else if (chunk instanceof Idat) {
-                idat = (Idat) chunk;
-            } else if (chunk instanceof Fctl) {
-                fctl = (Fctl) chunk;
-            } else if (chunk instanceof Fdat) {
-                Fdat fdat = (Fdat) chunk;
-                Png outPng = new Png();
-                outPng.addChunk(new Ihdr(fctl.getWidth(), fctl.getHeight(), hdr.getBitDepth(), hdr.getColorType(), hdr.getCompressionMethod(), hdr.getFilterMethod(), hdr.getInterlaceMethod()));
-                outPng.addAllChunks(otherChunks);
-                outPng.addChunk(new Idat(fdat.getFrameData()));
-                outPng.addChunk(new Iend());
-
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                outPng.writeTo(baos);
-                BufferedImage subFrame = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
-                BufferedImage newImage = new BufferedImage((int) hdr.getWidth(), (int) hdr.getHeight(), BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g = newImage.createGraphics();
-                g.setComposite(AlphaComposite.Src);
-                g.drawImage(outputBuffer, 0, 0, null);
-                g.setComposite(fctl.getBlendOp() == Fctl.BLEND_OP_SOURCE ? AlphaComposite.Src : AlphaComposite.SrcOver);
-                g.drawImage(subFrame,
-                        (int) fctl.getxOffset(), (int) fctl.getyOffset(), (int) fctl.getxOffset() + (int) fctl.getWidth(), (int) fctl.getyOffset() + (int) fctl.getHeight(),
-                        0, 0, (int) fctl.getWidth(), (int) fctl.getHeight(), null
-                );
-
-                switch (fctl.getDisposeOp()) {
-                    case Fctl.DISPOSE_OP_NONE:
-                        outputBuffer = newImage;
-                        break;
-                    case Fctl.DISPOSE_OP_BACKGROUND:
-                        outputBuffer = new BufferedImage((int) hdr.getWidth(), (int) hdr.getHeight(), BufferedImage.TYPE_INT_ARGB);
-                        Graphics2D g2 = outputBuffer.createGraphics();
-                        g2.setComposite(AlphaComposite.Src);
-                        g2.setColor(new Color(0, 0, 0, 0));
-                        g2.fillRect(0, 0, outputBuffer.getWidth(), outputBuffer.getHeight());
-                        break;
-                    case Fctl.DISPOSE_OP_PREVIOUS:
+        try {
+            EncodedFrame encodedFrame;
+            while ((encodedFrame = reader.readEncodedFrame()) != null) {
+                frames.add(storeFrame(reader, options, store, encodedFrame, reader.decodeSubFrame(encodedFrame)));
+            }
+        } finally {
+            reader.releaseBuffers();
+        }
+        return new AnimatedPngData(reader.getCanvasWidth(), reader.getCanvasHeight(), reader.getNumPlays(), reader.getBackupImage(), frames);
+    }
+
+    private static AnimatedPngData decode(ApngFrameReader reader, DecodeOptions options, Executor executor) throws IOException {
+        reader.setRetainingFrames(true);
+        if (options.getFrameStorage() == FrameStorage.COMPRESSED) {
+            //nothing to decode in parallel
+            return decodeCompressed(reader, options);
+        }
+        IndexedFrameCompositor indexedCompositor = createIndexedCompositor(reader, options);
+        if (indexedCompositor != null) {
+            return decodeIndexed(reader, options, indexedCompositor);
+        }
+        SparseFrameStore store = createStore(reader, options);
+        int parallelism = executor instanceof ForkJoinPool
+                ? ((ForkJoinPool) executor).getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        //limit the number of decoded frames waiting for compositing
+        int maxPending = 2 * parallelism;
+
+        List<AnimationFrameData> frames = new ArrayList<>();
+        Deque<EncodedFrame> pendingFrames = new ArrayDeque<>();
+        Deque<CompletableFuture<BufferedImage>> pendingImages = new ArrayDeque<>();
+        boolean allRead = false;
+        try {
+            while (true) {
+                while (!allRead && pendingFrames.size() < maxPending) {
+                    EncodedFrame encodedFrame = reader.readEncodedFrame();
+                    if (encodedFrame == null) {
+                        allRead = true;
                         break;
+                    }
+                    pendingFrames.add(encodedFrame);
+                    pendingImages.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return reader.decodeSubFrame(encodedFrame);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }, executor));
+                }
+                if (pendingFrames.isEmpty()) {
+                    break;
+                }
+                BufferedImage subFrame = pendingImages.remove().join();
+                frames.add(storeFrame(reader, options, store, pendingFrames.remove(), subFrame));
+            }
+        } catch (CompletionException ex) {
+            //throw the same exceptions as the sequential decoding
+            Throwable cause = ex.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        } finally {
+            for (CompletableFuture<BufferedImage> future : pendingImages) {
+                //subframes decoded already are not composited
+                if (!future.cancel(false) && !future.isCompletedExceptionally()) {
+                    options.getBufferPool().returnInts(FrameCompositor.getArgbPixels(future.join()));
                 }
+            }
+            reader.releaseBuffers();
+        }
+        return new AnimatedPngData(reader.getCanvasWidth(), reader.getCanvasHeight(), reader.getNumPlays(), reader.getBackupImage(), frames);
+    }
+
+    private static AnimatedPngData decodeCompressed(ApngFrameReader reader, DecodeOptions options) throws IOException {
+        CompressedFrameStore store = reader.createCompressedStore();
+        List<AnimationFrameData> frames = new ArrayList<>();
+        EncodedFrame encodedFrame;
+        while ((encodedFrame = reader.readEncodedFrame()) != null) {
+            Fctl fctl = encodedFrame.fctl;
+            int index = store.addFrame(fctl, encodedFrame.data);
+            frames.add(new CompressedFrameData(store, index, fctl.getDelayNum(), fctl.getDelayDen()));
+        }
+        return new AnimatedPngData(reader.getCanvasWidth(), reader.getCanvasHeight(), reader.getNumPlays(), reader.getBackupImage(), frames);
+    }
+
+    /**
+     * Creates compositor in palette index space when the options ask for it
+     * and the image allows it.
+     */
+    private static IndexedFrameCompositor createIndexedCompositor(ApngFrameReader reader, DecodeOptions options) {
+        FrameDecoder frameDecoder = reader.getFrameDecoder();
+        if (!options.isPreservePalette()
+                || options.getFrameStorage() != FrameStorage.FULL
+                || !frameDecoder.isIndexed()
+                || frameDecoder.isScaled()) {
+            return null;
+        }
+        return IndexedFrameCompositor.create(frameDecoder.getCanvasWidth(), frameDecoder.getCanvasHeight(),
+                frameDecoder.getPalette(), frameDecoder.getPaletteSize());
+    }
 
-                frames.add(new AnimationFrameData(newImage, fctl.getDelayNum(), fctl.getDelayDen()));
-                fctl = null;
-            } else if (chunk instanceof Iend) {
-                break;
-            } else if (chunk instanceof Actl) {
-                actl = (Actl) chunk;
-                numPlays = (int) actl.getNumPlays();
-            } else {
-                otherChunks.add(chunk);
+    private static AnimatedPngData decodeIndexed(ApngFrameReader reader, DecodeOptions options, IndexedFrameCompositor compositor) throws IOException {
+        FrameDecoder frameDecoder = reader.getFrameDecoder();
+        List<AnimationFrameData> frames = new ArrayList<>();
+        EncodedFrame encodedFrame;
+        while ((encodedFrame = reader.readEncodedFrame()) != null) {
+            Fctl fctl = encodedFrame.fctl;
+            byte[] subFrame = frameDecoder.decodeIndices(fctl, encodedFrame.data);
+            BufferedImage image = compositor.addFrame(fctl, subFrame);
+            if (!encodedFrame.defaultImage
+                    || !reader.keepAsBackupImage(encodedFrame, compositor.createIndexedImage(subFrame, (int) fctl.getWidth(), (int) fctl.getHeight()))) {
+                options.getBufferPool().returnBytes(subFrame);
             }
+            frames.add(new AnimationFrameData(image, fctl.getDelayNum(), fctl.getDelayDen()));
         }
+        return new AnimatedPngData(reader.getCanvasWidth(), reader.getCanvasHeight(), reader.getNumPlays(), reader.getBackupImage(), frames);
+    }
 
-        BufferedImage backupImage = null;
-        if (frames.isEmpty()) {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            png.writeTo(baos);
-            backupImage = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
-        } else if (idat != null && hdr != null) {
-            Png newPng = new Png();
-            newPng.addChunk(hdr);
-            newPng.addAllChunks(otherChunks);
-            newPng.addChunk(idat);
-            newPng.addChunk(new Iend());
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            newPng.writeTo(baos);
-            backupImage = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
+    private static SparseFrameStore createStore(ApngFrameReader reader, DecodeOptions options) {
+        if (options.getFrameStorage() != FrameStorage.SPARSE) {
+            return null;
+        }
+        return new SparseFrameStore(reader.getCanvasWidth(), reader.getCanvasHeight(), options.getSnapshotInterval());
+    }
+
+    /**
+     * Composites decoded subframe and creates frame data according to the
+     * frame storage of the options.
+     */
+    private static AnimationFrameData storeFrame(
+            ApngFrameReader reader,
+            DecodeOptions options,
+            SparseFrameStore store,
+            EncodedFrame encodedFrame,
+            BufferedImage subFrame
+    ) {
+        Fctl fctl = encodedFrame.fctl;
+        if (store == null) {
+            AnimationFrameData frame = reader.compositeFrame(encodedFrame, subFrame);
+            return new AnimationFrameData(copyImage(frame.getImage(), options.getBufferPool()), frame.getDelayNumerator(), frame.getDelayDenominator());
         }
+        int[] subFramePixels = FrameCompositor.getArgbPixels(subFrame);
+        int index = store.addFrame(fctl, reader.getFrameDecoder().getRegion(fctl), subFramePixels);
+        if (!reader.keepAsBackupImage(encodedFrame, subFrame)) {
+            options.getBufferPool().returnInts(subFramePixels);
+        }
+        return new SparseFrameData(store, index, fctl.getDelayNum(), fctl.getDelayDen());
+    }
+
+    /**
+     * Copies an ARGB image to pixels borrowed from the pool.
+     */
+    static BufferedImage copyImage(BufferedImage image, BufferPool pool) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = FrameCompositor.getArgbPixels(image);
+        int[] copyPixels = pool.borrowInts(width * height);
+        System.arraycopy(pixels, 0, copyPixels, 0, width * height);
+        return FrameCompositor.createArgbImage(copyPixels, width, height);
+    }
 
-        return new AnimatedPngData(width, height, numPlays, backupImage, frames);
+    /**
+     * Decodes image data using the built-in raster decoder. Images it does not
+     * support are decoded by ImageIO with a standalone PNG built from the
+     * chunks.
+     */
+    static BufferedImage decodeImage(
+            Ihdr hdr,
+            Plte plte,
+            Trns trns,
+            List<Chunk> otherChunks,
+            int width,
+            int height,
+            List<ByteBuffer> data,
+            BufferPool pool
+    ) throws IOException {
+        if (PngRasterDecoder.isSupported(hdr)) {
+            return new PngRasterDecoder(hdr, plte, trns).decode(data, width, height, pool);
+        }
+        return decodeImageIO(hdr, otherChunks, width, height, data, pool);
+    }
+
+    /**
+     * Decodes image data with ImageIO using a standalone PNG built from the
+     * chunks.
+     */
+    static BufferedImage decodeImageIO(
+            Ihdr hdr,
+            List<Chunk> otherChunks,
+            int width,
+            int height,
+            List<ByteBuffer> data,
+            BufferPool pool
+    ) throws IOException {
+        int dataLength = 0;
+        for (ByteBuffer part : data) {
+            dataLength += part.remaining();
+        }
+        byte[] dataBytes = pool.borrowBytes(dataLength);
+        int dataPos = 0;
+        for (ByteBuffer part : data) {
+            ByteBuffer dup = part.duplicate();
+            int partLength = dup.remaining();
+            dup.get(dataBytes, dataPos, partLength);
+            dataPos += partLength;
+        }
+        Png outPng = new Png();
+        outPng.addChunk(new Ihdr(width, height, hdr.getBitDepth(), hdr.getColorType(), hdr.getCompressionMethod(), hdr.getFilterMethod(), hdr.getInterlaceMethod()));
+        outPng.addAllChunks(otherChunks);
+        outPng.addChunk(new Idat(ByteBuffer.wrap(dataBytes, 0, dataLength)));
+        outPng.addChunk(new Iend());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(dataLength + 1024);
+        try {
+            outPng.writeTo(baos);
+        } finally {
+            pool.returnBytes(dataBytes);
+        }
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
+        if (image == null) {
+            throw new IOException("Cannot decode image data");
+        }
+        return image;
     }
 }
@@ -17,6 +17,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import javax.imageio.ImageIO;
 
 /**
@@ -45,6 +47,12 @@ import javax.imageio.ImageIO;
  */
 public class AnimatedPngEncoder {
 
+    /**
+     * Only image data is taken from PNGs of the frames.
+     */
+    private static final ChunkFilter FRAME_CHUNKS = chunkType
+            -> chunkType == Idat.TYPE_CODE || chunkType == Iend.TYPE_CODE ? ChunkAction.PARSE : ChunkAction.SKIP;
+
     /**
      * Encodes the given animation data to an Animated PNG and writes it to the
      * output stream.
@@ -60,6 +68,34 @@ public class AnimatedPngEncoder {
      * @throws IOException if an I/O error occurs during writing
      */
     public static void encode(AnimatedPngData data, OutputStream os) throws IOException {
+        encode(data, os, null);
+    }
+
+    /**
+     * Encodes the given animation data asynchronously.
+     * <p>
+     * Encoding runs on the executor and the calling thread is not blocked.
+     * Cancellation of the returned future is checked between frames, after
+     * cancelling or completing the future by other means (for example on a
+     * timeout), encoding stops at the next frame and nothing is written. The
+     * output stream is not closed.
+     * </p>
+     *
+     * @param data the animation data to encode
+     * @param os the output stream to write the PNG data to
+     * @param executor the executor to encode on
+     * @return the future completed when the PNG is written, or exceptionally
+     *     with {@link IOException} on write error
+     * @see #encode(AnimatedPngData, OutputStream)
+     */
+    public static CompletableFuture<Void> encodeAsync(AnimatedPngData data, OutputStream os, Executor executor) {
+        return AsyncTask.submit(executor, task -> {
+            encode(data, os, task);
+            return null;
+        });
+    }
+
+    private static void encode(AnimatedPngData data, OutputStream os, AsyncTask<?> task) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         BufferedImage backupImage = data.getBackupImage();
         if (backupImage == null && data.hasFrames()) {
@@ -79,7 +115,7 @@ public class AnimatedPngEncoder {
             //Insert acTL after IHDR 
             for (int i = 0; i < targetChunks.size(); i++) {
                 Chunk chunk = targetChunks.get(i);
-                if (chunk instanceof Ihdr) {
+                if (chunk.getTypeCode() == Ihdr.TYPE_CODE) {
                     targetChunks.add(i + 1, new Actl(data.getFrameCount(), data.getNumPlays()));
                     break;
                 }
@@ -93,7 +129,7 @@ public class AnimatedPngEncoder {
             
             for (int i = 0; i < targetChunks.size(); i++) {
                 Chunk chunk = targetChunks.get(i);
-                if (chunk instanceof Idat) {
+                if (chunk.getTypeCode() == Idat.TYPE_CODE) {
                     if (firstIdatPos == -1) {
                         firstIdatPos = i;
                     }
@@ -113,6 +149,9 @@ public class AnimatedPngEncoder {
                 int i = lastIdatPos + 1; 
                 
                 for (; frame < data.getFrameCount(); frame++) {
+                    if (task != null) {
+                        task.checkCancelled();
+                    }
                     fdata = data.getFrame(frame);
                     targetChunks.add(i, new Fctl(sequenceNumber, data.getWidth(), data.getHeight(), 0, 0,
                             fdata.getDelayNumerator(), fdata.getDelayDenominator(), Fctl.DISPOSE_OP_BACKGROUND, Fctl.BLEND_OP_SOURCE));
@@ -121,10 +160,10 @@ public class AnimatedPngEncoder {
 
                     baos = new ByteArrayOutputStream();
                     ImageIO.write(fdata.getImage(), "PNG", baos);
-                    Png framePng = new Png(new ByteArrayInputStream(baos.toByteArray()));
+                    Png framePng = new Png(new ByteArrayInputStream(baos.toByteArray()), FRAME_CHUNKS);
                     for (int j = 0; j < framePng.getChunkCount(); j++) {
-                        if (framePng.getChunk(j) instanceof Idat) {
-                            targetChunks.add(i, new Fdat(sequenceNumber, framePng.getChunk(j).getData()));
+                        if (framePng.getChunk(j).getTypeCode() == Idat.TYPE_CODE) {
+                            targetChunks.add(i, new Fdat(sequenceNumber, ((Idat) framePng.getChunk(j)).getFrameDataBuffer()));
                             sequenceNumber++;
                             i++;
                         }
@@ -6,13 +6,14 @@ import java.awt.Component;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import javax.swing.Icon;
 
 /**
@@ -44,6 +45,12 @@ public class AnimatedPngIcon implements Icon {
      */
     private final AnimatedPngData apng;
 
+    /**
+     * Pool the frame pixels were borrowed from, null when the data was passed
+     * by the caller.
+     */
+    private BufferPool pool;
+
     /**
      * List of weak references to host components displaying this icon.
      */
@@ -69,6 +76,16 @@ public class AnimatedPngIcon implements Icon {
      */
     private int remainingNumPlays;
 
+    /**
+     * Whether frames are still being read.
+     */
+    private volatile boolean loading = false;
+
+    /**
+     * Error which stopped reading of frames.
+     */
+    private volatile IOException loadError;
+
     /**
      * Creates an AnimatedPngIcon from a file.
      *
@@ -76,9 +93,20 @@ public class AnimatedPngIcon implements Icon {
      * @throws IOException if an I/O error occurs during reading
      */
     public AnimatedPngIcon(File file) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file)) {
-            apng = AnimatedPngDecoder.decode(fis);
-        }
+        this(file, new DecodeOptions());
+    }
+
+    /**
+     * Creates an AnimatedPngIcon from a file with the specified decoding
+     * options.
+     *
+     * @param file the PNG file to load
+     * @param options the decoding options
+     * @throws IOException if an I/O error occurs during reading
+     */
+    public AnimatedPngIcon(File file, DecodeOptions options) throws IOException {
+        apng = AnimatedPngDecoder.decode(file.toPath(), options);
+        pool = options.getBufferPool();
     }
 
     /**
@@ -88,7 +116,104 @@ public class AnimatedPngIcon implements Icon {
      * @throws IOException if an I/O error occurs during reading
      */
     public AnimatedPngIcon(InputStream is) throws IOException {
-        apng = AnimatedPngDecoder.decode(is);
+        this(is, new DecodeOptions());
+    }
+
+    /**
+     * Creates an AnimatedPngIcon from an input stream with the specified
+     * decoding options.
+     *
+     * @param is the input stream to read the PNG data from
+     * @param options the decoding options
+     * @throws IOException if an I/O error occurs during reading
+     */
+    public AnimatedPngIcon(InputStream is, DecodeOptions options) throws IOException {
+        apng = AnimatedPngDecoder.decode(is, options);
+        pool = options.getBufferPool();
+    }
+
+    /**
+     * Creates an AnimatedPngIcon which is displayed while the input stream is
+     * still being read, for example on a slow network.
+     * <p>
+     * The constructor reads the PNG header and the default image, which is
+     * displayed first. Frames are then read by a task on the executor and the
+     * playback starts as they arrive. When the playback reaches a frame which
+     * has not arrived yet, it waits on the last arrived frame. Frames are
+     * stored as full images regardless of the frame storage of the options,
+     * and the limits count them so. The input stream is closed when all
+     * frames are read.
+     * </p>
+     *
+     * @param is the input stream to read the PNG data from
+     * @param options the decoding options
+     * @param executor the executor to read the frames on
+     * @throws IOException if an I/O error occurs during reading of the header
+     *     or the default image
+     */
+    public AnimatedPngIcon(InputStream is, DecodeOptions options, Executor executor) throws IOException {
+        DecodeOptions fullOptions = options.copy();
+        fullOptions.setFrameStorage(FrameStorage.FULL);
+        ApngFrameReader reader = new ApngFrameReader(is, fullOptions);
+        reader.setRetainingFrames(true);
+        apng = new AnimatedPngData(reader.getCanvasWidth(), reader.getCanvasHeight(), reader.getNumPlays(), reader.getBackupImage());
+        pool = options.getBufferPool();
+        loading = true;
+        executor.execute(() -> load(reader));
+    }
+
+    /**
+     * Reads frames and adds them to the animation as they arrive.
+     */
+    private void load(ApngFrameReader reader) {
+        BufferPool framePool = pool;
+        try {
+            AnimationFrameData frame;
+            while ((frame = reader.readFrame()) != null) {
+                BufferedImage image = AnimatedPngDecoder.copyImage(frame.getImage(), framePool);
+                synchronized (this) {
+                    if (pool == null) {
+                        //disposed
+                        framePool.returnInts(FrameCompositor.getArgbPixels(image));
+                        return;
+                    }
+                    apng.addFrame(new AnimationFrameData(image, frame.getDelayNumerator(), frame.getDelayDenominator()));
+                }
+            }
+        } catch (IOException ex) {
+            loadError = ex;
+        } catch (RuntimeException ex) {
+            //malformed data can fail in chunk parsing
+            loadError = new IOException(ex);
+        } finally {
+            loading = false;
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                //ignore
+            }
+        }
+    }
+
+    /**
+     * Checks whether all frames were read. Icons not created from an input
+     * stream with an executor are always loaded.
+     *
+     * @return {@code true} if no more frames will be added
+     */
+    public boolean isLoaded() {
+        return !loading;
+    }
+
+    /**
+     * Returns the error which stopped reading of frames. The frames read
+     * before the error are played. Runtime exceptions are wrapped in
+     * {@link IOException}.
+     *
+     * @return the error, or {@code null} if there was none
+     */
+    public IOException getLoadError() {
+        return loadError;
     }
 
     /**
@@ -126,10 +251,15 @@ public class AnimatedPngIcon implements Icon {
      */
     @Override
     public void paintIcon(Component c, Graphics g, int x, int y) {
-        BufferedImage img = apng.hasFrames() ? apng.getFrame(currentFrame).getImage() : apng.getBackupImage();
+        BufferedImage img;
+        int frameCount;
+        synchronized (this) {
+            img = apng.hasFrames() ? apng.getFrame(currentFrame).getImage() : apng.getBackupImage();
+            frameCount = apng.getFrameCount();
+        }
         g.drawImage(img, x, y, null);
 
-        if (apng.getFrameCount() > 1) {
+        if (loading || frameCount > 1) {
             registerHost(c);
             ensureRunning();
         }
@@ -175,10 +305,15 @@ public class AnimatedPngIcon implements Icon {
 
         long currentDelay = currentTime - startTime;
 
+        boolean stillLoading = loading;
+        List<AnimationFrameData> frames;
+        synchronized (this) {
+            frames = apng.getFrames();
+        }
         int f = 0;
         long t = 0;
         int newFrame = -1;
-        for (AnimationFrameData fr : apng.getFrames()) {
+        for (AnimationFrameData fr : frames) {
             long d = fr.getDelayInMs();
             if (currentDelay >= t && currentDelay <= t + d) {
                 newFrame = f;
@@ -187,7 +322,11 @@ public class AnimatedPngIcon implements Icon {
             t += d;
             f++;
         }
-        if (newFrame < 0) {
+        if (newFrame < 0 && stillLoading) {
+            //wait on the last arrived frame until the next one arrives
+            newFrame = Math.max(0, frames.size() - 1);
+            startTime = currentTime - t;
+        } else if (newFrame < 0) {
             if (remainingNumPlays > 0) {
                 remainingNumPlays--;
             }
@@ -240,4 +379,38 @@ public class AnimatedPngIcon implements Icon {
         }
     }
 
+    /**
+     * Stops the animation and returns pixels of the frames to the buffer pool
+     * they were decoded with.
+     * <p>
+     * The icon must not be painted afterwards, and its frames and their images
+     * must not be used after this method returns - their pixels may be reused
+     * by the next decoding with the same pool. Frames of
+     * {@link AnimatedPngData} passed to the constructor are not touched.
+     * </p>
+     */
+    public synchronized void dispose() {
+        stop();
+        hosts.clear();
+        if (pool == null) {
+            return;
+        }
+        for (AnimationFrameData frame : apng.getFrames()) {
+            if (frame instanceof CompressedFrameData) {
+                ((CompressedFrameData) frame).store.release();
+                continue;
+            }
+            if (frame instanceof SparseFrameData) {
+                //composited on demand, nothing borrowed
+                continue;
+            }
+            if (frame.getImage().getType() != BufferedImage.TYPE_INT_ARGB) {
+                //indexed frames are not pooled
+                continue;
+            }
+            pool.returnInts(FrameCompositor.getArgbPixels(frame.getImage()));
+        }
+        pool = null;
+    }
+
 }
@@ -0,0 +1,286 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Actl;
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Fctl;
+import com.jpexs.images.apng.chunks.Iend;
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.data.FrameIndexEntry;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of Animated PNG frames for random access.
+ * <p>
+ * The index records position and parameters of every fcTL chunk together with
+ * the nearest key frame - a frame before which the canvas is fully transparent
+ * or which fully redefines the canvas. Any frame can then be composited
+ * starting from its key frame, see {@link ApngFrameReader#seek(int)}.
+ * </p>
+ * <p>
+ * The index is built in a single pass over the file, image data chunks are
+ * skipped without inflating. It can be stored with {@link #writeTo} and loaded
+ * with {@link #readFrom} to be cached next to the file.
+ * </p>
+ *
+ * @author JPEXS
+ * @see ApngFrameReader
+ */
+public class ApngFrameIndex {
+
+    private static final byte[] MAGIC = "APNGIDX".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int VERSION = 1;
+
+    /**
+     * Length of the largest chunk which is read - fcTL.
+     */
+    private static final int MAX_READ_CHUNK_LENGTH = 26;
+
+    private final int width;
+
+    private final int height;
+
+    private final int numPlays;
+
+    /**
+     * Length of the indexed file up to the end of IEND chunk.
+     */
+    private final long sourceLength;
+
+    private final List<FrameIndexEntry> entries;
+
+    private ApngFrameIndex(int width, int height, int numPlays, long sourceLength, List<FrameIndexEntry> entries) {
+        this.width = width;
+        this.height = height;
+        this.numPlays = numPlays;
+        this.sourceLength = sourceLength;
+        this.entries = entries;
+    }
+
+    /**
+     * Builds the index by reading PNG from the input stream.
+     * <p>
+     * Contents of chunks other than IHDR, acTL and fcTL are skipped.
+     * </p>
+     *
+     * @param is the input stream positioned at the start of the PNG
+     * @return the frame index
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     */
+    public static ApngFrameIndex build(InputStream is) throws IOException {
+        PngInputStream pis = new PngInputStream(is);
+        byte[] signature = pis.readBytes(8);
+        if (!Arrays.equals(signature, Png.SIGNATURE)) {
+            throw new IOException("Invalid PNG signature");
+        }
+
+        Ihdr hdr = null;
+        Actl actl = null;
+        List<Fctl> fctls = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        while (true) {
+            long offset = pis.getPosition();
+            long length = pis.readUnsignedInt();
+            int chunkType = (int) pis.readUnsignedInt();
+            if (chunkType == Iend.TYPE_CODE) {
+                pis.skipBytes(length + 4);
+                break;
+            }
+            if (chunkType != Ihdr.TYPE_CODE && chunkType != Actl.TYPE_CODE && chunkType != Fctl.TYPE_CODE) {
+                pis.skipBytes(length + 4);
+                continue;
+            }
+            if (length > MAX_READ_CHUNK_LENGTH) {
+                throw new IOException("Invalid length " + length + " of chunk " + Chunk.toTypeString(chunkType));
+            }
+            ByteBuffer chunkData = ByteBuffer.wrap(pis.readBytes((int) length));
+            long crc = pis.readUnsignedInt();
+            long calculatedCrc = Crc.calculate(chunkType, chunkData);
+            if (crc != calculatedCrc) {
+                throw new IOException("Invalid CRC value: " + calculatedCrc + " expected but " + crc + " found in chunk of type " + Chunk.toTypeString(chunkType));
+            }
+            switch (chunkType) {
+                case Ihdr.TYPE_CODE:
+                    hdr = (Ihdr) PngInputStream.createChunk(chunkType, chunkData);
+                    break;
+                case Actl.TYPE_CODE:
+                    actl = (Actl) PngInputStream.createChunk(chunkType, chunkData);
+                    break;
+                case Fctl.TYPE_CODE:
+                    fctls.add((Fctl) PngInputStream.createChunk(chunkType, chunkData));
+                    offsets.add(offset);
+                    break;
+            }
+        }
+        if (hdr == null) {
+            throw new IOException("Missing IHDR chunk");
+        }
+
+        int width = (int) hdr.getWidth();
+        int height = (int) hdr.getHeight();
+        List<FrameIndexEntry> entries = new ArrayList<>();
+        KeyFrameTracker keyFrames = new KeyFrameTracker(width, height);
+        for (int i = 0; i < fctls.size(); i++) {
+            Fctl fctl = fctls.get(i);
+            int keyFrame = keyFrames.addFrame(fctl);
+            entries.add(new FrameIndexEntry(offsets.get(i), fctl.getSequenceNumber(),
+                    (int) fctl.getxOffset(), (int) fctl.getyOffset(), (int) fctl.getWidth(), (int) fctl.getHeight(),
+                    fctl.getDelayNum(), fctl.getDelayDen(), fctl.getDisposeOp(), fctl.getBlendOp(), keyFrame));
+        }
+
+        return new ApngFrameIndex(width, height, actl == null ? 0 : (int) actl.getNumPlays(), pis.getPosition(), entries);
+    }
+
+    /**
+     * Writes the index to the output stream.
+     *
+     * @param os the output stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream os) throws IOException {
+        DataOutputStream dos = new DataOutputStream(os);
+        dos.write(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(width);
+        dos.writeInt(height);
+        dos.writeInt(numPlays);
+        dos.writeLong(sourceLength);
+        dos.writeInt(entries.size());
+        for (FrameIndexEntry entry : entries) {
+            dos.writeLong(entry.getOffset());
+            dos.writeLong(entry.getSequenceNumber());
+            dos.writeInt(entry.getxOffset());
+            dos.writeInt(entry.getyOffset());
+            dos.writeInt(entry.getWidth());
+            dos.writeInt(entry.getHeight());
+            dos.writeShort(entry.getDelayNumerator());
+            dos.writeShort(entry.getDelayDenominator());
+            dos.writeByte(entry.getDisposeOp());
+            dos.writeByte(entry.getBlendOp());
+            dos.writeInt(entry.getKeyFrame());
+        }
+        dos.flush();
+    }
+
+    /**
+     * Reads the index previously written by {@link #writeTo}.
+     *
+     * @param is the input stream to read from
+     * @return the frame index
+     * @throws IOException if an I/O error occurs or the data is not a valid
+     *     index
+     */
+    public static ApngFrameIndex readFrom(InputStream is) throws IOException {
+        DataInputStream dis = new DataInputStream(is);
+        byte[] magic = new byte[MAGIC.length];
+        dis.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Invalid frame index signature");
+        }
+        int version = dis.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported frame index version " + version);
+        }
+        int width = dis.readInt();
+        int height = dis.readInt();
+        int numPlays = dis.readInt();
+        long sourceLength = dis.readLong();
+        int count = dis.readInt();
+        List<FrameIndexEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long offset = dis.readLong();
+            long sequenceNumber = dis.readLong();
+            int xOffset = dis.readInt();
+            int yOffset = dis.readInt();
+            int w = dis.readInt();
+            int h = dis.readInt();
+            int delayNumerator = dis.readUnsignedShort();
+            int delayDenominator = dis.readUnsignedShort();
+            int disposeOp = dis.readUnsignedByte();
+            int blendOp = dis.readUnsignedByte();
+            int keyFrame = dis.readInt();
+            if (keyFrame < 0 || keyFrame > i) {
+                throw new IOException("Invalid key frame " + keyFrame + " of frame " + i);
+            }
+            entries.add(new FrameIndexEntry(offset, sequenceNumber, xOffset, yOffset, w, h,
+                    delayNumerator, delayDenominator, disposeOp, blendOp, keyFrame));
+        }
+        return new ApngFrameIndex(width, height, numPlays, sourceLength, entries);
+    }
+
+    /**
+     * Returns the number of indexed frames.
+     *
+     * @return the frame count
+     */
+    public int getFrameCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the entry of the specified frame.
+     *
+     * @param index the frame index
+     * @return the frame entry
+     */
+    public FrameIndexEntry getEntry(int index) {
+        return entries.get(index);
+    }
+
+    /**
+     * Returns a copy of the list of frame entries.
+     *
+     * @return a new list containing all entries
+     */
+    public List<FrameIndexEntry> getEntries() {
+        return new ArrayList<>(entries);
+    }
+
+    /**
+     * Returns the image width.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the image height.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of times the animation should play.
+     *
+     * @return the number of plays (0 means infinite)
+     */
+    public int getNumPlays() {
+        return numPlays;
+    }
+
+    /**
+     * Returns the length of the indexed PNG data.
+     * <p>
+     * Can be used to check whether cached index still matches the file.
+     * </p>
+     *
+     * @return the length in bytes up to the end of the IEND chunk
+     */
+    public long getSourceLength() {
+        return sourceLength;
+    }
+}
@@ -0,0 +1,804 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Actl;
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Fctl;
+import com.jpexs.images.apng.chunks.Fdat;
+import com.jpexs.images.apng.chunks.Idat;
+import com.jpexs.images.apng.chunks.Iend;
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.chunks.Plte;
+import com.jpexs.images.apng.chunks.Trns;
+import com.jpexs.images.apng.data.AnimationFrameData;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pull-style reader of Animated PNG frames.
+ * <p>
+ * Unlike {@link AnimatedPngDecoder#decode(InputStream)}, this reader does not
+ * keep all frames in memory. Chunks are read from the stream on demand and
+ * each call of {@link #readFrame()} returns the next composited frame. Only
+ * the output canvas and the buffer needed for
+ * {@link Fctl#DISPOSE_OP_PREVIOUS} are kept alive, so memory usage does not
+ * depend on the number of frames.
+ * </p>
+ * <p>
+ * The image of the returned frame is the reader's canvas. It is valid only
+ * until the next call of {@link #readFrame()} or {@link #close()}, copy it if
+ * it needs to be retained.
+ * </p>
+ * <p>
+ * The canvas, subframes and scanline buffers are borrowed from the buffer pool
+ * of {@link DecodeOptions} and returned when no longer needed, so steady-state
+ * reading does not allocate pixel arrays.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ * </p>
+ * <pre>{@code
+ * try (ApngFrameReader reader = new ApngFrameReader(new FileInputStream("animation.png"))) {
+ *     AnimationFrameData frame;
+ *     while ((frame = reader.readFrame()) != null) {
+ *         // Process frame.getImage()
+ *     }
+ * }
+ * }</pre>
+ *
+ * @author JPEXS
+ * @see AnimatedPngDecoder
+ * @see ApngFrameIndex
+ */
+public class ApngFrameReader implements Closeable {
+
+    private PngChunkSource source;
+
+    /**
+     * Channel used for seeking, null when reading from a stream.
+     */
+    private SeekableByteChannel channel;
+
+    private ApngFrameIndex index;
+
+    private final DecodeOptions options;
+
+    private final BufferPool pool;
+
+    /**
+     * Decoder of frame data, created after the header is read.
+     */
+    private FrameDecoder frameDecoder;
+
+    private Ihdr hdr;
+    private Plte plte;
+    private Trns trns;
+    private Actl actl;
+
+    /**
+     * Chunks other than animation and image data chunks preceding image data.
+     */
+    private final List<Chunk> otherChunks = new ArrayList<>();
+
+    /**
+     * Compressed data of the default image.
+     */
+    private final List<ByteBuffer> idatData = new ArrayList<>();
+
+    private BufferedImage backupImage;
+
+    /**
+     * Chunk which was read ahead and not processed yet.
+     */
+    private Chunk pendingChunk;
+
+    private boolean ended = false;
+
+    /**
+     * fcTL chunk of the frame whose data is being collected.
+     */
+    private Fctl currentFctl;
+
+    /**
+     * Compressed data of the frame being collected.
+     */
+    private List<ByteBuffer> frameData = new ArrayList<>();
+
+    /**
+     * Whether the frame being collected is the default image.
+     */
+    private boolean currentIsDefaultImage = false;
+
+    /**
+     * fcTL chunk of the last returned frame.
+     */
+    private Fctl lastFctl;
+
+    private int frameIndex = -1;
+
+    private BufferedImage canvas;
+
+    /**
+     * Pixels of the canvas.
+     */
+    private int[] canvasPixels;
+
+    /**
+     * Saved region of the canvas for {@link Fctl#DISPOSE_OP_PREVIOUS}.
+     */
+    private int[] previousBuffer;
+
+    private final DecodeLimits limits;
+
+    /**
+     * Number of frames read so far, for limits.
+     */
+    private long frameCount = 0;
+
+    /**
+     * Number of frames counted to the inflated and retained size. Frames read
+     * again after seeking back are not counted twice.
+     */
+    private long countedFrames = 0;
+
+    /**
+     * Inflated size of frames read so far, for limits.
+     */
+    private long inflatedBytes = 0;
+
+    /**
+     * Estimated size of retained data, for limits.
+     */
+    private long retainedBytes = 0;
+
+    /**
+     * Whether decoded frames are retained according to the frame storage of
+     * the options.
+     */
+    private boolean retainingFrames = false;
+
+    /**
+     * Asynchronous task reading with this reader, null when not cancellable.
+     */
+    private AsyncTask<?> task;
+
+    /**
+     * Constructs a frame reader and reads the PNG header chunks up to the
+     * default image data.
+     *
+     * @param is the input stream to read the PNG data from
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     */
+    public ApngFrameReader(InputStream is) throws IOException {
+        this(is, new DecodeOptions());
+    }
+
+    /**
+     * Constructs a frame reader with the specified options and reads the PNG
+     * header chunks up to the default image data.
+     *
+     * @param is the input stream to read the PNG data from
+     * @param options the decoding options
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     */
+    public ApngFrameReader(InputStream is, DecodeOptions options) throws IOException {
+        this.options = options;
+        pool = options.getBufferPool();
+        limits = options.getLimits();
+        PngInputStream pis = new PngInputStream(is);
+        //compressed data is retained until decoded
+        pis.setMaxChunkLength(limits.getMaxRetainedBytes());
+        pis.setCrcPolicy(options.getCrcPolicy());
+        pis.setChunkFilter(options.getChunkFilter());
+        byte[] signature = pis.readBytes(8);
+        if (!Arrays.equals(signature, Png.SIGNATURE)) {
+            throw new IOException("Invalid PNG signature");
+        }
+        source = pis;
+        readHeader();
+    }
+
+    /**
+     * Constructs a frame reader of PNG data in a buffer, typically a
+     * memory-mapped file, and reads the PNG header chunks up to the default
+     * image data.
+     * <p>
+     * Image data is not copied from the buffer, it must not be modified while
+     * the reader is in use.
+     * </p>
+     *
+     * @param buffer the buffer containing the PNG data in its remaining bytes
+     * @throws IOException if the PNG data is invalid
+     */
+    public ApngFrameReader(ByteBuffer buffer) throws IOException {
+        this(buffer, new DecodeOptions());
+    }
+
+    /**
+     * Constructs a frame reader of PNG data in a buffer with the specified
+     * options and reads the PNG header chunks up to the default image data.
+     *
+     * @param buffer the buffer containing the PNG data in its remaining bytes
+     * @param options the decoding options
+     * @throws IOException if the PNG data is invalid
+     */
+    public ApngFrameReader(ByteBuffer buffer, DecodeOptions options) throws IOException {
+        this.options = options;
+        pool = options.getBufferPool();
+        limits = options.getLimits();
+        PngBufferReader reader = new PngBufferReader(buffer);
+        reader.setCrcPolicy(options.getCrcPolicy());
+        reader.setChunkFilter(options.getChunkFilter());
+        byte[] signature = reader.readBytes(8);
+        if (!Arrays.equals(signature, Png.SIGNATURE)) {
+            throw new IOException("Invalid PNG signature");
+        }
+        source = reader;
+        readHeader();
+    }
+
+    /**
+     * Constructs a frame reader over a seekable channel which allows random
+     * access to frames via {@link #seek(int)}.
+     * <p>
+     * The channel is positioned to its start and PNG header chunks are read.
+     * </p>
+     *
+     * @param channel the channel to read the PNG data from
+     * @param index the frame index of the PNG, see
+     *     {@link ApngFrameIndex#build(InputStream)}
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     */
+    public ApngFrameReader(SeekableByteChannel channel, ApngFrameIndex index) throws IOException {
+        this(channel, index, new DecodeOptions());
+    }
+
+    /**
+     * Constructs a frame reader over a seekable channel with the specified
+     * options.
+     *
+     * @param channel the channel to read the PNG data from
+     * @param index the frame index of the PNG
+     * @param options the decoding options
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     */
+    public ApngFrameReader(SeekableByteChannel channel, ApngFrameIndex index, DecodeOptions options) throws IOException {
+        this(Channels.newInputStream(channel.position(0)), options);
+        this.channel = channel;
+        this.index = index;
+    }
+
+    private void readHeader() throws IOException {
+        boolean idatStarted = false;
+        while (true) {
+            Chunk chunk = source.readChunk();
+            int chunkType = chunk.getTypeCode();
+            if (chunkType == Idat.TYPE_CODE) {
+                idatStarted = true;
+                idatData.add(((Idat) chunk).getFrameDataBuffer());
+                if (currentFctl != null) {
+                    //fcTL before IDAT - the default image is the first frame
+                    frameData.add(((Idat) chunk).getFrameDataBuffer());
+                    currentIsDefaultImage = true;
+                }
+                continue;
+            }
+            if (idatStarted || chunkType == Fdat.TYPE_CODE || chunkType == Iend.TYPE_CODE) {
+                pendingChunk = chunk;
+                break;
+            }
+            switch (chunkType) {
+                case Ihdr.TYPE_CODE:
+                    hdr = (Ihdr) chunk;
+                    DecodeLimits.check("Image area", hdr.getWidth() * hdr.getHeight(), limits.getMaxPixels());
+                    break;
+                case Actl.TYPE_CODE:
+                    actl = (Actl) chunk;
+                    DecodeLimits.check("Number of frames", actl.getNumFrames(), limits.getMaxFrames());
+                    break;
+                case Fctl.TYPE_CODE:
+                    currentFctl = (Fctl) chunk;
+                    break;
+                case Plte.TYPE_CODE:
+                    plte = (Plte) chunk;
+                    otherChunks.add(chunk);
+                    break;
+                case Trns.TYPE_CODE:
+                    trns = (Trns) chunk;
+                    otherChunks.add(chunk);
+                    break;
+                default:
+                    otherChunks.add(chunk);
+                    break;
+            }
+        }
+        if (hdr == null) {
+            throw new IOException("Missing IHDR chunk");
+        }
+        frameDecoder = new FrameDecoder(hdr, plte, trns, otherChunks, options);
+        //canvas and the buffer for dispose to previous
+        retainedBytes = 2 * getCanvasBytes();
+        DecodeLimits.check("Estimated retained size", retainedBytes, limits.getMaxRetainedBytes());
+    }
+
+    private long getCanvasBytes() {
+        return 4L * frameDecoder.getCanvasWidth() * frameDecoder.getCanvasHeight();
+    }
+
+    /**
+     * Checks limits before the frame is decoded and updates the estimated
+     * retained size.
+     */
+    private void checkLimits(Fctl fctl, List<ByteBuffer> data) throws DecodeLimitExceededException {
+        frameCount++;
+        DecodeLimits.check("Number of frames", frameCount, limits.getMaxFrames());
+        boolean counted = frameCount <= countedFrames;
+        if (!counted) {
+            countedFrames = frameCount;
+            inflatedBytes += PngRasterDecoder.getInflatedSize(hdr, fctl.getWidth(), fctl.getHeight());
+            DecodeLimits.check("Inflated size", inflatedBytes, limits.getMaxInflatedBytes());
+        }
+
+        long compressedBytes = 0;
+        for (ByteBuffer part : data) {
+            compressedBytes += part.remaining();
+        }
+        FrameRegion region = frameDecoder.getRegion(fctl);
+        long subFrameBytes = 4L * region.width * region.height;
+        long transientBytes = compressedBytes + subFrameBytes;
+        if (retainingFrames && options.getFrameStorage() == FrameStorage.COMPRESSED) {
+            //compressed data is retained, only the subframe is transient
+            transientBytes = subFrameBytes;
+        }
+        if (retainingFrames && !counted) {
+            switch (options.getFrameStorage()) {
+                case FULL:
+                    retainedBytes += getCanvasBytes();
+                    break;
+                case SPARSE:
+                    retainedBytes += subFrameBytes;
+                    if ((frameCount - 1) % options.getSnapshotInterval() == 0) {
+                        retainedBytes += getCanvasBytes();
+                    }
+                    break;
+                case COMPRESSED:
+                    retainedBytes += compressedBytes;
+                    break;
+            }
+        }
+        DecodeLimits.check("Estimated retained size", retainedBytes + transientBytes, limits.getMaxRetainedBytes());
+    }
+
+    /**
+     * Makes the limits count frames retained by the decoder according to the
+     * frame storage of the options.
+     *
+     * @param retainingFrames whether all decoded frames are retained
+     */
+    void setRetainingFrames(boolean retainingFrames) {
+        this.retainingFrames = retainingFrames;
+    }
+
+    private Chunk nextChunk() throws IOException {
+        if (task != null) {
+            task.checkCancelled();
+        }
+        if (pendingChunk != null) {
+            Chunk chunk = pendingChunk;
+            pendingChunk = null;
+            return chunk;
+        }
+        if (ended) {
+            return null;
+        }
+        return source.readChunk();
+    }
+
+    /**
+     * Reads and composites the next animation frame.
+     * <p>
+     * The image of the returned frame is the reader's canvas and it will be
+     * modified by the next call of this method.
+     * </p>
+     *
+     * @return the next frame, or {@code null} when there are no more frames
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     */
+    public AnimationFrameData readFrame() throws IOException {
+        EncodedFrame frame = readEncodedFrame();
+        if (frame == null) {
+            return null;
+        }
+        return compositeFrame(frame, decodeSubFrame(frame));
+    }
+
+    /**
+     * Reads chunks of the next frame without decoding them.
+     *
+     * @return the next frame, or {@code null} when there are no more frames
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     */
+    EncodedFrame readEncodedFrame() throws IOException {
+        Chunk chunk;
+        while ((chunk = nextChunk()) != null) {
+            switch (chunk.getTypeCode()) {
+                case Fctl.TYPE_CODE:
+                    EncodedFrame frame = takeCurrentFrame();
+                    currentFctl = (Fctl) chunk;
+                    if (frame != null) {
+                        return frame;
+                    }
+                    break;
+                case Fdat.TYPE_CODE:
+                    if (currentFctl != null) {
+                        frameData.add(((Fdat) chunk).getFrameDataBuffer());
+                    }
+                    break;
+                case Idat.TYPE_CODE:
+                    if (currentFctl != null) {
+                        frameData.add(((Idat) chunk).getFrameDataBuffer());
+                        currentIsDefaultImage = true;
+                    }
+                    break;
+                case Iend.TYPE_CODE:
+                    ended = true;
+                    break;
+            }
+        }
+        return takeCurrentFrame();
+    }
+
+    private EncodedFrame takeCurrentFrame() throws IOException {
+        Fctl fctl = currentFctl;
+        List<ByteBuffer> data = frameData;
+        boolean defaultImage = currentIsDefaultImage;
+        currentFctl = null;
+        frameData = new ArrayList<>();
+        currentIsDefaultImage = false;
+        if (fctl == null || data.isEmpty()) {
+            return null;
+        }
+        if (fctl.getxOffset() + fctl.getWidth() > getWidth() || fctl.getyOffset() + fctl.getHeight() > getHeight()) {
+            throw new IOException("Frame region " + fctl.getxOffset() + "," + fctl.getyOffset() + " " + fctl.getWidth() + "x" + fctl.getHeight() + " is outside of the image");
+        }
+        checkLimits(fctl, data);
+        return new EncodedFrame(fctl, data, defaultImage);
+    }
+
+    /**
+     * Decodes image data of the frame. This method does not modify the reader
+     * state and can be called from any thread.
+     *
+     * @param frame the frame to decode
+     * @return the decoded subframe image, its pixels are borrowed from the
+     *     buffer pool
+     * @throws IOException if the image data is invalid
+     */
+    BufferedImage decodeSubFrame(EncodedFrame frame) throws IOException {
+        return frameDecoder.decode(frame.fctl, frame.data);
+    }
+
+    /**
+     * Composites the specified frame.
+     * <p>
+     * Frames are composited starting from the nearest key frame recorded in
+     * the frame index. When the requested frame follows the current one and no
+     * key frame lies between them, reading simply continues forward.
+     * </p>
+     * <p>
+     * The image of the returned frame is the reader's canvas, subsequent
+     * {@link #readFrame()} calls continue with the following frame.
+     * </p>
+     *
+     * @param frame the index of the frame
+     * @return the composited frame
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     * @throws IllegalStateException if the reader was not created over a
+     *     seekable channel
+     * @throws IndexOutOfBoundsException if the frame index is out of range
+     */
+    public AnimationFrameData seek(int frame) throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("Seeking is available only for readers created with a channel and frame index");
+        }
+        if (frame < 0 || frame >= index.getFrameCount()) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " out of range 0-" + (index.getFrameCount() - 1));
+        }
+        if (frame == frameIndex) {
+            return new AnimationFrameData(canvas, lastFctl.getDelayNum(), lastFctl.getDelayDen());
+        }
+        int keyFrame = index.getEntry(frame).getKeyFrame();
+        if (frame < frameIndex || keyFrame > frameIndex + 1) {
+            channel.position(index.getEntry(keyFrame).getOffset());
+            PngInputStream pis = new PngInputStream(Channels.newInputStream(channel));
+            pis.setMaxChunkLength(limits.getMaxRetainedBytes());
+            pis.setCrcPolicy(options.getCrcPolicy());
+            pis.setChunkFilter(options.getChunkFilter());
+            source = pis;
+            pendingChunk = null;
+            ended = false;
+            currentFctl = null;
+            frameData = new ArrayList<>();
+            currentIsDefaultImage = false;
+            lastFctl = null;
+            frameIndex = keyFrame - 1;
+            frameCount = keyFrame;
+            if (canvasPixels != null) {
+                Arrays.fill(canvasPixels, 0);
+            }
+        }
+        AnimationFrameData ret = null;
+        while (frameIndex < frame) {
+            ret = readFrame();
+            if (ret == null) {
+                throw new IOException("Frame " + frame + " not found");
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Composites decoded subframe onto the canvas.
+     * <p>
+     * Pixels of the subframe are returned to the buffer pool afterwards,
+     * unless the subframe is kept as the default image.
+     * </p>
+     *
+     * @param frame the frame
+     * @param subFrame the decoded image of the frame
+     * @return the composited frame
+     */
+    AnimationFrameData compositeFrame(EncodedFrame frame, BufferedImage subFrame) {
+        Fctl fctl = frame.fctl;
+        int width = getCanvasWidth();
+        int height = getCanvasHeight();
+        boolean keepSubFrame = keepAsBackupImage(frame, subFrame);
+        if (canvas == null) {
+            canvasPixels = pool.borrowInts(width * height);
+            Arrays.fill(canvasPixels, 0, width * height, 0);
+            canvas = FrameCompositor.createArgbImage(canvasPixels, width, height);
+        }
+        if (lastFctl != null) {
+            disposeFrame(lastFctl);
+        }
+
+        FrameRegion region = frameDecoder.getRegion(fctl);
+        int x = region.x;
+        int y = region.y;
+        int w = region.width;
+        int h = region.height;
+
+        if (fctl.getDisposeOp() == Fctl.DISPOSE_OP_PREVIOUS) {
+            if (previousBuffer == null || previousBuffer.length < w * h) {
+                if (previousBuffer != null) {
+                    pool.returnInts(previousBuffer);
+                }
+                previousBuffer = pool.borrowInts(w * h);
+            }
+            FrameCompositor.saveRegion(canvasPixels, width, x, y, w, h, previousBuffer);
+        }
+
+        int[] subFramePixels = FrameCompositor.getArgbPixels(subFrame);
+        FrameCompositor.drawFrame(canvasPixels, width, subFramePixels, x, y, w, h, fctl.getBlendOp());
+        if (!keepSubFrame) {
+            pool.returnInts(subFramePixels);
+        }
+
+        lastFctl = fctl;
+        frameIndex++;
+        return new AnimationFrameData(canvas, fctl.getDelayNum(), fctl.getDelayDen());
+    }
+
+    /**
+     * Creates store for compressed data of the frames of this PNG.
+     *
+     * @return the frame store
+     */
+    CompressedFrameStore createCompressedStore() {
+        return new CompressedFrameStore(frameDecoder, options.getFrameCache());
+    }
+
+    /**
+     * Makes reading stop with {@link java.util.concurrent.CancellationException}
+     * once the task is cancelled. Cancellation is checked before every chunk.
+     *
+     * @param task the task
+     */
+    void setTask(AsyncTask<?> task) {
+        this.task = task;
+    }
+
+    /**
+     * Returns the decoder of frame data.
+     *
+     * @return the frame decoder
+     */
+    FrameDecoder getFrameDecoder() {
+        return frameDecoder;
+    }
+
+    /**
+     * Keeps decoded subframe as the default image when the frame comes from
+     * IDAT chunks, so it is not decoded again.
+     *
+     * @param frame the frame
+     * @param subFrame the decoded image of the frame
+     * @return {@code true} if the subframe was kept and must not be returned
+     *     to the buffer pool
+     */
+    boolean keepAsBackupImage(EncodedFrame frame, BufferedImage subFrame) {
+        if (frame.defaultImage && backupImage == null) {
+            backupImage = subFrame;
+            idatData.clear();
+            return true;
+        }
+        return false;
+    }
+
+    private void disposeFrame(Fctl fctl) {
+        FrameRegion region = frameDecoder.getRegion(fctl);
+        int x = region.x;
+        int y = region.y;
+        int w = region.width;
+        int h = region.height;
+        switch (fctl.getDisposeOp()) {
+            case Fctl.DISPOSE_OP_NONE:
+                break;
+            case Fctl.DISPOSE_OP_BACKGROUND:
+                FrameCompositor.fillRegion(canvasPixels, getCanvasWidth(), x, y, w, h, 0);
+                break;
+            case Fctl.DISPOSE_OP_PREVIOUS:
+                FrameCompositor.restoreRegion(canvasPixels, getCanvasWidth(), x, y, w, h, previousBuffer);
+                break;
+        }
+    }
+
+    /**
+     * Returns the default image of the PNG.
+     * <p>
+     * This is the image stored in IDAT chunks, displayed by viewers that do not
+     * support APNG.
+     * </p>
+     *
+     * @return the default image, or {@code null} if the PNG has no image data
+     * @throws IOException if the image data is invalid
+     */
+    public BufferedImage getBackupImage() throws IOException {
+        if (backupImage == null && !idatData.isEmpty()) {
+            backupImage = frameDecoder.decodeDefaultImage(idatData);
+            idatData.clear();
+        }
+        return backupImage;
+    }
+
+    /**
+     * Returns the fcTL chunk of the frame returned by the last call of
+     * {@link #readFrame()}.
+     *
+     * @return the frame control chunk, or {@code null} if no frame was read
+     *     yet
+     */
+    public Fctl getFrameControl() {
+        return lastFctl;
+    }
+
+    /**
+     * Returns the index of the frame returned by the last call of
+     * {@link #readFrame()}.
+     *
+     * @return the frame index, -1 if no frame was read yet
+     */
+    public int getFrameIndex() {
+        return frameIndex;
+    }
+
+    /**
+     * Returns the image header.
+     *
+     * @return the IHDR chunk
+     */
+    public Ihdr getHeader() {
+        return hdr;
+    }
+
+    /**
+     * Returns the image width.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return (int) hdr.getWidth();
+    }
+
+    /**
+     * Returns the image height.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return (int) hdr.getHeight();
+    }
+
+    /**
+     * Returns the width of the returned frame images.
+     *
+     * @return the width in pixels, smaller than {@link #getWidth()} when the
+     *     target size of {@link DecodeOptions} is set
+     */
+    public int getCanvasWidth() {
+        return frameDecoder.getCanvasWidth();
+    }
+
+    /**
+     * Returns the height of the returned frame images.
+     *
+     * @return the height in pixels, smaller than {@link #getHeight()} when the
+     *     target size of {@link DecodeOptions} is set
+     */
+    public int getCanvasHeight() {
+        return frameDecoder.getCanvasHeight();
+    }
+
+    /**
+     * Checks whether the PNG contains animation control chunk.
+     *
+     * @return {@code true} if the PNG is animated
+     */
+    public boolean isAnimated() {
+        return actl != null;
+    }
+
+    /**
+     * Returns the number of frames declared in the acTL chunk.
+     *
+     * @return the number of frames, 0 when the PNG is not animated
+     */
+    public int getNumFrames() {
+        return actl == null ? 0 : (int) actl.getNumFrames();
+    }
+
+    /**
+     * Returns the number of times the animation should play.
+     *
+     * @return the number of plays (0 means infinite)
+     */
+    public int getNumPlays() {
+        return actl == null ? 0 : (int) actl.getNumPlays();
+    }
+
+    /**
+     * Returns the canvas and other pooled buffers to the buffer pool. The
+     * image of the last returned frame must not be used afterwards.
+     */
+    void releaseBuffers() {
+        if (canvasPixels != null) {
+            pool.returnInts(canvasPixels);
+            canvasPixels = null;
+            canvas = null;
+        }
+        if (previousBuffer != null) {
+            pool.returnInts(previousBuffer);
+            previousBuffer = null;
+        }
+    }
+
+    /**
+     * Closes the underlying input stream or channel and returns the canvas to
+     * the buffer pool.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        releaseBuffers();
+        source.close();
+    }
+}
@@ -0,0 +1,316 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Actl;
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Fctl;
+import com.jpexs.images.apng.chunks.Fdat;
+import com.jpexs.images.apng.chunks.Idat;
+import com.jpexs.images.apng.chunks.Iend;
+import com.jpexs.images.apng.chunks.Ihdr;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Basic information about a PNG or Animated PNG, obtained without decoding
+ * image data.
+ * <p>
+ * Only IHDR, acTL and fcTL chunks are read, contents of all other chunks are
+ * skipped. Non-animated PNGs are read only up to the first IDAT chunk.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ * </p>
+ * <pre>{@code
+ * ApngInfo info = ApngInfo.probe(Paths.get("animation.png"));
+ * if (info.isAnimated()) {
+ *     System.out.println(info.getFrameCount() + " frames, " + info.getTotalDurationInMs() + " ms");
+ * }
+ * }</pre>
+ *
+ * @author JPEXS
+ * @see AnimatedPngDecoder
+ */
+public class ApngInfo {
+
+    /**
+     * Length of the largest chunk which is read - fcTL.
+     */
+    private static final int MAX_READ_CHUNK_LENGTH = 26;
+
+    private int width;
+    private int height;
+    private int bitDepth;
+    private int colorType;
+    private int interlaceMethod;
+    private boolean animated;
+    private int numFrames;
+    private int numPlays;
+    private int frameCount;
+    private long totalDurationInMs;
+
+    /**
+     * Sum of areas of frame regions.
+     */
+    private long subFramePixels;
+
+    /**
+     * Length of compressed image data of frames.
+     */
+    private long frameDataBytes;
+
+    private ApngInfo() {
+    }
+
+    /**
+     * Reads information about the PNG file. CRC of skipped chunks is not
+     * checked.
+     *
+     * @param path the path of the PNG file
+     * @return the PNG information
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     */
+    public static ApngInfo probe(Path path) throws IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            return probe(is, false);
+        }
+    }
+
+    /**
+     * Reads information about the PNG from the input stream. CRC of skipped
+     * chunks is not checked.
+     * <p>
+     * The stream is read in blocks and may be read ahead beyond the last
+     * chunk which is needed.
+     * </p>
+     *
+     * @param is the input stream positioned at the start of the PNG
+     * @return the PNG information
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     */
+    public static ApngInfo probe(InputStream is) throws IOException {
+        return probe(is, false);
+    }
+
+    /**
+     * Reads information about the PNG from the input stream.
+     * <p>
+     * CRC of IHDR, acTL and fcTL chunks is always checked. When
+     * {@code verifyCrc} is {@code true}, contents of the other chunks are read
+     * instead of skipped and their CRC is checked too.
+     * </p>
+     *
+     * @param is the input stream positioned at the start of the PNG
+     * @param verifyCrc whether to check CRC of all chunks
+     * @return the PNG information
+     * @throws IOException if an I/O error occurs or the PNG data is invalid
+     */
+    public static ApngInfo probe(InputStream is, boolean verifyCrc) throws IOException {
+        PngInputStream pis = new PngInputStream(is);
+        byte[] signature = pis.readBytes(Png.SIGNATURE.length);
+        if (!Arrays.equals(signature, Png.SIGNATURE)) {
+            throw new IOException("Invalid PNG signature");
+        }
+
+        ApngInfo info = new ApngInfo();
+        byte[] chunkData = new byte[MAX_READ_CHUNK_LENGTH];
+        byte[] skipBuffer = null;
+        boolean headerFound = false;
+        while (true) {
+            long length = pis.readUnsignedInt();
+            int type = (int) pis.readUnsignedInt();
+            if (type == Ihdr.TYPE_CODE || type == Actl.TYPE_CODE || type == Fctl.TYPE_CODE) {
+                if (length > MAX_READ_CHUNK_LENGTH) {
+                    throw new IOException("Invalid length " + length + " of chunk " + Chunk.toTypeString(type));
+                }
+                pis.readBytes(chunkData, 0, (int) length);
+                ByteBuffer data = ByteBuffer.wrap(chunkData, 0, (int) length);
+                if (pis.readUnsignedInt() != Crc.calculate(type, data)) {
+                    throw new IOException("Invalid CRC value in chunk of type " + Chunk.toTypeString(type));
+                }
+                if (type == Ihdr.TYPE_CODE) {
+                    if (length < 13) {
+                        throw new IOException("Invalid IHDR chunk length " + length);
+                    }
+                    info.width = data.getInt(0);
+                    info.height = data.getInt(4);
+                    info.bitDepth = data.get(8) & 0xFF;
+                    info.colorType = data.get(9) & 0xFF;
+                    info.interlaceMethod = data.get(12) & 0xFF;
+                    headerFound = true;
+                } else if (type == Actl.TYPE_CODE) {
+                    if (length < 8) {
+                        throw new IOException("Invalid acTL chunk length " + length);
+                    }
+                    info.animated = true;
+                    info.numFrames = data.getInt(0);
+                    info.numPlays = data.getInt(4);
+                } else {
+                    if (length < 26) {
+                        throw new IOException("Invalid fcTL chunk length " + length);
+                    }
+                    info.subFramePixels += (data.getInt(4) & 0xFFFFFFFFL) * (data.getInt(8) & 0xFFFFFFFFL);
+                    int delayNum = data.getShort(20) & 0xFFFF;
+                    int delayDen = data.getShort(22) & 0xFFFF;
+                    info.frameCount++;
+                    info.totalDurationInMs += Math.round(delayNum * 1000 / (double) (delayDen == 0 ? 100 : delayDen));
+                }
+                continue;
+            }
+            if (!headerFound) {
+                throw new IOException("Missing IHDR chunk");
+            }
+            if (type == Iend.TYPE_CODE || (type == Idat.TYPE_CODE && !info.animated)) {
+                //acTL must precede IDAT, there is nothing more to read
+                break;
+            }
+            if (type == Fdat.TYPE_CODE) {
+                //without the sequence number
+                info.frameDataBytes += Math.max(0, length - 4);
+            } else if (type == Idat.TYPE_CODE && info.frameCount > 0) {
+                info.frameDataBytes += length;
+            }
+            if (!verifyCrc) {
+                pis.skipBytes(length + 4);
+                continue;
+            }
+            if (skipBuffer == null) {
+                skipBuffer = new byte[8192];
+            }
+            if (Crc.calculate(type, pis, length, skipBuffer) != pis.readUnsignedInt()) {
+                throw new IOException("Invalid CRC value in chunk of type " + Chunk.toTypeString(type));
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Returns the image width.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the image height.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the bit depth.
+     *
+     * @return the number of bits per sample or palette index
+     */
+    public int getBitDepth() {
+        return bitDepth;
+    }
+
+    /**
+     * Returns the color type, one of {@code Ihdr.COLOR_TYPE_*} constants.
+     *
+     * @return the color type
+     */
+    public int getColorType() {
+        return colorType;
+    }
+
+    /**
+     * Returns the interlace method.
+     *
+     * @return the interlace method, {@link Ihdr#INTERLACE_METHOD_ADAM7} for
+     *     interlaced images
+     */
+    public int getInterlaceMethod() {
+        return interlaceMethod;
+    }
+
+    /**
+     * Checks whether the PNG contains animation control chunk.
+     *
+     * @return {@code true} if the PNG is animated
+     */
+    public boolean isAnimated() {
+        return animated;
+    }
+
+    /**
+     * Returns the number of frames declared in the acTL chunk.
+     *
+     * @return the number of frames, 0 when the PNG is not animated
+     */
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * Returns the number of times the animation should play.
+     *
+     * @return the number of plays (0 means infinite)
+     */
+    public int getNumPlays() {
+        return numPlays;
+    }
+
+    /**
+     * Returns the number of fcTL chunks found.
+     *
+     * @return the frame count
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the sum of delays of all frames.
+     *
+     * @return the duration of single play in milliseconds
+     */
+    public long getTotalDurationInMs() {
+        return totalDurationInMs;
+    }
+
+    /**
+     * Estimates memory retained while decoding the image with the specified
+     * options: the canvas, the buffer for dispose to previous and the frames
+     * kept according to the frame storage of the options.
+     *
+     * @param options the decoding options
+     * @return the estimated size in bytes
+     */
+    public long estimateDecodedBytes(DecodeOptions options) {
+        long canvasBytes = 4L * width * height;
+        long frames = Math.max(1, frameCount);
+        long frameBytes;
+        switch (options.getFrameStorage()) {
+            case SPARSE:
+                long snapshots = (frames + options.getSnapshotInterval() - 1) / options.getSnapshotInterval();
+                frameBytes = (frameCount == 0 ? canvasBytes : 4 * subFramePixels) + snapshots * canvasBytes;
+                break;
+            case COMPRESSED:
+                frameBytes = frameDataBytes;
+                break;
+            default:
+                frameBytes = frames * canvasBytes;
+                break;
+        }
+        return 2 * canvasBytes + frameBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[info width=" + width + " height=" + height + " bitDepth=" + bitDepth + " colorType=" + colorType + " interlaceMethod=" + interlaceMethod + " animated=" + animated + " numFrames=" + numFrames + " numPlays=" + numPlays + " frameCount=" + frameCount + " totalDurationInMs=" + totalDurationInMs + "]";
+    }
+}
@@ -0,0 +1,84 @@
+package com.jpexs.images.apng;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Decoding or encoding task running on an executor and completing a
+ * {@link CompletableFuture}.
+ * <p>
+ * The task body checks {@link #checkCancelled()} between chunks and frames.
+ * Once the future is completed from outside, typically by
+ * {@link CompletableFuture#cancel(boolean)} after a timeout, the body stops
+ * with {@link CancellationException} instead of running to completion.
+ * </p>
+ *
+ * @author JPEXS
+ * @param <T> the result type
+ */
+class AsyncTask<T> {
+
+    /**
+     * Body of the task.
+     *
+     * @param <T> the result type
+     */
+    interface Body<T> {
+
+        /**
+         * Runs the task.
+         *
+         * @param task the task, for cancellation checks
+         * @return the result
+         * @throws IOException if an I/O error occurs
+         */
+        T run(AsyncTask<T> task) throws IOException;
+    }
+
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private AsyncTask() {
+    }
+
+    /**
+     * Submits the task body to the executor.
+     *
+     * @param <T> the result type
+     * @param executor the executor
+     * @param body the task body
+     * @return the future completed with the result of the body, or
+     *     exceptionally with its exception
+     */
+    static <T> CompletableFuture<T> submit(Executor executor, Body<T> body) {
+        AsyncTask<T> task = new AsyncTask<>();
+        try {
+            executor.execute(() -> {
+                if (task.future.isDone()) {
+                    return;
+                }
+                try {
+                    task.future.complete(body.run(task));
+                } catch (Throwable ex) {
+                    task.future.completeExceptionally(ex);
+                }
+            });
+        } catch (RuntimeException ex) {
+            //rejected by the executor
+            task.future.completeExceptionally(ex);
+        }
+        return task.future;
+    }
+
+    /**
+     * Checks whether the future was completed from outside.
+     *
+     * @throws CancellationException if the task should stop
+     */
+    void checkCancelled() {
+        if (future.isDone()) {
+            throw new CancellationException("Task cancelled");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jpexs.images.apng;
+
+/**
+ * Pool of pixel and byte buffers used during decoding and playback.
+ * <p>
+ * Borrowed arrays can be longer than requested and their content is
+ * undefined. Arrays should be returned only when nobody references them
+ * anymore.
+ * </p>
+ *
+ * @author JPEXS
+ * @see SizeClassBufferPool
+ * @see DecodeOptions#setBufferPool(BufferPool)
+ */
+public interface BufferPool {
+
+    /**
+     * Pool which does not retain anything, every borrow allocates a new array
+     * of the requested length.
+     */
+    public static final BufferPool NONE = new BufferPool() {
+        @Override
+        public int[] borrowInts(int minLength) {
+            return new int[minLength];
+        }
+
+        @Override
+        public void returnInts(int[] buffer) {
+        }
+
+        @Override
+        public byte[] borrowBytes(int minLength) {
+            return new byte[minLength];
+        }
+
+        @Override
+        public void returnBytes(byte[] buffer) {
+        }
+    };
+
+    /**
+     * Shared pool for callers which opt in to pooling.
+     */
+    public static final BufferPool DEFAULT = new SizeClassBufferPool();
+
+    /**
+     * Borrows int array, typically for pixels.
+     *
+     * @param minLength the minimum length of the array
+     * @return the array of at least the requested length
+     */
+    public int[] borrowInts(int minLength);
+
+    /**
+     * Returns int array to the pool.
+     *
+     * @param buffer the array previously borrowed
+     */
+    public void returnInts(int[] buffer);
+
+    /**
+     * Borrows byte array, typically for scanlines or compressed data.
+     *
+     * @param minLength the minimum length of the array
+     * @return the array of at least the requested length
+     */
+    public byte[] borrowBytes(int minLength);
+
+    /**
+     * Returns byte array to the pool.
+     *
+     * @param buffer the array previously borrowed
+     */
+    public void returnBytes(byte[] buffer);
+}
@@ -0,0 +1,28 @@
+package com.jpexs.images.apng;
+
+/**
+ * What is done with a chunk when reading PNG data.
+ *
+ * @author JPEXS
+ * @see ChunkFilter
+ */
+public enum ChunkAction {
+
+    /**
+     * The chunk is represented by its specific class and its fields are
+     * parsed.
+     */
+    PARSE,
+    /**
+     * The chunk is kept as generic {@link com.jpexs.images.apng.chunks.Chunk}
+     * with its raw data, which is written back as it was read. It can be
+     * parsed later by {@link PngInputStream#createChunk(String, java.nio.ByteBuffer)}
+     * with its type and {@link com.jpexs.images.apng.chunks.Chunk#getDataBuffer()}.
+     */
+    RAW,
+    /**
+     * The chunk data is skipped without reading it to memory and the chunk is
+     * not returned. Its CRC is not verified.
+     */
+    SKIP
+}
@@ -0,0 +1,88 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Actl;
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Fctl;
+import com.jpexs.images.apng.chunks.Fdat;
+import com.jpexs.images.apng.chunks.Text;
+import com.jpexs.images.apng.chunks.Trns;
+import java.util.function.Function;
+
+/**
+ * Decides which chunks are parsed, kept raw or skipped when reading PNG data.
+ *
+ * @author JPEXS
+ * @see PngInputStream#setChunkFilter(ChunkFilter)
+ * @see DecodeOptions#setChunkFilter(ChunkFilter)
+ */
+public interface ChunkFilter {
+
+    /**
+     * Filter which parses all chunks.
+     */
+    public static final ChunkFilter ALL = chunkType -> ChunkAction.PARSE;
+
+    /**
+     * Filter for decoding images. Critical, APNG and tRNS chunks are parsed.
+     * Metadata chunks (tEXt, zTXt, iTXt, iCCP, eXIf, tIME) and private
+     * ancillary chunks (with lowercase second letter of the type) are
+     * skipped. Other ancillary chunks, such as gAMA or sRGB, are kept raw.
+     */
+    public static final ChunkFilter DECODING = chunkType -> {
+        switch (chunkType) {
+            case Actl.TYPE_CODE:
+            case Fctl.TYPE_CODE:
+            case Fdat.TYPE_CODE:
+            case Trns.TYPE_CODE:
+                return ChunkAction.PARSE;
+            case Text.TYPE_CODE:
+            case 0x7A545874: //zTXt
+            case 0x69545874: //iTXt
+            case 0x69434350: //iCCP
+            case 0x65584966: //eXIf
+            case 0x74494D45: //tIME
+                return ChunkAction.SKIP;
+        }
+        //ancillary bit is bit 5 of the first byte, private bit of the second
+        if ((chunkType & 0x20000000) == 0) {
+            return ChunkAction.PARSE;
+        }
+        if ((chunkType & 0x00200000) != 0) {
+            return ChunkAction.SKIP;
+        }
+        return ChunkAction.RAW;
+    };
+
+    /**
+     * Returns what is done with a chunk of the specified type.
+     *
+     * @param chunkType the chunk type packed to an int, for example
+     *     {@link com.jpexs.images.apng.chunks.Ihdr#TYPE_CODE}
+     * @return the action
+     * @see com.jpexs.images.apng.chunks.Chunk#toTypeCode(String)
+     */
+    public ChunkAction getAction(int chunkType);
+
+    /**
+     * Returns what is done with a chunk of the specified type.
+     *
+     * @param chunkType the chunk type, for example "IHDR"
+     * @return the action
+     */
+    public default ChunkAction getAction(String chunkType) {
+        return getAction(Chunk.toTypeCode(chunkType));
+    }
+
+    /**
+     * Creates a filter deciding by chunk type names. The type code of each
+     * chunk is converted to a string, so prefer filters on type codes when
+     * reading many chunks.
+     *
+     * @param filter the function returning action for a chunk type, for
+     *     example "IHDR"
+     * @return the filter
+     */
+    public static ChunkFilter byTypeName(Function<String, ChunkAction> filter) {
+        return chunkType -> filter.apply(Chunk.toTypeString(chunkType));
+    }
+}
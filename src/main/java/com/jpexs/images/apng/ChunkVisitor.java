@@ -0,0 +1,137 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Actl;
+import com.jpexs.images.apng.chunks.Fctl;
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.chunks.Plte;
+import com.jpexs.images.apng.chunks.Text;
+import com.jpexs.images.apng.chunks.Trns;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receiver of chunks from {@link PngParser}, called in the order of the chunks
+ * in the PNG data.
+ * <p>
+ * All methods do nothing, subclasses override the methods of chunks they
+ * process. Chunks are not retained by the parser, so PNGs of any size are
+ * processed in one pass. Buffers passed to the methods share the content of
+ * the source and must not be modified.
+ * </p>
+ *
+ * <pre>{@code
+ * PngParser.parse(is, new ChunkVisitor() {
+ *     public void onFctl(Fctl fctl) {
+ *         frameCount++;
+ *     }
+ * });
+ * }</pre>
+ *
+ * @author JPEXS
+ * @see PngParser
+ */
+public class ChunkVisitor {
+
+    /**
+     * Called for the IHDR chunk.
+     *
+     * @param ihdr the image header
+     * @throws IOException to stop parsing with an error
+     */
+    public void onIhdr(Ihdr ihdr) throws IOException {
+
+    }
+
+    /**
+     * Called for the acTL chunk.
+     *
+     * @param actl the animation control
+     * @throws IOException to stop parsing with an error
+     */
+    public void onActl(Actl actl) throws IOException {
+
+    }
+
+    /**
+     * Called for the PLTE chunk.
+     *
+     * @param plte the palette
+     * @throws IOException to stop parsing with an error
+     */
+    public void onPlte(Plte plte) throws IOException {
+
+    }
+
+    /**
+     * Called for the tRNS chunk.
+     *
+     * @param trns the transparency
+     * @throws IOException to stop parsing with an error
+     */
+    public void onTrns(Trns trns) throws IOException {
+
+    }
+
+    /**
+     * Called for each fcTL chunk.
+     *
+     * @param fctl the frame control
+     * @throws IOException to stop parsing with an error
+     */
+    public void onFctl(Fctl fctl) throws IOException {
+
+    }
+
+    /**
+     * Called for each IDAT chunk.
+     *
+     * @param data the compressed image data
+     * @throws IOException to stop parsing with an error
+     */
+    public void onIdat(ByteBuffer data) throws IOException {
+
+    }
+
+    /**
+     * Called for each fdAT chunk.
+     *
+     * @param sequenceNumber the sequence number
+     * @param data the compressed frame data
+     * @throws IOException to stop parsing with an error
+     */
+    public void onFdat(long sequenceNumber, ByteBuffer data) throws IOException {
+
+    }
+
+    /**
+     * Called for each tEXt chunk.
+     *
+     * @param text the text
+     * @throws IOException to stop parsing with an error
+     */
+    public void onText(Text text) throws IOException {
+
+    }
+
+    /**
+     * Called for chunks of other types and chunks kept raw by the chunk filter
+     * of the source.
+     *
+     * @param chunkType the chunk type packed to an int
+     * @param data the chunk data
+     * @throws IOException to stop parsing with an error
+     * @see com.jpexs.images.apng.chunks.Chunk#toTypeString(int)
+     */
+    public void onUnknown(int chunkType, ByteBuffer data) throws IOException {
+
+    }
+
+    /**
+     * Called for the IEND chunk, after which parsing ends.
+     *
+     * @throws IOException to stop parsing with an error
+     */
+    public void onIend() throws IOException {
+
+    }
+}
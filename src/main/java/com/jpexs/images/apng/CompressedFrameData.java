@@ -0,0 +1,46 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.data.AnimationFrameData;
+import java.awt.image.BufferedImage;
+
+/**
+ * Animation frame whose image is decoded on demand from
+ * {@link CompressedFrameStore}.
+ * <p>
+ * When an image is set explicitly via {@link #setImage(BufferedImage)}, it
+ * takes precedence over the stored frame.
+ * </p>
+ *
+ * @author JPEXS
+ */
+class CompressedFrameData extends AnimationFrameData {
+
+    final CompressedFrameStore store;
+
+    private final int index;
+
+    CompressedFrameData(CompressedFrameStore store, int index, int delayNumerator, int delayDenominator) {
+        super(null, delayNumerator, delayDenominator);
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The image is taken from the frame cache or decoded and composited from
+     * the nearest cached frame or key frame.
+     * </p>
+     *
+     * @throws java.io.UncheckedIOException if the frame data cannot be
+     *     decoded
+     */
+    @Override
+    public BufferedImage getImage() {
+        BufferedImage image = super.getImage();
+        if (image != null) {
+            return image;
+        }
+        return store.getImage(index);
+    }
+}
@@ -0,0 +1,206 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Fctl;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Storage of animation frames as the original compressed image data.
+ * <p>
+ * Frames are decoded and composited on demand, starting from the nearest
+ * cached frame or from the key frame. Rendered frames are kept in a
+ * {@link FrameCache}.
+ * </p>
+ *
+ * @author JPEXS
+ */
+class CompressedFrameStore {
+
+    private static class Entry {
+
+        final Fctl fctl;
+        final FrameRegion region;
+        final int disposeOp;
+        final int keyFrame;
+        final byte[] data;
+
+        Entry(Fctl fctl, FrameRegion region, int disposeOp, int keyFrame, byte[] data) {
+            this.fctl = fctl;
+            this.region = region;
+            this.disposeOp = disposeOp;
+            this.keyFrame = keyFrame;
+            this.data = data;
+        }
+    }
+
+    private final FrameDecoder frameDecoder;
+
+    private final int width;
+
+    private final int height;
+
+    private final FrameCache cache;
+
+    private final BufferPool pool;
+
+    private final KeyFrameTracker keyFrames;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Constructs an empty store.
+     *
+     * @param frameDecoder the decoder of frame data
+     * @param cache the cache of rendered frames
+     */
+    CompressedFrameStore(FrameDecoder frameDecoder, FrameCache cache) {
+        this.frameDecoder = frameDecoder;
+        this.width = frameDecoder.getCanvasWidth();
+        this.height = frameDecoder.getCanvasHeight();
+        this.cache = cache;
+        this.pool = frameDecoder.getBufferPool();
+        this.keyFrames = new KeyFrameTracker(frameDecoder.getImageWidth(), frameDecoder.getImageHeight());
+    }
+
+    /**
+     * Adds next frame to the store. Compressed data is copied to a single
+     * array.
+     *
+     * @param fctl the frame control chunk
+     * @param data the parts of the compressed data
+     * @return index of the added frame
+     */
+    synchronized int addFrame(Fctl fctl, List<ByteBuffer> data) {
+        int length = 0;
+        for (ByteBuffer part : data) {
+            length += part.remaining();
+        }
+        byte[] bytes = new byte[length];
+        int pos = 0;
+        for (ByteBuffer part : data) {
+            ByteBuffer dup = part.duplicate();
+            int partLength = dup.remaining();
+            dup.get(bytes, pos, partLength);
+            pos += partLength;
+        }
+        int index = entries.size();
+        entries.add(new Entry(fctl, frameDecoder.getRegion(fctl), KeyFrameTracker.getEffectiveDisposeOp(fctl, index), keyFrames.addFrame(fctl), bytes));
+        return index;
+    }
+
+    /**
+     * Returns the composited image of the frame.
+     *
+     * @param index the frame index
+     * @return the frame image
+     * @throws UncheckedIOException if the frame data cannot be decoded
+     */
+    BufferedImage getImage(int index) {
+        BufferedImage image = cache.get(this, index);
+        if (image != null) {
+            return image;
+        }
+        synchronized (this) {
+            try {
+                image = render(index);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        cache.put(this, index, image);
+        return image;
+    }
+
+    /**
+     * Returns the number of bytes of stored compressed data.
+     *
+     * @return the size in bytes
+     */
+    synchronized long getCompressedBytes() {
+        long size = 0;
+        for (Entry entry : entries) {
+            size += entry.data.length;
+        }
+        return size;
+    }
+
+    /**
+     * Removes rendered frames of this store from the cache.
+     */
+    void release() {
+        cache.removeAll(this);
+    }
+
+    private BufferedImage render(int index) throws IOException {
+        int keyFrame = entries.get(index).keyFrame;
+        int[] canvas = new int[width * height];
+        int start = keyFrame;
+        for (int i = index - 1; i >= keyFrame; i--) {
+            if (entries.get(i).disposeOp == Fctl.DISPOSE_OP_PREVIOUS) {
+                continue;
+            }
+            BufferedImage cached = cache.peek(this, i);
+            if (cached != null) {
+                System.arraycopy(FrameCompositor.getArgbPixels(cached), 0, canvas, 0, canvas.length);
+                dispose(canvas, entries.get(i), null);
+                start = i + 1;
+                break;
+            }
+        }
+
+        int[] previous = null;
+        try {
+            for (int i = start; i <= index; i++) {
+                Entry entry = entries.get(i);
+                Fctl fctl = entry.fctl;
+                int x = entry.region.x;
+                int y = entry.region.y;
+                int w = entry.region.width;
+                int h = entry.region.height;
+                if (i > start) {
+                    dispose(canvas, entries.get(i - 1), previous);
+                }
+                if (entry.disposeOp == Fctl.DISPOSE_OP_PREVIOUS && i < index) {
+                    if (previous == null || previous.length < w * h) {
+                        if (previous != null) {
+                            pool.returnInts(previous);
+                        }
+                        previous = pool.borrowInts(w * h);
+                    }
+                    FrameCompositor.saveRegion(canvas, width, x, y, w, h, previous);
+                }
+                BufferedImage subFrame = frameDecoder.decode(fctl, Collections.singletonList(ByteBuffer.wrap(entry.data)));
+                int[] subFramePixels = FrameCompositor.getArgbPixels(subFrame);
+                FrameCompositor.drawFrame(canvas, width, subFramePixels, x, y, w, h, fctl.getBlendOp());
+                pool.returnInts(subFramePixels);
+            }
+        } finally {
+            if (previous != null) {
+                pool.returnInts(previous);
+            }
+        }
+        return FrameCompositor.createArgbImage(canvas, width, height);
+    }
+
+    private void dispose(int[] canvas, Entry entry, int[] previous) {
+        int x = entry.region.x;
+        int y = entry.region.y;
+        int w = entry.region.width;
+        int h = entry.region.height;
+        switch (entry.disposeOp) {
+            case Fctl.DISPOSE_OP_NONE:
+                break;
+            case Fctl.DISPOSE_OP_BACKGROUND:
+                FrameCompositor.fillRegion(canvas, width, x, y, w, h, 0);
+                break;
+            case Fctl.DISPOSE_OP_PREVIOUS:
+                FrameCompositor.restoreRegion(canvas, width, x, y, w, h, previous);
+                break;
+        }
+    }
+}
@@ -1,51 +1,20 @@
 package com.jpexs.images.apng;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
 /**
  * CRC calculation class.
+ * <p>
+ * Uses {@link CRC32}, which is intrinsified by the JIT and updated directly
+ * from buffers without copying.
+ * </p>
  *
  * @author JPEXS
  */
 public class Crc {
 
-    /* Table of CRCs of all 8-bit messages. */
-    private static long[] crcTable = new long[256];
-
-    /* Flag: has the table been computed? Initially false. */
-    private static boolean crcTableComputed = false;
-
-    /* Make the table for a fast CRC. */
-    private static void makeCrcTable() {
-        long c;
-        int n;
-        int k;
-
-        for (n = 0; n < 256; n++) {
-            c = (long) n;
-            for (k = 0; k < 8; k++) {
-                if ((c & 1) > 0) {
-                    c = 0xedb88320L ^ (c >>> 1);
-                } else {
-                    c = c >>> 1;
-                }
-            }
-            crcTable[n] = c;
-        }
-        crcTableComputed = true;
-    }
-
-    private static long updateCrc(long crc, byte[] buf) {
-        long c = crc;
-        int n;
-
-        if (!crcTableComputed) {
-            makeCrcTable();
-        }
-        for (n = 0; n < buf.length; n++) {
-            c = crcTable[(int) ((c ^ (buf[n] & 0xFF)) & 0xff)] ^ (c >>> 8);
-        }
-        return c;
-    }
-
     /**
      * Calculates the CRC-32 checksum for the given data arrays.
      * <p>
@@ -57,12 +26,77 @@ public class Crc {
      * @return the CRC-32 checksum as an unsigned 32-bit value
      */
     public static long calculate(byte[]... data) {
-        long ret = 0xffffffffL;
+        CRC32 crc = new CRC32();
         for (byte[] dataPart : data) {
-            ret = updateCrc(ret, dataPart);
+            crc.update(dataPart, 0, dataPart.length);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Calculates the CRC-32 checksum for the remaining bytes of the given
+     * buffers.
+     * <p>
+     * Positions of the buffers are not modified.
+     * </p>
+     *
+     * @param data the buffers to calculate the CRC for
+     * @return the CRC-32 checksum as an unsigned 32-bit value
+     */
+    public static long calculate(ByteBuffer... data) {
+        CRC32 crc = new CRC32();
+        for (ByteBuffer dataPart : data) {
+            crc.update(dataPart.duplicate());
         }
-        ret = ret ^ 0xffffffffL;
-        ret = ret & 0xffffffffL;
-        return ret;
+        return crc.getValue();
+    }
+
+    /**
+     * Calculates the CRC-32 checksum of a chunk, over its type and the
+     * remaining bytes of its data.
+     * <p>
+     * Position of the buffer is not modified.
+     * </p>
+     *
+     * @param chunkType the chunk type packed to an int
+     * @param data the chunk data
+     * @return the CRC-32 checksum as an unsigned 32-bit value
+     */
+    public static long calculate(int chunkType, ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        updateChunkType(crc, chunkType);
+        crc.update(data.duplicate());
+        return crc.getValue();
+    }
+
+    /**
+     * Calculates the CRC-32 checksum of a chunk, over its type and data read
+     * from the stream in blocks.
+     *
+     * @param chunkType the chunk type packed to an int
+     * @param pis the stream positioned at the chunk data
+     * @param length the length of the chunk data
+     * @param buffer the buffer for the blocks of data
+     * @return the CRC-32 checksum as an unsigned 32-bit value
+     * @throws IOException if an I/O error occurs
+     */
+    static long calculate(int chunkType, PngInputStream pis, long length, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        updateChunkType(crc, chunkType);
+        long remaining = length;
+        while (remaining > 0) {
+            int count = (int) Math.min(buffer.length, remaining);
+            pis.readBytes(buffer, 0, count);
+            crc.update(buffer, 0, count);
+            remaining -= count;
+        }
+        return crc.getValue();
+    }
+
+    private static void updateChunkType(CRC32 crc, int chunkType) {
+        crc.update(chunkType >>> 24);
+        crc.update(chunkType >>> 16);
+        crc.update(chunkType >>> 8);
+        crc.update(chunkType);
     }
 }
@@ -0,0 +1,44 @@
+package com.jpexs.images.apng;
+
+/**
+ * Which chunk CRCs are verified when reading PNG data.
+ *
+ * @author JPEXS
+ * @see DecodeOptions#setCrcPolicy(CrcPolicy)
+ * @see PngInputStream#setCrcPolicy(CrcPolicy)
+ */
+public enum CrcPolicy {
+
+    /**
+     * CRC of every chunk is verified.
+     */
+    ALWAYS,
+    /**
+     * CRC of critical chunks (IHDR, PLTE, IDAT, IEND - with uppercase first
+     * letter of the type) is verified, ancillary chunks including fcTL and
+     * fdAT are not.
+     */
+    CRITICAL_ONLY,
+    /**
+     * No CRC is verified, for trusted data such as re-reads of own files.
+     */
+    NEVER;
+
+    /**
+     * Checks whether CRC of the chunk must be verified.
+     *
+     * @param chunkType the chunk type packed to an int
+     * @return {@code true} to verify
+     */
+    boolean isVerified(int chunkType) {
+        switch (this) {
+            case ALWAYS:
+                return true;
+            case CRITICAL_ONLY:
+                //ancillary bit is bit 5 of the first byte
+                return (chunkType & 0x20000000) == 0;
+            default:
+                return false;
+        }
+    }
+}
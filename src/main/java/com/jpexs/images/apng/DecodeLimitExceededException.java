@@ -0,0 +1,53 @@
+package com.jpexs.images.apng;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when decoded PNG exceeds a limit of {@link DecodeLimits}.
+ * <p>
+ * It is thrown while reading chunks, before the memory for the offending image
+ * data is allocated.
+ * </p>
+ *
+ * @author JPEXS
+ * @see DecodeOptions#setLimits(DecodeLimits)
+ */
+public class DecodeLimitExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long limit;
+
+    private final long value;
+
+    /**
+     * Constructs the exception.
+     *
+     * @param what the description of the limited value
+     * @param value the value which exceeds the limit
+     * @param limit the limit
+     */
+    public DecodeLimitExceededException(String what, long value, long limit) {
+        super(what + " " + value + " exceeds the limit " + limit);
+        this.value = value;
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the limit.
+     *
+     * @return the limit
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the value which exceeds the limit.
+     *
+     * @return the value
+     */
+    public long getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,146 @@
+package com.jpexs.images.apng;
+
+/**
+ * Resource limits of decoding, protecting against crafted images.
+ * <p>
+ * Limits are checked while reading chunks, before large allocations happen.
+ * When a limit is exceeded, decoding fails with
+ * {@link DecodeLimitExceededException}. By default, nothing is limited.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ * </p>
+ * <pre>{@code
+ * DecodeLimits limits = new DecodeLimits();
+ * limits.setMaxPixels(4096 * 4096);
+ * limits.setMaxFrames(1000);
+ * limits.setMaxRetainedBytes(256 * 1024 * 1024);
+ * DecodeOptions options = new DecodeOptions();
+ * options.setLimits(limits);
+ * }</pre>
+ *
+ * @author JPEXS
+ * @see DecodeOptions#setLimits(DecodeLimits)
+ */
+public class DecodeLimits {
+
+    /**
+     * Maximum area of the image in pixels.
+     */
+    private long maxPixels = Long.MAX_VALUE;
+
+    /**
+     * Maximum number of frames.
+     */
+    private long maxFrames = Long.MAX_VALUE;
+
+    /**
+     * Maximum total size of inflated image data of all frames.
+     */
+    private long maxInflatedBytes = Long.MAX_VALUE;
+
+    /**
+     * Maximum estimated size of data retained during decoding.
+     */
+    private long maxRetainedBytes = Long.MAX_VALUE;
+
+    /**
+     * Returns the maximum area of the image.
+     *
+     * @return the maximum number of pixels
+     */
+    public long getMaxPixels() {
+        return maxPixels;
+    }
+
+    /**
+     * Sets the maximum area of the image, checked against width and height of
+     * the IHDR chunk.
+     *
+     * @param maxPixels the maximum number of pixels
+     */
+    public void setMaxPixels(long maxPixels) {
+        this.maxPixels = checkPositive(maxPixels);
+    }
+
+    /**
+     * Returns the maximum number of frames.
+     *
+     * @return the maximum number of frames
+     */
+    public long getMaxFrames() {
+        return maxFrames;
+    }
+
+    /**
+     * Sets the maximum number of frames, checked against the acTL chunk and
+     * the number of fcTL chunks.
+     *
+     * @param maxFrames the maximum number of frames
+     */
+    public void setMaxFrames(long maxFrames) {
+        this.maxFrames = checkPositive(maxFrames);
+    }
+
+    /**
+     * Returns the maximum total size of inflated image data.
+     *
+     * @return the maximum size in bytes
+     */
+    public long getMaxInflatedBytes() {
+        return maxInflatedBytes;
+    }
+
+    /**
+     * Sets the maximum total size of inflated image data of all frames. The
+     * size of each frame is given by its dimensions and is checked before the
+     * frame is inflated.
+     *
+     * @param maxInflatedBytes the maximum size in bytes
+     */
+    public void setMaxInflatedBytes(long maxInflatedBytes) {
+        this.maxInflatedBytes = checkPositive(maxInflatedBytes);
+    }
+
+    /**
+     * Returns the maximum estimated size of retained data.
+     *
+     * @return the maximum size in bytes
+     */
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    /**
+     * Sets the maximum estimated size of data retained during decoding:
+     * compressed data of chunks, the canvas and frames kept by
+     * {@link AnimatedPngDecoder} according to {@link FrameStorage}.
+     *
+     * @param maxRetainedBytes the maximum size in bytes
+     */
+    public void setMaxRetainedBytes(long maxRetainedBytes) {
+        this.maxRetainedBytes = checkPositive(maxRetainedBytes);
+    }
+
+    private static long checkPositive(long value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Invalid limit " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Checks value against limit.
+     *
+     * @param what the description of the value
+     * @param value the value
+     * @param limit the limit
+     * @throws DecodeLimitExceededException if the value exceeds the limit
+     */
+    static void check(String what, long value, long limit) throws DecodeLimitExceededException {
+        if (value > limit) {
+            throw new DecodeLimitExceededException(what, value, limit);
+        }
+    }
+}
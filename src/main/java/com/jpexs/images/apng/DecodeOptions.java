@@ -0,0 +1,302 @@
+package com.jpexs.images.apng;
+
+/**
+ * Options of Animated PNG decoding.
+ *
+ * @author JPEXS
+ * @see AnimatedPngDecoder
+ * @see ApngFrameReader
+ */
+public class DecodeOptions {
+
+    /**
+     * Pool of buffers for canvases, subframes and scanlines.
+     */
+    private BufferPool bufferPool = BufferPool.NONE;
+
+    /**
+     * How decoded frames are stored.
+     */
+    private FrameStorage frameStorage = FrameStorage.FULL;
+
+    /**
+     * Number of frames between full canvas snapshots in sparse storage.
+     */
+    private int snapshotInterval = 16;
+
+    /**
+     * Cache of rendered frames in compressed storage.
+     */
+    private FrameCache frameCache = new FrameCache(64L * 1024 * 1024);
+
+    /**
+     * Maximum width of decoded frames, 0 for no downscaling.
+     */
+    private int targetWidth = 0;
+
+    /**
+     * Maximum height of decoded frames, 0 for no downscaling.
+     */
+    private int targetHeight = 0;
+
+    /**
+     * Which chunk CRCs are verified.
+     */
+    private CrcPolicy crcPolicy = CrcPolicy.ALWAYS;
+
+    /**
+     * Which chunks are parsed, kept raw or skipped.
+     */
+    private ChunkFilter chunkFilter = ChunkFilter.DECODING;
+
+    /**
+     * Resource limits.
+     */
+    private DecodeLimits limits = new DecodeLimits();
+
+    /**
+     * Whether frames of indexed images are kept indexed.
+     */
+    private boolean preservePalette = false;
+
+    /**
+     * Returns the buffer pool.
+     *
+     * @return the buffer pool
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Sets the buffer pool used for canvases, subframes, scanlines and
+     * inflate buffers. Pooling is disabled by default ({@link BufferPool#NONE}).
+     * <p>
+     * Pixels of the decoded frames are borrowed from the pool too. They may be
+     * returned to it only when the frames are no longer used, for example by
+     * {@link AnimatedPngIcon#dispose()}.
+     * </p>
+     *
+     * @param bufferPool the buffer pool
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Returns how decoded frames are stored.
+     *
+     * @return the frame storage
+     */
+    public FrameStorage getFrameStorage() {
+        return frameStorage;
+    }
+
+    /**
+     * Sets how decoded frames are stored. {@link FrameStorage#SPARSE} saves
+     * memory for animations whose frames update small regions of the canvas.
+     *
+     * @param frameStorage the frame storage
+     */
+    public void setFrameStorage(FrameStorage frameStorage) {
+        this.frameStorage = frameStorage;
+    }
+
+    /**
+     * Returns the number of frames between full canvas snapshots in
+     * {@link FrameStorage#SPARSE} storage.
+     *
+     * @return the snapshot interval
+     */
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * Sets the number of frames between full canvas snapshots in
+     * {@link FrameStorage#SPARSE} storage. Lower values use more memory but
+     * make random access to frames faster.
+     *
+     * @param snapshotInterval the snapshot interval, at least 1
+     */
+    public void setSnapshotInterval(int snapshotInterval) {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("Invalid snapshot interval " + snapshotInterval);
+        }
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Returns the cache of rendered frames used by
+     * {@link FrameStorage#COMPRESSED} storage.
+     *
+     * @return the frame cache
+     */
+    public FrameCache getFrameCache() {
+        return frameCache;
+    }
+
+    /**
+     * Sets the cache of rendered frames used by
+     * {@link FrameStorage#COMPRESSED} storage. The cache can be shared by
+     * several animations. By default, each options instance has its own 64 MB
+     * cache.
+     *
+     * @param frameCache the frame cache
+     */
+    public void setFrameCache(FrameCache frameCache) {
+        this.frameCache = frameCache;
+    }
+
+    /**
+     * Returns the maximum width of decoded frames.
+     *
+     * @return the target width, 0 when frames are not downscaled
+     */
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    /**
+     * Returns the maximum height of decoded frames.
+     *
+     * @return the target height, 0 when frames are not downscaled
+     */
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+
+    /**
+     * Sets the size the decoded frames must fit in, for example to create
+     * thumbnails.
+     * <p>
+     * Frames are downscaled with preserved aspect ratio while decoding, rows
+     * are scaled as they are unfiltered and frames are composited on a canvas
+     * of the reduced size. Memory use then depends on the target size, not
+     * the image size. Frames are never upscaled. Pixels on edges of frame
+     * regions which do not align with the scale are approximated.
+     * </p>
+     *
+     * @param targetWidth the maximum width, 0 for no downscaling
+     * @param targetHeight the maximum height, 0 for no downscaling
+     */
+    public void setTargetSize(int targetWidth, int targetHeight) {
+        if (targetWidth < 0 || targetHeight < 0) {
+            throw new IllegalArgumentException("Invalid target size " + targetWidth + "x" + targetHeight);
+        }
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+    }
+
+    /**
+     * Checks whether frames of indexed images are kept indexed.
+     *
+     * @return {@code true} if the palette is preserved
+     */
+    public boolean isPreservePalette() {
+        return preservePalette;
+    }
+
+    /**
+     * Sets whether frames of indexed images are kept indexed.
+     * <p>
+     * When set, frames of images with {@link com.jpexs.images.apng.chunks.Ihdr#COLOR_TYPE_INDEXEDCOLOR}
+     * are composited in palette index space and returned as
+     * {@link java.awt.image.BufferedImage#TYPE_BYTE_INDEXED} images sharing
+     * single {@link java.awt.image.IndexColorModel} built from the PLTE and
+     * tRNS chunks, taking a quarter of the memory of ARGB frames. Frames
+     * which blend partially transparent palette entries over visible pixels
+     * have colors outside the palette and are returned as
+     * {@link java.awt.image.BufferedImage#TYPE_INT_ARGB} images.
+     * </p>
+     * <p>
+     * Applies to {@link FrameStorage#FULL} storage without a target size only,
+     * and to palettes with a fully transparent entry or less than 256 entries.
+     * Other images are decoded to ARGB.
+     * </p>
+     *
+     * @param preservePalette whether to preserve the palette
+     */
+    public void setPreservePalette(boolean preservePalette) {
+        this.preservePalette = preservePalette;
+    }
+
+    /**
+     * Returns the resource limits.
+     *
+     * @return the limits
+     */
+    public DecodeLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Sets the resource limits, for decoding untrusted images.
+     *
+     * @param limits the limits
+     */
+    public void setLimits(DecodeLimits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Returns which chunk CRCs are verified.
+     *
+     * @return the CRC policy
+     */
+    public CrcPolicy getCrcPolicy() {
+        return crcPolicy;
+    }
+
+    /**
+     * Sets which chunk CRCs are verified. Default is {@link CrcPolicy#ALWAYS},
+     * {@link CrcPolicy#NEVER} saves the checksum cost when reading trusted
+     * data.
+     *
+     * @param crcPolicy the CRC policy
+     */
+    public void setCrcPolicy(CrcPolicy crcPolicy) {
+        this.crcPolicy = crcPolicy;
+    }
+
+    /**
+     * Returns the filter of chunks which are read.
+     *
+     * @return the chunk filter
+     */
+    public ChunkFilter getChunkFilter() {
+        return chunkFilter;
+    }
+
+    /**
+     * Sets the filter of chunks which are read. Default is
+     * {@link ChunkFilter#DECODING}, which skips metadata and private chunks
+     * instead of reading them and passing them to every decoded frame.
+     *
+     * @param chunkFilter the chunk filter
+     */
+    public void setChunkFilter(ChunkFilter chunkFilter) {
+        this.chunkFilter = chunkFilter;
+    }
+
+    /**
+     * Creates a copy of the options. The buffer pool, frame cache, chunk
+     * filter and limits are shared.
+     *
+     * @return the copy
+     */
+    DecodeOptions copy() {
+        DecodeOptions ret = new DecodeOptions();
+        ret.bufferPool = bufferPool;
+        ret.frameStorage = frameStorage;
+        ret.snapshotInterval = snapshotInterval;
+        ret.frameCache = frameCache;
+        ret.targetWidth = targetWidth;
+        ret.targetHeight = targetHeight;
+        ret.crcPolicy = crcPolicy;
+        ret.chunkFilter = chunkFilter;
+        ret.limits = limits;
+        ret.preservePalette = preservePalette;
+        return ret;
+    }
+}
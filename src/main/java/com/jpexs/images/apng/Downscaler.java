@@ -0,0 +1,159 @@
+package com.jpexs.images.apng;
+
+/**
+ * Box filter downscaling of a frame region, fed row by row.
+ * <p>
+ * Source pixels are mapped to the scaled canvas by their canvas coordinates,
+ * so neighbouring regions of different frames line up. All source pixels
+ * mapped to the same target pixel are averaged, with color weighted by alpha.
+ * Only one target row of accumulators is kept, memory does not depend on the
+ * source size.
+ * </p>
+ *
+ * @author JPEXS
+ */
+class Downscaler {
+
+    private final FrameRegion target;
+
+    private final int sourceY;
+
+    private final int imageWidth;
+
+    private final int imageHeight;
+
+    private final int scaledWidth;
+
+    private final int scaledHeight;
+
+    /**
+     * Target column of every source column, relative to the target region.
+     */
+    private final int[] columnMap;
+
+    private final long[] sumA;
+    private final long[] sumR;
+    private final long[] sumG;
+    private final long[] sumB;
+    private final int[] count;
+
+    private final int[] pixels;
+
+    /**
+     * Target row being accumulated, relative to the target region, -1 before
+     * the first row.
+     */
+    private int currentRow = -1;
+
+    /**
+     * Constructs a downscaler of a frame region.
+     *
+     * @param source the source region in image coordinates
+     * @param target the target region in scaled coordinates, see
+     *     {@link #scaleRegion}
+     * @param imageWidth the source image width
+     * @param imageHeight the source image height
+     * @param scaledWidth the scaled image width
+     * @param scaledHeight the scaled image height
+     * @param pixels the output array of at least
+     *     {@code target.width * target.height} values
+     */
+    Downscaler(FrameRegion source, FrameRegion target, int imageWidth, int imageHeight, int scaledWidth, int scaledHeight, int[] pixels) {
+        this.target = target;
+        this.sourceY = source.y;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.scaledWidth = scaledWidth;
+        this.scaledHeight = scaledHeight;
+        this.pixels = pixels;
+        columnMap = new int[source.width];
+        for (int i = 0; i < source.width; i++) {
+            columnMap[i] = (int) ((long) (source.x + i) * scaledWidth / imageWidth) - target.x;
+        }
+        sumA = new long[target.width];
+        sumR = new long[target.width];
+        sumG = new long[target.width];
+        sumB = new long[target.width];
+        count = new int[target.width];
+    }
+
+    /**
+     * Scales frame region to the scaled image coordinates.
+     *
+     * @param source the region in image coordinates
+     * @param imageWidth the source image width
+     * @param imageHeight the source image height
+     * @param scaledWidth the scaled image width
+     * @param scaledHeight the scaled image height
+     * @return the scaled region, at least 1x1
+     */
+    static FrameRegion scaleRegion(FrameRegion source, int imageWidth, int imageHeight, int scaledWidth, int scaledHeight) {
+        int x0 = (int) ((long) source.x * scaledWidth / imageWidth);
+        int y0 = (int) ((long) source.y * scaledHeight / imageHeight);
+        int x1 = (int) ((long) (source.x + source.width - 1) * scaledWidth / imageWidth) + 1;
+        int y1 = (int) ((long) (source.y + source.height - 1) * scaledHeight / imageHeight) + 1;
+        return new FrameRegion(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Adds source row.
+     *
+     * @param row the row pixels, non-premultiplied ARGB
+     * @param offset the offset of the row in the array
+     * @param y the row index in the source region, rows must come in order
+     */
+    void addRow(int[] row, int offset, int y) {
+        int targetRow = (int) ((long) (sourceY + y) * scaledHeight / imageHeight) - target.y;
+        if (targetRow != currentRow) {
+            flush();
+            currentRow = targetRow;
+        }
+        for (int i = 0; i < columnMap.length; i++) {
+            int argb = row[offset + i];
+            int a = argb >>> 24;
+            int col = columnMap[i];
+            count[col]++;
+            if (a == 0) {
+                continue;
+            }
+            sumA[col] += a;
+            sumR[col] += ((argb >> 16) & 0xFF) * a;
+            sumG[col] += ((argb >> 8) & 0xFF) * a;
+            sumB[col] += (argb & 0xFF) * a;
+        }
+    }
+
+    /**
+     * Finishes scaling, writes the last row.
+     *
+     * @return the scaled pixels
+     */
+    int[] finish() {
+        flush();
+        return pixels;
+    }
+
+    private void flush() {
+        if (currentRow == -1) {
+            return;
+        }
+        int offset = currentRow * target.width;
+        for (int i = 0; i < target.width; i++) {
+            long a = sumA[i];
+            if (a == 0 || count[i] == 0) {
+                pixels[offset + i] = 0;
+            } else {
+                int alpha = (int) ((a + count[i] / 2) / count[i]);
+                int r = (int) ((sumR[i] + a / 2) / a);
+                int g = (int) ((sumG[i] + a / 2) / a);
+                int b = (int) ((sumB[i] + a / 2) / a);
+                pixels[offset + i] = (alpha << 24) | (r << 16) | (g << 8) | b;
+            }
+            sumA[i] = 0;
+            sumR[i] = 0;
+            sumG[i] = 0;
+            sumB[i] = 0;
+            count[i] = 0;
+        }
+    }
+}
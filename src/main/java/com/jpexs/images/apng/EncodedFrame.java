@@ -0,0 +1,35 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Fctl;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Animation frame before decoding - its fcTL chunk and compressed data.
+ *
+ * @author JPEXS
+ */
+class EncodedFrame {
+
+    /**
+     * The frame control chunk.
+     */
+    final Fctl fctl;
+
+    /**
+     * Parts of the compressed frame data.
+     */
+    final List<ByteBuffer> data;
+
+    /**
+     * Whether the data comes from IDAT chunks - the frame is the default
+     * image.
+     */
+    final boolean defaultImage;
+
+    EncodedFrame(Fctl fctl, List<ByteBuffer> data, boolean defaultImage) {
+        this.fctl = fctl;
+        this.data = data;
+        this.defaultImage = defaultImage;
+    }
+}
@@ -0,0 +1,238 @@
+package com.jpexs.images.apng;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of rendered frames, bounded by size in bytes.
+ * <p>
+ * Used by {@link FrameStorage#COMPRESSED} storage. A single cache can be
+ * shared by many decoded animations, so the total memory of rendered frames
+ * stays within one budget.
+ * </p>
+ * <p>
+ * Owners of the frames are referenced weakly, frames of animations which are
+ * no longer reachable are removed on the next access of the cache.
+ * </p>
+ *
+ * @author JPEXS
+ * @see DecodeOptions#setFrameCache(FrameCache)
+ */
+public class FrameCache {
+
+    private static class Key extends WeakReference<Object> {
+
+        final int index;
+        final int hash;
+
+        Key(Object owner, int index, ReferenceQueue<Object> queue) {
+            super(owner, queue);
+            this.index = index;
+            this.hash = System.identityHashCode(owner) * 31 + index;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            Object owner = get();
+            return owner != null && owner == other.get() && index == other.index;
+        }
+    }
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<Key, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Queue of keys whose owners were garbage collected.
+     */
+    private final ReferenceQueue<Object> collectedOwners = new ReferenceQueue<>();
+
+    private long cachedBytes = 0;
+
+    private long hitCount = 0;
+
+    private long missCount = 0;
+
+    private long evictionCount = 0;
+
+    /**
+     * Constructs a cache of the specified size.
+     *
+     * @param maxBytes the maximum number of bytes of cached frame pixels
+     */
+    public FrameCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns cached frame and counts hit or miss.
+     *
+     * @param owner the owner of the frame
+     * @param index the frame index
+     * @return the frame image, or {@code null} when not cached
+     */
+    synchronized BufferedImage get(Object owner, int index) {
+        expungeCollected();
+        BufferedImage image = images.get(new Key(owner, index, null));
+        if (image == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return image;
+    }
+
+    /**
+     * Returns cached frame without counting hit or miss.
+     *
+     * @param owner the owner of the frame
+     * @param index the frame index
+     * @return the frame image, or {@code null} when not cached
+     */
+    synchronized BufferedImage peek(Object owner, int index) {
+        expungeCollected();
+        return images.get(new Key(owner, index, null));
+    }
+
+    /**
+     * Puts frame to the cache and evicts least recently used frames over the
+     * size limit.
+     *
+     * @param owner the owner of the frame
+     * @param index the frame index
+     * @param image the frame image
+     */
+    synchronized void put(Object owner, int index, BufferedImage image) {
+        expungeCollected();
+        long size = getSize(image);
+        if (size > maxBytes) {
+            return;
+        }
+        BufferedImage old = images.put(new Key(owner, index, collectedOwners), image);
+        if (old != null) {
+            cachedBytes -= getSize(old);
+        }
+        cachedBytes += size;
+        Iterator<BufferedImage> it = images.values().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            BufferedImage evicted = it.next();
+            it.remove();
+            cachedBytes -= getSize(evicted);
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes all frames of the owner.
+     *
+     * @param owner the owner of the frames
+     */
+    synchronized void removeAll(Object owner) {
+        expungeCollected();
+        Iterator<Map.Entry<Key, BufferedImage>> it = images.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, BufferedImage> entry = it.next();
+            if (entry.getKey().get() == owner) {
+                cachedBytes -= getSize(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes frames of owners which were garbage collected.
+     */
+    private void expungeCollected() {
+        Object key;
+        while ((key = collectedOwners.poll()) != null) {
+            BufferedImage image = images.remove((Key) key);
+            if (image != null) {
+                cachedBytes -= getSize(image);
+            }
+        }
+    }
+
+    private static long getSize(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * Removes all frames from the cache. Statistics are not reset.
+     */
+    public synchronized void clear() {
+        images.clear();
+        cachedBytes = 0;
+    }
+
+    /**
+     * Returns the maximum size of the cache.
+     *
+     * @return the maximum number of bytes of cached frame pixels
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the current size of the cache.
+     *
+     * @return the number of bytes of cached frame pixels
+     */
+    public synchronized long getCachedBytes() {
+        expungeCollected();
+        return cachedBytes;
+    }
+
+    /**
+     * Returns the number of cached frames.
+     *
+     * @return the frame count
+     */
+    public synchronized int getCachedFrameCount() {
+        expungeCollected();
+        return images.size();
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     *
+     * @return the hit count
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of requests which required rendering the frame.
+     *
+     * @return the miss count
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of frames evicted because of the size limit.
+     *
+     * @return the eviction count
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+}
@@ -0,0 +1,184 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Fctl;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Compositing of animation frames on non-premultiplied ARGB pixel arrays.
+ * <p>
+ * All operations work directly on the int arrays backing
+ * {@link BufferedImage#TYPE_INT_ARGB} images and touch only the frame region,
+ * without Java2D involvement.
+ * </p>
+ *
+ * @author JPEXS
+ */
+public class FrameCompositor {
+
+    /**
+     * Draws subframe pixels onto the canvas.
+     *
+     * @param canvas the canvas pixels
+     * @param canvasWidth the canvas width
+     * @param subFrame the subframe pixels, {@code w * h} values
+     * @param x the x offset of the frame region
+     * @param y the y offset of the frame region
+     * @param w the width of the frame region
+     * @param h the height of the frame region
+     * @param blendOp the blend operation, {@link Fctl#BLEND_OP_SOURCE} or
+     *     {@link Fctl#BLEND_OP_OVER}
+     */
+    public static void drawFrame(int[] canvas, int canvasWidth, int[] subFrame, int x, int y, int w, int h, int blendOp) {
+        if (blendOp == Fctl.BLEND_OP_SOURCE) {
+            for (int row = 0; row < h; row++) {
+                System.arraycopy(subFrame, row * w, canvas, (y + row) * canvasWidth + x, w);
+            }
+            return;
+        }
+        for (int row = 0; row < h; row++) {
+            int src = row * w;
+            int dst = (y + row) * canvasWidth + x;
+            for (int i = 0; i < w; i++, src++, dst++) {
+                canvas[dst] = blendOver(subFrame[src], canvas[dst]);
+            }
+        }
+    }
+
+    /**
+     * Composites source pixel over destination pixel, both non-premultiplied
+     * ARGB.
+     *
+     * @param src the source pixel
+     * @param dst the destination pixel
+     * @return the resulting pixel
+     */
+    public static int blendOver(int src, int dst) {
+        int sa = src >>> 24;
+        if (sa == 0xFF) {
+            return src;
+        }
+        if (sa == 0) {
+            return dst;
+        }
+        int da = dst >>> 24;
+        if (da == 0) {
+            return src;
+        }
+        int u = sa * 255;
+        int v = (255 - sa) * da;
+        int total = u + v;
+        int half = total >> 1;
+        int a = (total + 127) / 255;
+        int r = (((src >> 16) & 0xFF) * u + ((dst >> 16) & 0xFF) * v + half) / total;
+        int g = (((src >> 8) & 0xFF) * u + ((dst >> 8) & 0xFF) * v + half) / total;
+        int b = ((src & 0xFF) * u + (dst & 0xFF) * v + half) / total;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Fills region of the canvas with the specified value.
+     *
+     * @param canvas the canvas pixels
+     * @param canvasWidth the canvas width
+     * @param x the x offset of the region
+     * @param y the y offset of the region
+     * @param w the width of the region
+     * @param h the height of the region
+     * @param argb the pixel value
+     */
+    public static void fillRegion(int[] canvas, int canvasWidth, int x, int y, int w, int h, int argb) {
+        for (int row = 0; row < h; row++) {
+            int offset = (y + row) * canvasWidth + x;
+            Arrays.fill(canvas, offset, offset + w, argb);
+        }
+    }
+
+    /**
+     * Copies region of the canvas to a region-sized array.
+     *
+     * @param canvas the canvas pixels
+     * @param canvasWidth the canvas width
+     * @param x the x offset of the region
+     * @param y the y offset of the region
+     * @param w the width of the region
+     * @param h the height of the region
+     * @param target the target array of at least {@code w * h} values
+     */
+    public static void saveRegion(int[] canvas, int canvasWidth, int x, int y, int w, int h, int[] target) {
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(canvas, (y + row) * canvasWidth + x, target, row * w, w);
+        }
+    }
+
+    /**
+     * Copies region-sized array back to region of the canvas.
+     *
+     * @param canvas the canvas pixels
+     * @param canvasWidth the canvas width
+     * @param x the x offset of the region
+     * @param y the y offset of the region
+     * @param w the width of the region
+     * @param h the height of the region
+     * @param source the source array of at least {@code w * h} values
+     */
+    public static void restoreRegion(int[] canvas, int canvasWidth, int x, int y, int w, int h, int[] source) {
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(source, row * w, canvas, (y + row) * canvasWidth + x, w);
+        }
+    }
+
+    /**
+     * Returns pixels of the image as non-premultiplied ARGB values, one value
+     * per pixel, row by row.
+     * <p>
+     * For {@link BufferedImage#TYPE_INT_ARGB} images with a plain raster, the
+     * backing array is returned directly, other images are converted.
+     * </p>
+     *
+     * @param image the image
+     * @return the pixels
+     */
+    public static int[] getArgbPixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        WritableRaster raster = image.getRaster();
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB
+                && raster.getParent() == null
+                && raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getDataBuffer().getOffset() == 0
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == width) {
+            return ((DataBufferInt) raster.getDataBuffer()).getData();
+        }
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * Creates {@link BufferedImage#TYPE_INT_ARGB} image backed by the pixel
+     * array.
+     * <p>
+     * The array can be longer than {@code width * height}, for example when
+     * borrowed from a {@link BufferPool}.
+     * </p>
+     *
+     * @param pixels the pixels
+     * @param width the image width
+     * @param height the image height
+     * @return the image
+     */
+    public static BufferedImage createArgbImage(int[] pixels, int width, int height) {
+        ColorModel colorModel = ColorModel.getRGBdefault();
+        DataBufferInt dataBuffer = new DataBufferInt(pixels, width * height);
+        SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(
+                dataBuffer.getDataType(), width, height, new int[]{0xFF0000, 0xFF00, 0xFF, 0xFF000000});
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, dataBuffer, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+}
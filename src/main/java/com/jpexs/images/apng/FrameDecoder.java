@@ -0,0 +1,248 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Fctl;
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.chunks.Plte;
+import com.jpexs.images.apng.chunks.Trns;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoder of frame image data of a single PNG.
+ * <p>
+ * Holds the header chunks needed for decoding and optionally downscales the
+ * frames to fit the target size of {@link DecodeOptions}. Frame regions are
+ * scaled accordingly, see {@link #getRegion(Fctl)}. Instances are immutable
+ * and can be used from any thread.
+ * </p>
+ *
+ * @author JPEXS
+ */
+class FrameDecoder {
+
+    private final Ihdr hdr;
+    private final Plte plte;
+    private final Trns trns;
+    private final List<Chunk> otherChunks;
+
+    private final BufferPool pool;
+
+    private final int imageWidth;
+    private final int imageHeight;
+
+    private final int canvasWidth;
+    private final int canvasHeight;
+
+    /**
+     * Constructs a decoder.
+     *
+     * @param hdr the image header
+     * @param plte the palette, may be null
+     * @param trns the transparency chunk, may be null
+     * @param otherChunks other chunks preceding image data
+     * @param options the decoding options
+     */
+    FrameDecoder(Ihdr hdr, Plte plte, Trns trns, List<Chunk> otherChunks, DecodeOptions options) {
+        this.hdr = hdr;
+        this.plte = plte;
+        this.trns = trns;
+        this.otherChunks = new ArrayList<>(otherChunks);
+        this.pool = options.getBufferPool();
+        this.imageWidth = (int) hdr.getWidth();
+        this.imageHeight = (int) hdr.getHeight();
+
+        double scale = 1;
+        if (options.getTargetWidth() > 0 && options.getTargetHeight() > 0) {
+            scale = Math.min(1, Math.min(
+                    options.getTargetWidth() / (double) imageWidth,
+                    options.getTargetHeight() / (double) imageHeight));
+        }
+        if (scale < 1) {
+            canvasWidth = Math.max(1, (int) Math.round(imageWidth * scale));
+            canvasHeight = Math.max(1, (int) Math.round(imageHeight * scale));
+        } else {
+            canvasWidth = imageWidth;
+            canvasHeight = imageHeight;
+        }
+    }
+
+    /**
+     * Returns the buffer pool.
+     *
+     * @return the buffer pool
+     */
+    BufferPool getBufferPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return the width from the image header
+     */
+    int getImageWidth() {
+        return imageWidth;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return the height from the image header
+     */
+    int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * Returns the width of the composited frames.
+     *
+     * @return the canvas width, smaller than the image width when
+     *     downscaling
+     */
+    int getCanvasWidth() {
+        return canvasWidth;
+    }
+
+    /**
+     * Returns the height of the composited frames.
+     *
+     * @return the canvas height, smaller than the image height when
+     *     downscaling
+     */
+    int getCanvasHeight() {
+        return canvasHeight;
+    }
+
+    /**
+     * Checks whether frames are downscaled.
+     *
+     * @return {@code true} if the canvas is smaller than the image
+     */
+    boolean isScaled() {
+        return canvasWidth != imageWidth || canvasHeight != imageHeight;
+    }
+
+    /**
+     * Checks whether the image uses a palette.
+     *
+     * @return {@code true} for {@link Ihdr#COLOR_TYPE_INDEXEDCOLOR}
+     */
+    boolean isIndexed() {
+        return hdr.getColorType() == Ihdr.COLOR_TYPE_INDEXEDCOLOR;
+    }
+
+    /**
+     * Returns the palette of an indexed image.
+     *
+     * @return 256 ARGB values including tRNS alpha
+     */
+    int[] getPalette() {
+        return new PngRasterDecoder(hdr, plte, trns).getPalette();
+    }
+
+    /**
+     * Returns the number of entries of the PLTE chunk.
+     *
+     * @return the palette size, 0 when there is no palette
+     */
+    int getPaletteSize() {
+        return plte == null ? 0 : Math.min(256, plte.getPaletteData().length / 3);
+    }
+
+    /**
+     * Returns the region of the frame on the canvas.
+     *
+     * @param fctl the frame control chunk
+     * @return the frame region, scaled when downscaling
+     */
+    FrameRegion getRegion(Fctl fctl) {
+        FrameRegion region = new FrameRegion(fctl);
+        if (!isScaled()) {
+            return region;
+        }
+        return Downscaler.scaleRegion(region, imageWidth, imageHeight, canvasWidth, canvasHeight);
+    }
+
+    /**
+     * Decodes image data of the frame. Pixels of the returned image are
+     * borrowed from the buffer pool.
+     *
+     * @param fctl the frame control chunk
+     * @param data the parts of the compressed data
+     * @return the subframe image of the size of {@link #getRegion(Fctl)}
+     * @throws IOException if the image data is invalid
+     */
+    BufferedImage decode(Fctl fctl, List<ByteBuffer> data) throws IOException {
+        return decode(new FrameRegion(fctl), data, pool);
+    }
+
+    /**
+     * Decodes image data of the default image.
+     *
+     * @param data the parts of the compressed data
+     * @return the image of the canvas size
+     * @throws IOException if the image data is invalid
+     */
+    BufferedImage decodeDefaultImage(List<ByteBuffer> data) throws IOException {
+        return decode(new FrameRegion(0, 0, imageWidth, imageHeight), data, BufferPool.NONE);
+    }
+
+    /**
+     * Decodes image data of an indexed frame into palette indices. Frames are
+     * never scaled.
+     *
+     * @param fctl the frame control chunk
+     * @param data the parts of the compressed data
+     * @return the palette indices of the frame region, borrowed from the
+     *     buffer pool
+     * @throws IOException if the image data is invalid
+     */
+    byte[] decodeIndices(Fctl fctl, List<ByteBuffer> data) throws IOException {
+        int width = (int) fctl.getWidth();
+        int height = (int) fctl.getHeight();
+        if (PngRasterDecoder.isSupported(hdr)) {
+            return new PngRasterDecoder(hdr, plte, trns).decodeIndices(data, width, height, pool);
+        }
+        //fallback to ImageIO, which keeps the palette of indexed images
+        BufferedImage image = AnimatedPngDecoder.decodeImageIO(hdr, otherChunks, width, height, data, pool);
+        if (!(image.getColorModel() instanceof IndexColorModel)) {
+            throw new IOException("Unsupported indexed image");
+        }
+        Raster raster = image.getRaster();
+        int[] samples = raster.getSamples(0, 0, width, height, 0, (int[]) null);
+        byte[] indices = pool.borrowBytes(width * height);
+        for (int i = 0; i < samples.length; i++) {
+            indices[i] = (byte) samples[i];
+        }
+        return indices;
+    }
+
+    private BufferedImage decode(FrameRegion source, List<ByteBuffer> data, BufferPool pool) throws IOException {
+        if (!isScaled()) {
+            return AnimatedPngDecoder.decodeImage(hdr, plte, trns, otherChunks, source.width, source.height, data, pool);
+        }
+        FrameRegion target = Downscaler.scaleRegion(source, imageWidth, imageHeight, canvasWidth, canvasHeight);
+        int[] pixels = pool.borrowInts(target.width * target.height);
+        int[] scaled;
+        if (PngRasterDecoder.isSupported(hdr)) {
+            scaled = new PngRasterDecoder(hdr, plte, trns).decodeScaled(data, source.width, source.height, pool,
+                    new Downscaler(source, target, imageWidth, imageHeight, canvasWidth, canvasHeight, pixels));
+        } else {
+            //fallback to ImageIO, then scale
+            BufferedImage image = AnimatedPngDecoder.decodeImageIO(hdr, otherChunks, source.width, source.height, data, pool);
+            int[] imagePixels = FrameCompositor.getArgbPixels(image);
+            Downscaler scaler = new Downscaler(source, target, imageWidth, imageHeight, canvasWidth, canvasHeight, pixels);
+            for (int y = 0; y < source.height; y++) {
+                scaler.addRow(imagePixels, y * source.width, y);
+            }
+            scaled = scaler.finish();
+        }
+        return FrameCompositor.createArgbImage(scaled, target.width, target.height);
+    }
+}
@@ -0,0 +1,32 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Fctl;
+
+/**
+ * Rectangular region of a frame on the canvas.
+ *
+ * @author JPEXS
+ */
+class FrameRegion {
+
+    final int x;
+    final int y;
+    final int width;
+    final int height;
+
+    FrameRegion(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Creates region of the frame as specified in its fcTL chunk.
+     *
+     * @param fctl the frame control chunk
+     */
+    FrameRegion(Fctl fctl) {
+        this((int) fctl.getxOffset(), (int) fctl.getyOffset(), (int) fctl.getWidth(), (int) fctl.getHeight());
+    }
+}
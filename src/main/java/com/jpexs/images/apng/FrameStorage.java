@@ -0,0 +1,27 @@
+package com.jpexs.images.apng;
+
+/**
+ * How decoded frames are kept in {@link com.jpexs.images.apng.data.AnimatedPngData}.
+ *
+ * @author JPEXS
+ * @see DecodeOptions#setFrameStorage(FrameStorage)
+ */
+public enum FrameStorage {
+
+    /**
+     * Every frame keeps its fully composited canvas.
+     */
+    FULL,
+    /**
+     * Every frame keeps only its decoded subframe region, full canvas
+     * snapshots are kept every {@link DecodeOptions#getSnapshotInterval()}
+     * frames. Frame images are composited on demand from the nearest
+     * snapshot.
+     */
+    SPARSE,
+    /**
+     * Every frame keeps only its original compressed image data. Frame images
+     * are decoded on demand and kept in {@link DecodeOptions#getFrameCache()}.
+     */
+    COMPRESSED
+}
@@ -0,0 +1,383 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Fctl;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Compositing of indexed animation frames in palette index space.
+ * <p>
+ * The canvas holds one palette index per pixel and frames are returned as
+ * {@link BufferedImage#TYPE_BYTE_INDEXED} images sharing single
+ * {@link IndexColorModel}. Source blending, disposal and over blending of
+ * fully opaque or fully transparent palette entries are exact in index space.
+ * Only when a partially transparent entry is blended over a visible pixel, the
+ * canvas is expanded to ARGB and the frame is returned as
+ * {@link BufferedImage#TYPE_INT_ARGB} image. Pixels which are not palette
+ * colors are counted in the regions touched by each frame, and the canvas goes
+ * back to indices as soon as there are none left.
+ * </p>
+ *
+ * @author JPEXS
+ */
+class IndexedFrameCompositor {
+
+    /**
+     * Size of the color hash table, twice the maximum number of colors.
+     */
+    private static final int COLOR_TABLE_SIZE = 512;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * ARGB values of all 256 indices.
+     */
+    private final int[] palette;
+
+    private final IndexColorModel colorModel;
+
+    /**
+     * Index of a fully transparent palette entry, used as background.
+     */
+    private final byte transparentIndex;
+
+    /**
+     * Whether the palette contains partially transparent entries.
+     */
+    private final boolean partialAlpha;
+
+    /**
+     * Open addressing hash table of palette colors, for going back from ARGB
+     * canvas.
+     */
+    private final int[] tableColors = new int[COLOR_TABLE_SIZE];
+
+    /**
+     * Palette index of each color of {@link #tableColors}, -1 for empty slots.
+     */
+    private final short[] tableIndices = new short[COLOR_TABLE_SIZE];
+
+    private final KeyFrameTracker keyFrames;
+
+    /**
+     * Canvas in index space, null when the canvas is ARGB.
+     */
+    private byte[] indexCanvas;
+
+    /**
+     * Canvas in ARGB, null when the canvas is in index space.
+     */
+    private int[] argbCanvas;
+
+    /**
+     * Number of pixels of the ARGB canvas which are not palette colors.
+     */
+    private int nonPaletteCount;
+
+    /**
+     * Saved region for {@link Fctl#DISPOSE_OP_PREVIOUS}, one of them is set.
+     */
+    private byte[] previousIndices;
+    private int[] previousArgb;
+
+    private Fctl lastFctl;
+
+    private int frameCount = 0;
+
+    private IndexedFrameCompositor(int width, int height, int[] palette, int transparentIndex) {
+        this.width = width;
+        this.height = height;
+        this.palette = palette;
+        this.transparentIndex = (byte) transparentIndex;
+        byte[] r = new byte[256];
+        byte[] g = new byte[256];
+        byte[] b = new byte[256];
+        byte[] a = new byte[256];
+        boolean partial = false;
+        Arrays.fill(tableIndices, (short) -1);
+        for (int i = 0; i < 256; i++) {
+            int argb = palette[i];
+            a[i] = (byte) (argb >>> 24);
+            r[i] = (byte) (argb >> 16);
+            g[i] = (byte) (argb >> 8);
+            b[i] = (byte) argb;
+            int alpha = argb >>> 24;
+            if (alpha != 0 && alpha != 0xFF) {
+                partial = true;
+            }
+            int slot = hashSlot(argb);
+            while (tableIndices[slot] != -1 && tableColors[slot] != argb) {
+                slot = (slot + 1) & (COLOR_TABLE_SIZE - 1);
+            }
+            //lowest index wins
+            if (tableIndices[slot] == -1) {
+                tableColors[slot] = argb;
+                tableIndices[slot] = (short) i;
+            }
+        }
+        this.partialAlpha = partial;
+        this.colorModel = new IndexColorModel(8, 256, r, g, b, a);
+        this.keyFrames = new KeyFrameTracker(width, height);
+        this.indexCanvas = new byte[width * height];
+        Arrays.fill(indexCanvas, this.transparentIndex);
+    }
+
+    /**
+     * Creates compositor for the palette.
+     *
+     * @param width the canvas width
+     * @param height the canvas height
+     * @param palette ARGB values of all 256 indices
+     * @param paletteSize the number of entries of the PLTE chunk
+     * @return the compositor, or null when the palette has no fully
+     *     transparent entry and no free index to add it
+     */
+    static IndexedFrameCompositor create(int width, int height, int[] palette, int paletteSize) {
+        int[] colors = palette.clone();
+        int transparentIndex = -1;
+        for (int i = 0; i < paletteSize; i++) {
+            if (colors[i] >>> 24 == 0) {
+                transparentIndex = i;
+                break;
+            }
+        }
+        if (transparentIndex == -1) {
+            if (paletteSize >= 256) {
+                return null;
+            }
+            transparentIndex = paletteSize;
+            colors[transparentIndex] = 0;
+        }
+        return new IndexedFrameCompositor(width, height, colors, transparentIndex);
+    }
+
+    /**
+     * Creates indexed image backed by the array, using the shared color model.
+     *
+     * @param indices the palette indices, at least {@code width * height}
+     * @param width the image width
+     * @param height the image height
+     * @return the image
+     */
+    BufferedImage createIndexedImage(byte[] indices, int width, int height) {
+        DataBufferByte dataBuffer = new DataBufferByte(indices, width * height);
+        WritableRaster raster = Raster.createInterleavedRaster(dataBuffer, width, height, width, 1, new int[]{0}, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * Composites next frame.
+     *
+     * @param fctl the frame control chunk
+     * @param subFrame the palette indices of the frame region
+     * @return new image of the composited frame, indexed unless the frame
+     *     needed blending
+     */
+    BufferedImage addFrame(Fctl fctl, byte[] subFrame) {
+        int frame = frameCount++;
+        int keyFrame = keyFrames.addFrame(fctl);
+        if (keyFrame == frame && indexCanvas == null) {
+            //nothing from before shows through, start over in index space
+            indexCanvas = new byte[width * height];
+            Arrays.fill(indexCanvas, transparentIndex);
+            argbCanvas = null;
+        } else if (lastFctl != null) {
+            dispose(lastFctl);
+        }
+
+        FrameRegion region = new FrameRegion(fctl);
+        if (fctl.getDisposeOp() == Fctl.DISPOSE_OP_PREVIOUS) {
+            savePrevious(region);
+        }
+
+        if (indexCanvas != null && fctl.getBlendOp() == Fctl.BLEND_OP_OVER && needsBlending(region, subFrame)) {
+            expandCanvas();
+        }
+        if (indexCanvas != null) {
+            drawIndices(region, subFrame, fctl.getBlendOp());
+        } else {
+            int[] subFramePixels = new int[region.width * region.height];
+            for (int i = 0; i < subFramePixels.length; i++) {
+                subFramePixels[i] = palette[subFrame[i] & 0xFF];
+            }
+            nonPaletteCount -= countNonPalette(region);
+            FrameCompositor.drawFrame(argbCanvas, width, subFramePixels, region.x, region.y, region.width, region.height, fctl.getBlendOp());
+            nonPaletteCount += countNonPalette(region);
+            //blended pixels may have been overwritten or disposed meanwhile
+            if (nonPaletteCount == 0) {
+                indexCanvas = toIndices(argbCanvas);
+                argbCanvas = null;
+            }
+        }
+        lastFctl = fctl;
+
+        if (indexCanvas != null) {
+            return createIndexedImage(indexCanvas.clone(), width, height);
+        }
+        return FrameCompositor.createArgbImage(argbCanvas.clone(), width, height);
+    }
+
+    private boolean needsBlending(FrameRegion region, byte[] subFrame) {
+        if (!partialAlpha) {
+            return false;
+        }
+        for (int row = 0; row < region.height; row++) {
+            int src = row * region.width;
+            int dst = (region.y + row) * width + region.x;
+            for (int i = 0; i < region.width; i++, src++, dst++) {
+                int alpha = palette[subFrame[src] & 0xFF] >>> 24;
+                if (alpha != 0 && alpha != 0xFF && palette[indexCanvas[dst] & 0xFF] >>> 24 != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void drawIndices(FrameRegion region, byte[] subFrame, int blendOp) {
+        if (blendOp == Fctl.BLEND_OP_SOURCE) {
+            for (int row = 0; row < region.height; row++) {
+                System.arraycopy(subFrame, row * region.width, indexCanvas, (region.y + row) * width + region.x, region.width);
+            }
+            return;
+        }
+        for (int row = 0; row < region.height; row++) {
+            int src = row * region.width;
+            int dst = (region.y + row) * width + region.x;
+            for (int i = 0; i < region.width; i++, src++, dst++) {
+                //partially transparent entries only land on transparent pixels here
+                if (palette[subFrame[src] & 0xFF] >>> 24 != 0) {
+                    indexCanvas[dst] = subFrame[src];
+                }
+            }
+        }
+    }
+
+    private void savePrevious(FrameRegion region) {
+        int size = region.width * region.height;
+        if (indexCanvas != null) {
+            previousArgb = null;
+            previousIndices = new byte[size];
+            for (int row = 0; row < region.height; row++) {
+                System.arraycopy(indexCanvas, (region.y + row) * width + region.x, previousIndices, row * region.width, region.width);
+            }
+        } else {
+            previousIndices = null;
+            previousArgb = new int[size];
+            FrameCompositor.saveRegion(argbCanvas, width, region.x, region.y, region.width, region.height, previousArgb);
+        }
+    }
+
+    private void dispose(Fctl fctl) {
+        FrameRegion region = new FrameRegion(fctl);
+        switch (fctl.getDisposeOp()) {
+            case Fctl.DISPOSE_OP_NONE:
+                break;
+            case Fctl.DISPOSE_OP_BACKGROUND:
+                if (indexCanvas != null) {
+                    for (int row = 0; row < region.height; row++) {
+                        int offset = (region.y + row) * width + region.x;
+                        Arrays.fill(indexCanvas, offset, offset + region.width, transparentIndex);
+                    }
+                } else {
+                    nonPaletteCount -= countNonPalette(region);
+                    FrameCompositor.fillRegion(argbCanvas, width, region.x, region.y, region.width, region.height, 0);
+                }
+                break;
+            case Fctl.DISPOSE_OP_PREVIOUS:
+                if (indexCanvas != null && previousArgb != null) {
+                    previousIndices = toIndices(previousArgb);
+                    if (previousIndices == null) {
+                        expandCanvas();
+                    }
+                }
+                if (indexCanvas != null) {
+                    for (int row = 0; row < region.height; row++) {
+                        System.arraycopy(previousIndices, row * region.width, indexCanvas, (region.y + row) * width + region.x, region.width);
+                    }
+                } else {
+                    if (previousArgb == null) {
+                        previousArgb = new int[previousIndices.length];
+                        for (int i = 0; i < previousArgb.length; i++) {
+                            previousArgb[i] = palette[previousIndices[i] & 0xFF];
+                        }
+                    }
+                    nonPaletteCount -= countNonPalette(region);
+                    FrameCompositor.restoreRegion(argbCanvas, width, region.x, region.y, region.width, region.height, previousArgb);
+                    nonPaletteCount += countNonPalette(region);
+                }
+                break;
+        }
+    }
+
+    private void expandCanvas() {
+        argbCanvas = new int[width * height];
+        for (int i = 0; i < argbCanvas.length; i++) {
+            argbCanvas[i] = palette[indexCanvas[i] & 0xFF];
+        }
+        indexCanvas = null;
+        nonPaletteCount = 0;
+    }
+
+    /**
+     * Returns palette index of the ARGB value.
+     *
+     * @return the index, or -1 when the value is not a palette color
+     */
+    private int indexOf(int argb) {
+        if (argb >>> 24 == 0) {
+            return transparentIndex & 0xFF;
+        }
+        int slot = hashSlot(argb);
+        while (tableIndices[slot] != -1) {
+            if (tableColors[slot] == argb) {
+                return tableIndices[slot];
+            }
+            slot = (slot + 1) & (COLOR_TABLE_SIZE - 1);
+        }
+        return -1;
+    }
+
+    private static int hashSlot(int argb) {
+        return (argb * 0x9E3779B9) >>> 23;
+    }
+
+    /**
+     * Counts pixels of the ARGB canvas region which are not palette colors.
+     */
+    private int countNonPalette(FrameRegion region) {
+        int count = 0;
+        for (int row = 0; row < region.height; row++) {
+            int offset = (region.y + row) * width + region.x;
+            for (int i = 0; i < region.width; i++) {
+                if (indexOf(argbCanvas[offset + i]) < 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Maps ARGB pixels back to palette indices.
+     *
+     * @return the indices, or null when some pixel is not a palette color
+     */
+    private byte[] toIndices(int[] argb) {
+        byte[] indices = new byte[argb.length];
+        for (int i = 0; i < argb.length; i++) {
+            int index = indexOf(argb[i]);
+            if (index < 0) {
+                return null;
+            }
+            indices[i] = (byte) index;
+        }
+        return indices;
+    }
+}
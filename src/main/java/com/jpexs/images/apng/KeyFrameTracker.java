@@ -0,0 +1,83 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Fctl;
+
+/**
+ * Tracker of key frames - frames before which the canvas is fully transparent
+ * or which fully redefine the canvas. Any frame can be composited starting
+ * from its key frame on a transparent canvas.
+ *
+ * @author JPEXS
+ * @see ApngFrameIndex
+ */
+class KeyFrameTracker {
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * Whether the canvas is fully transparent before the next frame.
+     */
+    private boolean clearBefore = true;
+
+    private int frameCount = 0;
+
+    private int keyFrame = 0;
+
+    /**
+     * Constructs a tracker for the specified canvas size.
+     *
+     * @param width the canvas width
+     * @param height the canvas height
+     */
+    KeyFrameTracker(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the dispose operation of the frame as it is applied, dispose to
+     * previous of the first frame is treated as dispose to background.
+     *
+     * @param fctl the frame control chunk
+     * @param frame the frame index
+     * @return the effective dispose operation
+     */
+    static int getEffectiveDisposeOp(Fctl fctl, int frame) {
+        if (frame == 0 && fctl.getDisposeOp() == Fctl.DISPOSE_OP_PREVIOUS) {
+            return Fctl.DISPOSE_OP_BACKGROUND;
+        }
+        return fctl.getDisposeOp();
+    }
+
+    /**
+     * Adds next frame.
+     *
+     * @param fctl the frame control chunk of the frame
+     * @return the index of the key frame of the added frame
+     */
+    int addFrame(Fctl fctl) {
+        int disposeOp = getEffectiveDisposeOp(fctl, frameCount);
+        boolean fullFrame = fctl.getxOffset() == 0 && fctl.getyOffset() == 0
+                && fctl.getWidth() == width && fctl.getHeight() == height;
+        if (clearBefore
+                || (fullFrame && fctl.getBlendOp() == Fctl.BLEND_OP_SOURCE && disposeOp != Fctl.DISPOSE_OP_PREVIOUS)) {
+            keyFrame = frameCount;
+        }
+
+        switch (disposeOp) {
+            case Fctl.DISPOSE_OP_NONE:
+                clearBefore = false;
+                break;
+            case Fctl.DISPOSE_OP_BACKGROUND:
+                clearBefore = clearBefore || fullFrame;
+                break;
+            case Fctl.DISPOSE_OP_PREVIOUS:
+                //canvas reverts to the state before this frame
+                break;
+        }
+        frameCount++;
+        return keyFrame;
+    }
+}
@@ -13,6 +13,7 @@ import java.util.Collection;
  * PNG container - header and chunks.
  *
  * @author JPEXS
+ * @see PngParser
  */
 public class Png {
 
@@ -50,7 +51,21 @@ public class Png {
      *                     invalid
      */
     public Png(InputStream is) throws IOException {
+        this(is, ChunkFilter.ALL);
+    }
+
+    /**
+     * Constructs a PNG container by reading from an input stream, reading only
+     * chunks accepted by the filter.
+     *
+     * @param is the input stream to read from
+     * @param chunkFilter the filter of chunks which are read
+     * @throws IOException if an I/O error occurs or the PNG signature is
+     *                     invalid
+     */
+    public Png(InputStream is, ChunkFilter chunkFilter) throws IOException {
         PngInputStream pis = new PngInputStream(is);
+        pis.setChunkFilter(chunkFilter);
         byte[] signature = pis.readBytes(8);
         if (!Arrays.equals(signature, SIGNATURE)) {
             throw new IOException("Invalid PNG signature");
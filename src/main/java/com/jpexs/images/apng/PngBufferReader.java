@@ -0,0 +1,157 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Chunk;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reader of PNG chunks from a {@link ByteBuffer}, typically a memory-mapped
+ * file.
+ * <p>
+ * Chunk data is not copied, the chunks reference slices of the buffer. CRC is
+ * calculated directly over the buffer as well.
+ * </p>
+ *
+ * @author JPEXS
+ * @see PngInputStream
+ */
+public class PngBufferReader implements PngChunkSource {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Which chunk CRCs are verified.
+     */
+    private CrcPolicy crcPolicy = CrcPolicy.ALWAYS;
+
+    /**
+     * Which chunks are parsed, kept raw or skipped.
+     */
+    private ChunkFilter chunkFilter = ChunkFilter.ALL;
+
+    /**
+     * Constructs a new reader of the remaining bytes of the buffer.
+     * <p>
+     * The position of the passed buffer is not modified.
+     * </p>
+     *
+     * @param buffer the buffer containing PNG data
+     */
+    public PngBufferReader(ByteBuffer buffer) {
+        this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Returns which chunk CRCs are verified.
+     *
+     * @return the CRC policy
+     */
+    public CrcPolicy getCrcPolicy() {
+        return crcPolicy;
+    }
+
+    /**
+     * Sets which chunk CRCs are verified. Default is {@link CrcPolicy#ALWAYS}.
+     *
+     * @param crcPolicy the CRC policy
+     */
+    public void setCrcPolicy(CrcPolicy crcPolicy) {
+        this.crcPolicy = crcPolicy;
+    }
+
+    /**
+     * Returns the filter of chunks which are read.
+     *
+     * @return the chunk filter
+     */
+    public ChunkFilter getChunkFilter() {
+        return chunkFilter;
+    }
+
+    /**
+     * Sets the filter of chunks which are read. Default is
+     * {@link ChunkFilter#ALL}.
+     *
+     * @param chunkFilter the chunk filter
+     */
+    public void setChunkFilter(ChunkFilter chunkFilter) {
+        this.chunkFilter = chunkFilter;
+    }
+
+    /**
+     * Reads the specified number of bytes.
+     *
+     * @param number the number of bytes to read
+     * @return a byte array containing the read bytes
+     * @throws EOFException if the end of the buffer is reached
+     */
+    public byte[] readBytes(int number) throws EOFException {
+        if (buffer.remaining() < number) {
+            throw new EOFException();
+        }
+        byte[] ret = new byte[number];
+        buffer.get(ret);
+        return ret;
+    }
+
+    /**
+     * Returns the number of bytes read so far.
+     *
+     * @return the position in the buffer
+     */
+    public long getPosition() {
+        return buffer.position();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Chunk readChunk() throws IOException {
+        long length;
+        int chunkType;
+        ChunkAction action;
+        while (true) {
+            if (buffer.remaining() < 8) {
+                throw new EOFException();
+            }
+            length = buffer.getInt() & 0xFFFFFFFFL;
+            chunkType = buffer.getInt();
+            if (length > buffer.remaining() - 4) {
+                throw new EOFException();
+            }
+            action = chunkFilter.getAction(chunkType);
+            if (action != ChunkAction.SKIP) {
+                break;
+            }
+            buffer.position(buffer.position() + (int) length + 4);
+        }
+        ByteBuffer chunkData = buffer.slice();
+        chunkData.limit((int) length);
+        buffer.position(buffer.position() + (int) length);
+        long crc = buffer.getInt() & 0xFFFFFFFFL;
+        if (crcPolicy.isVerified(chunkType)) {
+            long calculatedCrc = Crc.calculate(chunkType, chunkData);
+            if (crc != calculatedCrc) {
+                throw new IOException("Invalid CRC value: " + calculatedCrc + " expected but " + crc + " found in chunk of type " + Chunk.toTypeString(chunkType));
+            }
+        }
+        Chunk chunk;
+        if (action == ChunkAction.RAW) {
+            chunk = new Chunk(chunkType, chunkData);
+        } else {
+            chunk = PngInputStream.createChunk(chunkType, chunkData);
+        }
+        chunk.setSourceCrc(crc);
+        return chunk;
+    }
+
+    /**
+     * Does nothing, the buffer is not owned by the reader.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,23 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Chunk;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Source of PNG chunks.
+ *
+ * @author JPEXS
+ * @see PngInputStream
+ * @see PngBufferReader
+ */
+public interface PngChunkSource extends Closeable {
+
+    /**
+     * Reads the next chunk.
+     *
+     * @return the parsed chunk
+     * @throws IOException if an I/O error occurs or the chunk is invalid
+     */
+    public Chunk readChunk() throws IOException;
+}
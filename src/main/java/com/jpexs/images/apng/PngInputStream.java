@@ -13,19 +13,63 @@ import com.jpexs.images.apng.chunks.Trns;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Input stream for Png data.
+ * <p>
+ * Data is read from the wrapped stream in blocks into an internal buffer and
+ * big-endian values are assembled from the buffer, so small reads do not call
+ * the wrapped stream. The wrapped stream may be read ahead beyond the bytes
+ * consumed from this stream.
+ * </p>
  *
  * @author JPEXS
  */
-public class PngInputStream extends InputStream {
+public class PngInputStream extends InputStream implements PngChunkSource {
 
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The wrapped stream, null when reading from an array.
+     */
     private final InputStream is;
 
+    private final byte[] buffer;
+
+    /**
+     * Position of the next byte in the buffer.
+     */
+    private int bufferPos = 0;
+
+    /**
+     * End of valid data in the buffer.
+     */
+    private int bufferLimit = 0;
+
+    /**
+     * Number of bytes read from this stream.
+     */
+    private long position = 0;
+
+    /**
+     * Maximum length of chunk data which is read, limited by the maximum
+     * length of Java array.
+     */
+    private long maxChunkLength = Integer.MAX_VALUE - 4;
+
+    /**
+     * Which chunk CRCs are verified.
+     */
+    private CrcPolicy crcPolicy = CrcPolicy.ALWAYS;
+
+    /**
+     * Which chunks are parsed, kept raw or skipped.
+     */
+    private ChunkFilter chunkFilter = ChunkFilter.ALL;
+
     /**
      * Constructs a new PngInputStream wrapping the specified input stream.
      *
@@ -33,7 +77,66 @@ public class PngInputStream extends InputStream {
      */
     public PngInputStream(InputStream is) {
         this.is = is;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Constructs a new PngInputStream reading the array. The array is used
+     * directly, without copying.
+     *
+     * @param data the data to read
+     */
+    public PngInputStream(byte[] data) {
+        this.is = null;
+        this.buffer = data;
+        this.bufferLimit = data.length;
+    }
 
+    /**
+     * Constructs a new PngInputStream reading the remaining bytes of the
+     * buffer. Array-backed buffers are read in place, other buffers are
+     * copied. Position of the buffer is not modified.
+     *
+     * @param data the data to read
+     */
+    public PngInputStream(ByteBuffer data) {
+        this.is = null;
+        if (data.hasArray()) {
+            this.buffer = data.array();
+            this.bufferPos = data.arrayOffset() + data.position();
+            this.bufferLimit = bufferPos + data.remaining();
+        } else {
+            this.buffer = new byte[data.remaining()];
+            data.duplicate().get(buffer);
+            this.bufferLimit = buffer.length;
+        }
+    }
+
+    /**
+     * Makes at least the specified number of bytes available in the buffer.
+     *
+     * @param number the number of bytes, at most the buffer size
+     * @throws IOException if an I/O error occurs
+     * @throws EOFException if the end of stream is reached
+     */
+    private void require(int number) throws IOException {
+        if (bufferLimit - bufferPos >= number) {
+            return;
+        }
+        if (is == null) {
+            throw new EOFException();
+        }
+        int available = bufferLimit - bufferPos;
+        System.arraycopy(buffer, bufferPos, buffer, 0, available);
+        bufferPos = 0;
+        bufferLimit = available;
+        while (bufferLimit < number) {
+            int count = is.read(buffer, bufferLimit, buffer.length - bufferLimit);
+            if (count == -1) {
+                throw new EOFException();
+            }
+            bufferLimit += count;
+        }
     }
 
     /**
@@ -41,10 +144,15 @@ public class PngInputStream extends InputStream {
      *
      * @return the unsigned integer value
      * @throws IOException if an I/O error occurs
+     * @throws EOFException if the end of stream is reached
      */
     public long readUnsignedInt() throws IOException {
-        long ret = (readUnsignedByte() << 24) + (readUnsignedByte() << 16) + (readUnsignedByte() << 8) + readUnsignedByte();
-        return ret & 0xFFFFFFFFL;
+        require(4);
+        int p = bufferPos;
+        long ret = ((buffer[p] & 0xFFL) << 24) | ((buffer[p + 1] & 0xFF) << 16) | ((buffer[p + 2] & 0xFF) << 8) | (buffer[p + 3] & 0xFF);
+        bufferPos += 4;
+        position += 4;
+        return ret;
     }
 
     /**
@@ -52,9 +160,14 @@ public class PngInputStream extends InputStream {
      *
      * @return the unsigned short value
      * @throws IOException if an I/O error occurs
+     * @throws EOFException if the end of stream is reached
      */
     public int readUnsignedShort() throws IOException {
-        return (readUnsignedByte() << 8) + readUnsignedByte();
+        require(2);
+        int ret = ((buffer[bufferPos] & 0xFF) << 8) | (buffer[bufferPos + 1] & 0xFF);
+        bufferPos += 2;
+        position += 2;
+        return ret;
     }
 
     /**
@@ -65,11 +178,9 @@ public class PngInputStream extends InputStream {
      * @throws EOFException if the end of stream is reached
      */
     public int readUnsignedByte() throws IOException {
-        int ret = read();
-        if (ret == -1) {
-            throw new EOFException();
-        }
-        return ret;
+        require(1);
+        position++;
+        return buffer[bufferPos++] & 0xFF;
     }
 
     /**
@@ -78,14 +189,69 @@ public class PngInputStream extends InputStream {
      * @param number the number of bytes to read
      * @return a byte array containing the read bytes
      * @throws IOException if an I/O error occurs
+     * @throws EOFException if the end of stream is reached
      */
     public byte[] readBytes(int number) throws IOException {
-        byte[] buffer = new byte[number];
+        byte[] ret = new byte[number];
+        readBytes(ret, 0, number);
+        return ret;
+    }
+
+    /**
+     * Reads exactly the specified number of bytes into the buffer.
+     *
+     * @param buffer the buffer to read to
+     * @param offset the offset in the buffer
+     * @param number the number of bytes to read
+     * @throws IOException if an I/O error occurs
+     * @throws EOFException if the end of stream is reached
+     */
+    public void readBytes(byte[] buffer, int offset, int number) throws IOException {
         int pos = 0;
         while (pos < number) {
-            pos += is.read(buffer, pos, number - pos);
+            int count = read(buffer, offset + pos, number - pos);
+            if (count == -1) {
+                throw new EOFException();
+            }
+            pos += count;
         }
-        return buffer;
+    }
+
+    /**
+     * Skips the specified number of bytes.
+     *
+     * @param number the number of bytes to skip
+     * @throws IOException if an I/O error occurs
+     * @throws EOFException if the end of stream is reached
+     */
+    public void skipBytes(long number) throws IOException {
+        int fromBuffer = (int) Math.min(number, bufferLimit - bufferPos);
+        bufferPos += fromBuffer;
+        position += fromBuffer;
+        long remaining = number - fromBuffer;
+        if (remaining > 0 && is == null) {
+            throw new EOFException();
+        }
+        while (remaining > 0) {
+            long skipped = is.skip(remaining);
+            if (skipped <= 0) {
+                if (is.read() == -1) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+            position += skipped;
+        }
+    }
+
+    /**
+     * Returns the number of bytes read or skipped so far.
+     *
+     * @return the position in the data
+     */
+    public long getPosition() {
+        return position;
     }
 
     /**
@@ -93,53 +259,220 @@ public class PngInputStream extends InputStream {
      */
     @Override
     public int read() throws IOException {
-        return is.read();
+        if (bufferPos == bufferLimit) {
+            if (is == null) {
+                return -1;
+            }
+            int count = is.read(buffer, 0, buffer.length);
+            if (count <= 0) {
+                return -1;
+            }
+            bufferPos = 0;
+            bufferLimit = count;
+        }
+        position++;
+        return buffer[bufferPos++] & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int available = bufferLimit - bufferPos;
+        if (available == 0) {
+            if (is == null) {
+                return -1;
+            }
+            if (len >= buffer.length) {
+                //large reads bypass the buffer
+                int count = is.read(b, off, len);
+                if (count > 0) {
+                    position += count;
+                }
+                return count;
+            }
+            int count = is.read(buffer, 0, buffer.length);
+            if (count <= 0) {
+                return -1;
+            }
+            bufferPos = 0;
+            bufferLimit = count;
+            available = count;
+        }
+        int count = Math.min(available, len);
+        System.arraycopy(buffer, bufferPos, b, off, count);
+        bufferPos += count;
+        position += count;
+        return count;
+    }
+
+    /**
+     * Returns which chunk CRCs are verified.
+     *
+     * @return the CRC policy
+     */
+    public CrcPolicy getCrcPolicy() {
+        return crcPolicy;
+    }
+
+    /**
+     * Sets which chunk CRCs are verified. Default is {@link CrcPolicy#ALWAYS}.
+     *
+     * @param crcPolicy the CRC policy
+     */
+    public void setCrcPolicy(CrcPolicy crcPolicy) {
+        this.crcPolicy = crcPolicy;
+    }
+
+    /**
+     * Returns the filter of chunks which are read.
+     *
+     * @return the chunk filter
+     */
+    public ChunkFilter getChunkFilter() {
+        return chunkFilter;
+    }
+
+    /**
+     * Sets the filter of chunks which are read. Default is
+     * {@link ChunkFilter#ALL}.
+     *
+     * @param chunkFilter the chunk filter
+     */
+    public void setChunkFilter(ChunkFilter chunkFilter) {
+        this.chunkFilter = chunkFilter;
+    }
+
+    /**
+     * Sets the maximum length of chunk data, checked before the chunk data is
+     * allocated.
+     *
+     * @param maxChunkLength the maximum length in bytes, at most
+     *     {@code Integer.MAX_VALUE - 4}
+     */
+    void setMaxChunkLength(long maxChunkLength) {
+        this.maxChunkLength = Math.min(maxChunkLength, Integer.MAX_VALUE - 4);
     }
 
     /**
-     * Reads a single PNG chunk from the stream.
+     * Reads a single PNG chunk from the stream. Chunks skipped by the chunk
+     * filter are passed over.
      *
      * @return the parsed chunk
      * @throws IOException if an I/O error occurs or the chunk CRC is invalid
      */
+    @Override
     public Chunk readChunk() throws IOException {
-        long length = readUnsignedInt();
-        byte[] chunkTypeBytes = readBytes(4);
-        String chunkType = new String(chunkTypeBytes, StandardCharsets.US_ASCII);
+        long length;
+        int chunkType;
+        ChunkAction action;
+        while (true) {
+            length = readUnsignedInt();
+            chunkType = (int) readUnsignedInt();
+            action = chunkFilter.getAction(chunkType);
+            if (action != ChunkAction.SKIP) {
+                break;
+            }
+            skipBytes(length + 4);
+        }
+        if (length > maxChunkLength) {
+            DecodeLimits.check("Length of chunk " + Chunk.toTypeString(chunkType), length, maxChunkLength);
+        }
         byte[] chunkData = length == 0 ? new byte[0] : readBytes((int) length); //Note: This is limited by Java byte[] that can handle only int length
         long crc = readUnsignedInt();
-        long calculatedCrc = Crc.calculate(chunkTypeBytes, chunkData);
-        if (crc != calculatedCrc) {
-            throw new IOException("Invalid CRC value: " + calculatedCrc + " expected but " + crc + " found in chunk of type " + chunkType);
+        ByteBuffer chunkDataBuffer = ByteBuffer.wrap(chunkData);
+        if (crcPolicy.isVerified(chunkType)) {
+            long calculatedCrc = Crc.calculate(chunkType, chunkDataBuffer);
+            if (crc != calculatedCrc) {
+                throw new IOException("Invalid CRC value: " + calculatedCrc + " expected but " + crc + " found in chunk of type " + Chunk.toTypeString(chunkType));
+            }
+        }
+        Chunk chunk;
+        if (action == ChunkAction.RAW) {
+            chunk = new Chunk(chunkType, chunkDataBuffer);
+        } else {
+            chunk = createChunk(chunkType, chunkDataBuffer);
         }
+        chunk.setSourceCrc(crc);
+        return chunk;
+    }
 
+    /**
+     * Creates and parses a chunk of the specified type.
+     * <p>
+     * Known chunk types are represented by their specific classes, other types
+     * by generic {@link Chunk}.
+     * </p>
+     *
+     * @param chunkType the 4-character chunk type
+     * @param chunkData the chunk data
+     * @return the parsed chunk
+     * @throws IOException if the chunk data is invalid
+     */
+    public static Chunk createChunk(String chunkType, byte[] chunkData) throws IOException {
+        return createChunk(Chunk.toTypeCode(chunkType), ByteBuffer.wrap(chunkData));
+    }
+
+    /**
+     * Creates and parses a chunk of the specified type referencing the data
+     * without copying it.
+     *
+     * @param chunkType the 4-character chunk type
+     * @param chunkData the chunk data, its remaining bytes are used
+     * @return the parsed chunk
+     * @throws IOException if the chunk data is invalid
+     * @see #createChunk(int, ByteBuffer)
+     */
+    public static Chunk createChunk(String chunkType, ByteBuffer chunkData) throws IOException {
+        return createChunk(Chunk.toTypeCode(chunkType), chunkData);
+    }
+
+    /**
+     * Creates and parses a chunk of the specified type code referencing the
+     * data without copying it.
+     * <p>
+     * Known chunk types are represented by their specific classes, other types
+     * by generic {@link Chunk}. Image data of IDAT and fdAT chunks stays a
+     * slice of the passed buffer.
+     * </p>
+     *
+     * @param chunkType the chunk type packed to an int
+     * @param chunkData the chunk data, its remaining bytes are used
+     * @return the parsed chunk
+     * @throws IOException if the chunk data is invalid
+     */
+    public static Chunk createChunk(int chunkType, ByteBuffer chunkData) throws IOException {
         Chunk ret;
         switch (chunkType) {
-            case Ihdr.TYPE:
+            case Ihdr.TYPE_CODE:
                 ret = new Ihdr(chunkData);
                 break;
-            case Idat.TYPE:
+            case Idat.TYPE_CODE:
                 ret = new Idat(chunkData);
                 break;
-            case Plte.TYPE:
+            case Plte.TYPE_CODE:
                 ret = new Plte(chunkData);
                 break;
-            case Iend.TYPE:
+            case Iend.TYPE_CODE:
                 ret = new Iend(chunkData);
                 break;
-            case Trns.TYPE:
+            case Trns.TYPE_CODE:
                 ret = new Trns(chunkData);
                 break;
-            case Actl.TYPE:
+            case Actl.TYPE_CODE:
                 ret = new Actl(chunkData);
                 break;
-            case Fctl.TYPE:
+            case Fctl.TYPE_CODE:
                 ret = new Fctl(chunkData);
                 break;
-            case Fdat.TYPE:
+            case Fdat.TYPE_CODE:
                 ret = new Fdat(chunkData);
                 break;
-            case Text.TYPE:
+            case Text.TYPE_CODE:
                 ret = new Text(chunkData);
                 break;
             default:
@@ -162,7 +495,7 @@ public class PngInputStream extends InputStream {
         do {
             chunk = readChunk();
             ret.add(chunk);
-        } while (!(chunk instanceof Iend));
+        } while (chunk.getTypeCode() != Iend.TYPE_CODE);
         return ret;
     }
 
@@ -171,6 +504,22 @@ public class PngInputStream extends InputStream {
      */
     @Override
     public int available() throws IOException {
-        return is.available();
+        int available = bufferLimit - bufferPos;
+        if (is != null) {
+            available += is.available();
+        }
+        return available;
+    }
+
+    /**
+     * Closes the wrapped input stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (is != null) {
+            is.close();
+        }
     }
 }
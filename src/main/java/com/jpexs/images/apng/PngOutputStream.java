@@ -3,7 +3,7 @@ package com.jpexs.images.apng;
 import com.jpexs.images.apng.chunks.Chunk;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 
 /**
  * Output stream for png data.
@@ -81,21 +81,45 @@ public class PngOutputStream extends OutputStream {
         os.write(b, off, len);
     }
 
+    /**
+     * Writes remaining bytes of the buffer to the stream.
+     * <p>
+     * Position of the buffer is not modified.
+     * </p>
+     *
+     * @param buffer the buffer to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            os.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        ByteBuffer dup = buffer.duplicate();
+        byte[] copyBuffer = new byte[Math.min(8192, dup.remaining())];
+        while (dup.hasRemaining()) {
+            int len = Math.min(copyBuffer.length, dup.remaining());
+            dup.get(copyBuffer, 0, len);
+            os.write(copyBuffer, 0, len);
+        }
+    }
+
     /**
      * Writes a PNG chunk to the stream.
      * <p>
-     * This method writes the chunk length, type, data, and CRC.
+     * This method writes the chunk length, type, data, and CRC. Chunks which
+     * were read and not modified are copied as they were read, without
+     * serializing them. The CRC is cached by the chunk until it is modified.
      * </p>
      *
      * @param chunk the chunk to write
      * @throws IOException if an I/O error occurs
      */
     public void writeChunk(Chunk chunk) throws IOException {
-        byte[] dataBytes = chunk.getData();
-        writeUnsignedInt(dataBytes.length);
-        byte[] typeBytes = chunk.getType().getBytes(StandardCharsets.US_ASCII);
-        write(typeBytes);
-        write(dataBytes);
-        writeUnsignedInt(Crc.calculate(typeBytes, dataBytes));
+        ByteBuffer data = chunk.getDataBuffer();
+        writeUnsignedInt(data.remaining());
+        writeUnsignedInt(chunk.getTypeCode() & 0xFFFFFFFFL);
+        write(data);
+        writeUnsignedInt(chunk.getCrc());
     }
 }
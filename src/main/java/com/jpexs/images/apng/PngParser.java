@@ -0,0 +1,126 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Actl;
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Fctl;
+import com.jpexs.images.apng.chunks.Fdat;
+import com.jpexs.images.apng.chunks.Idat;
+import com.jpexs.images.apng.chunks.Iend;
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.chunks.Plte;
+import com.jpexs.images.apng.chunks.Text;
+import com.jpexs.images.apng.chunks.Trns;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Event-driven parser of PNG data, which passes chunks one by one to a
+ * {@link ChunkVisitor} instead of reading them to a list.
+ *
+ * @author JPEXS
+ * @see ChunkVisitor
+ */
+public class PngParser {
+
+    private PngParser() {
+    }
+
+    /**
+     * Parses PNG from the input stream up to the IEND chunk.
+     *
+     * @param is the input stream positioned at the start of the PNG
+     * @param visitor the visitor of the chunks
+     * @throws IOException if an I/O error occurs, the PNG data is invalid or
+     *     the visitor fails
+     */
+    public static void parse(InputStream is, ChunkVisitor visitor) throws IOException {
+        PngInputStream pis = new PngInputStream(is);
+        if (!Arrays.equals(pis.readBytes(8), Png.SIGNATURE)) {
+            throw new IOException("Invalid PNG signature");
+        }
+        parseChunks(pis, visitor);
+    }
+
+    /**
+     * Parses PNG in the remaining bytes of the buffer up to the IEND chunk.
+     * Chunk data is passed to the visitor without copying.
+     *
+     * @param buffer the buffer containing the PNG data
+     * @param visitor the visitor of the chunks
+     * @throws IOException if the PNG data is invalid or the visitor fails
+     */
+    public static void parse(ByteBuffer buffer, ChunkVisitor visitor) throws IOException {
+        PngBufferReader reader = new PngBufferReader(buffer);
+        if (!Arrays.equals(reader.readBytes(8), Png.SIGNATURE)) {
+            throw new IOException("Invalid PNG signature");
+        }
+        parseChunks(reader, visitor);
+    }
+
+    /**
+     * Parses chunks from the source up to the IEND chunk. The source must be
+     * positioned after the PNG signature. CRC policy and chunk filter of the
+     * source apply.
+     *
+     * @param source the source of the chunks
+     * @param visitor the visitor of the chunks
+     * @throws IOException if an I/O error occurs, the PNG data is invalid or
+     *     the visitor fails
+     */
+    public static void parseChunks(PngChunkSource source, ChunkVisitor visitor) throws IOException {
+        Chunk chunk;
+        do {
+            chunk = source.readChunk();
+            visit(chunk, visitor);
+        } while (chunk.getTypeCode() != Iend.TYPE_CODE);
+    }
+
+    /**
+     * Passes the chunk to the matching method of the visitor.
+     *
+     * @param chunk the chunk
+     * @param visitor the visitor
+     * @throws IOException if the visitor fails
+     */
+    static void visit(Chunk chunk, ChunkVisitor visitor) throws IOException {
+        if (chunk.getClass() == Chunk.class) {
+            visitor.onUnknown(chunk.getTypeCode(), chunk.getDataBuffer());
+            return;
+        }
+        switch (chunk.getTypeCode()) {
+            case Ihdr.TYPE_CODE:
+                visitor.onIhdr((Ihdr) chunk);
+                break;
+            case Actl.TYPE_CODE:
+                visitor.onActl((Actl) chunk);
+                break;
+            case Plte.TYPE_CODE:
+                visitor.onPlte((Plte) chunk);
+                break;
+            case Trns.TYPE_CODE:
+                visitor.onTrns((Trns) chunk);
+                break;
+            case Fctl.TYPE_CODE:
+                visitor.onFctl((Fctl) chunk);
+                break;
+            case Idat.TYPE_CODE:
+                visitor.onIdat(((Idat) chunk).getFrameDataBuffer());
+                break;
+            case Fdat.TYPE_CODE:
+                Fdat fdat = (Fdat) chunk;
+                visitor.onFdat(fdat.getSequenceNumber(), fdat.getFrameDataBuffer());
+                break;
+            case Text.TYPE_CODE:
+                visitor.onText((Text) chunk);
+                break;
+            case Iend.TYPE_CODE:
+                visitor.onIend();
+                break;
+            default:
+                visitor.onUnknown(chunk.getTypeCode(), chunk.getDataBuffer());
+                break;
+        }
+    }
+}
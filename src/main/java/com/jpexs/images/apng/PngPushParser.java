@@ -0,0 +1,276 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Iend;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Non-blocking parser of PNG data fed with fragments as they arrive, for
+ * example from a socket channel.
+ * <p>
+ * The parser keeps its state between calls of {@link #feed(ByteBuffer)} and
+ * passes each chunk to the {@link ChunkVisitor} as soon as all of its bytes
+ * were fed. Frames are complete when the next fcTL chunk or IEND chunk is
+ * visited. Chunk data is copied from the fragments, so the fed buffers can be
+ * reused after the call. The parser must not be used after it has thrown an
+ * exception.
+ * </p>
+ *
+ * <pre>{@code
+ * PngPushParser parser = new PngPushParser(visitor);
+ * parser.setMaxChunkLength(16 * 1024 * 1024);
+ * //on each read from the channel
+ * buffer.flip();
+ * parser.feed(buffer);
+ * buffer.clear();
+ * //at the end of the upload
+ * parser.end();
+ * }</pre>
+ *
+ * @author JPEXS
+ * @see PngParser
+ */
+public class PngPushParser {
+
+    private static final int STATE_SIGNATURE = 0;
+    private static final int STATE_HEADER = 1;
+    private static final int STATE_DATA = 2;
+    private static final int STATE_SKIP = 3;
+    private static final int STATE_FINISHED = 4;
+
+    private final ChunkVisitor visitor;
+
+    private int state = STATE_SIGNATURE;
+
+    /**
+     * Signature or chunk length and type being collected.
+     */
+    private final byte[] header = new byte[8];
+
+    private int headerPos = 0;
+
+    private int chunkType;
+
+    private int chunkLength;
+
+    private ChunkAction chunkAction;
+
+    /**
+     * Data and CRC of the chunk being collected.
+     */
+    private byte[] chunkData;
+
+    private int chunkDataPos;
+
+    private long skipRemaining;
+
+    private long position = 0;
+
+    private CrcPolicy crcPolicy = CrcPolicy.ALWAYS;
+
+    private ChunkFilter chunkFilter = ChunkFilter.ALL;
+
+    private long maxChunkLength = Integer.MAX_VALUE - 4;
+
+    /**
+     * Constructs a parser passing chunks to the visitor.
+     *
+     * @param visitor the visitor of the chunks
+     */
+    public PngPushParser(ChunkVisitor visitor) {
+        this.visitor = visitor;
+    }
+
+    /**
+     * Consumes all remaining bytes of the fragment and visits the chunks which
+     * were completed by it.
+     *
+     * @param fragment the next fragment of the PNG data
+     * @throws IOException if the PNG data is invalid, a limit is exceeded or
+     *     the visitor fails
+     */
+    public void feed(ByteBuffer fragment) throws IOException {
+        while (fragment.hasRemaining()) {
+            int count;
+            switch (state) {
+                case STATE_SIGNATURE:
+                case STATE_HEADER:
+                    count = Math.min(fragment.remaining(), header.length - headerPos);
+                    fragment.get(header, headerPos, count);
+                    headerPos += count;
+                    if (headerPos == header.length) {
+                        headerPos = 0;
+                        if (state == STATE_SIGNATURE) {
+                            readSignature();
+                        } else {
+                            readHeader();
+                        }
+                    }
+                    break;
+                case STATE_DATA:
+                    count = Math.min(fragment.remaining(), chunkData.length - chunkDataPos);
+                    fragment.get(chunkData, chunkDataPos, count);
+                    chunkDataPos += count;
+                    if (chunkDataPos == chunkData.length) {
+                        readChunk();
+                    }
+                    break;
+                case STATE_SKIP:
+                    count = (int) Math.min(fragment.remaining(), skipRemaining);
+                    fragment.position(fragment.position() + count);
+                    skipRemaining -= count;
+                    if (skipRemaining == 0) {
+                        state = STATE_HEADER;
+                    }
+                    break;
+                default:
+                    //data after IEND is ignored
+                    count = fragment.remaining();
+                    fragment.position(fragment.limit());
+                    break;
+            }
+            position += count;
+        }
+    }
+
+    private void readSignature() throws IOException {
+        for (int i = 0; i < Png.SIGNATURE.length; i++) {
+            if (header[i] != Png.SIGNATURE[i]) {
+                throw new IOException("Invalid PNG signature");
+            }
+        }
+        state = STATE_HEADER;
+    }
+
+    private void readHeader() throws IOException {
+        long length = readInt(header, 0) & 0xFFFFFFFFL;
+        chunkType = readInt(header, 4);
+        chunkAction = chunkFilter.getAction(chunkType);
+        if (chunkAction == ChunkAction.SKIP) {
+            skipRemaining = length + 4;
+            state = STATE_SKIP;
+            return;
+        }
+        if (length > maxChunkLength) {
+            DecodeLimits.check("Length of chunk " + Chunk.toTypeString(chunkType), length, maxChunkLength);
+        }
+        chunkLength = (int) length;
+        chunkData = new byte[chunkLength + 4];
+        chunkDataPos = 0;
+        state = STATE_DATA;
+    }
+
+    private void readChunk() throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(chunkData, 0, chunkLength);
+        long crc = readInt(chunkData, chunkLength) & 0xFFFFFFFFL;
+        chunkData = null;
+        if (crcPolicy.isVerified(chunkType)) {
+            long calculatedCrc = Crc.calculate(chunkType, data);
+            if (crc != calculatedCrc) {
+                throw new IOException("Invalid CRC value: " + calculatedCrc + " expected but " + crc + " found in chunk of type " + Chunk.toTypeString(chunkType));
+            }
+        }
+        Chunk chunk;
+        if (chunkAction == ChunkAction.RAW) {
+            chunk = new Chunk(chunkType, data);
+        } else {
+            chunk = PngInputStream.createChunk(chunkType, data);
+        }
+        chunk.setSourceCrc(crc);
+        state = chunkType == Iend.TYPE_CODE ? STATE_FINISHED : STATE_HEADER;
+        PngParser.visit(chunk, visitor);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Checks whether the IEND chunk was visited.
+     *
+     * @return {@code true} if the PNG data is complete
+     */
+    public boolean isFinished() {
+        return state == STATE_FINISHED;
+    }
+
+    /**
+     * Signals the end of the PNG data.
+     *
+     * @throws EOFException if the IEND chunk was not reached
+     */
+    public void end() throws EOFException {
+        if (state != STATE_FINISHED) {
+            throw new EOFException("PNG data ended before the IEND chunk");
+        }
+    }
+
+    /**
+     * Returns the number of bytes fed so far.
+     *
+     * @return the position in the data
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns which chunk CRCs are verified.
+     *
+     * @return the CRC policy
+     */
+    public CrcPolicy getCrcPolicy() {
+        return crcPolicy;
+    }
+
+    /**
+     * Sets which chunk CRCs are verified. Default is {@link CrcPolicy#ALWAYS}.
+     *
+     * @param crcPolicy the CRC policy
+     */
+    public void setCrcPolicy(CrcPolicy crcPolicy) {
+        this.crcPolicy = crcPolicy;
+    }
+
+    /**
+     * Returns the filter of chunks which are visited.
+     *
+     * @return the chunk filter
+     */
+    public ChunkFilter getChunkFilter() {
+        return chunkFilter;
+    }
+
+    /**
+     * Sets the filter of chunks which are visited. Default is
+     * {@link ChunkFilter#ALL}. Skipped chunks are not buffered.
+     *
+     * @param chunkFilter the chunk filter
+     */
+    public void setChunkFilter(ChunkFilter chunkFilter) {
+        this.chunkFilter = chunkFilter;
+    }
+
+    /**
+     * Returns the maximum length of chunk data which is buffered.
+     *
+     * @return the maximum length in bytes
+     */
+    public long getMaxChunkLength() {
+        return maxChunkLength;
+    }
+
+    /**
+     * Sets the maximum length of chunk data which is buffered, checked before
+     * the chunk data is allocated. Longer chunks fail with
+     * {@link DecodeLimitExceededException}.
+     *
+     * @param maxChunkLength the maximum length in bytes, at most
+     *     {@code Integer.MAX_VALUE - 4}
+     */
+    public void setMaxChunkLength(long maxChunkLength) {
+        this.maxChunkLength = Math.min(maxChunkLength, Integer.MAX_VALUE - 4);
+    }
+}
@@ -0,0 +1,589 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.chunks.Plte;
+import com.jpexs.images.apng.chunks.Trns;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decoder of PNG image data (IDAT / fdAT contents) into ARGB images.
+ * <p>
+ * Inflates the zlib datastream, reverses the PNG row filters and expands all
+ * color types and bit depths allowed by {@link Ihdr} into a
+ * {@link BufferedImage#TYPE_INT_ARGB} image. Both non-interlaced and Adam7
+ * interlaced images are supported.
+ * </p>
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * </p>
+ *
+ * @author JPEXS
+ */
+public class PngRasterDecoder {
+
+    private static final int[] ADAM7_START_ROW = {0, 0, 4, 0, 2, 0, 1};
+    private static final int[] ADAM7_START_COL = {0, 4, 0, 2, 0, 1, 0};
+    private static final int[] ADAM7_ROW_INCREMENT = {8, 8, 8, 4, 4, 2, 2};
+    private static final int[] ADAM7_COL_INCREMENT = {8, 8, 4, 4, 2, 2, 1};
+
+    private static final int INPUT_BUFFER_SIZE = 8192;
+
+    private final int colorType;
+    private final int bitDepth;
+    private final int interlaceMethod;
+    private final int bitsPerPixel;
+    private final int bytesPerPixel;
+
+    /**
+     * ARGB palette for indexed images, including tRNS alpha.
+     */
+    private final int[] palette;
+
+    /**
+     * Transparent color sample values for greyscale (1 value) and truecolor (3
+     * values) images, or null when not present.
+     */
+    private final int[] transparentColor;
+
+    /**
+     * Constructs a decoder for images described by the specified header.
+     *
+     * @param ihdr the image header
+     * @param plte the palette, may be null for non-indexed images
+     * @param trns the transparency chunk, may be null
+     */
+    public PngRasterDecoder(Ihdr ihdr, Plte plte, Trns trns) {
+        this.colorType = ihdr.getColorType();
+        this.bitDepth = ihdr.getBitDepth();
+        this.interlaceMethod = ihdr.getInterlaceMethod();
+        this.bitsPerPixel = getChannelCount(colorType) * bitDepth;
+        this.bytesPerPixel = Math.max(1, bitsPerPixel / 8);
+
+        byte[] trnsData = trns == null ? null : trns.getTransparencyData();
+
+        if (colorType == Ihdr.COLOR_TYPE_INDEXEDCOLOR) {
+            palette = new int[256];
+            for (int i = 0; i < palette.length; i++) {
+                palette[i] = 0xFF000000;
+            }
+            if (plte != null) {
+                byte[] paletteData = plte.getPaletteData();
+                int entryCount = Math.min(256, paletteData.length / 3);
+                for (int i = 0; i < entryCount; i++) {
+                    int alpha = trnsData != null && i < trnsData.length ? trnsData[i] & 0xFF : 0xFF;
+                    palette[i] = (alpha << 24)
+                            | ((paletteData[i * 3] & 0xFF) << 16)
+                            | ((paletteData[i * 3 + 1] & 0xFF) << 8)
+                            | (paletteData[i * 3 + 2] & 0xFF);
+                }
+            }
+        } else {
+            palette = null;
+        }
+
+        if (trnsData != null && colorType == Ihdr.COLOR_TYPE_GREYSCALE && trnsData.length >= 2) {
+            transparentColor = new int[]{readUnsignedShort(trnsData, 0)};
+        } else if (trnsData != null && colorType == Ihdr.COLOR_TYPE_TRUECOLOR && trnsData.length >= 6) {
+            transparentColor = new int[]{
+                readUnsignedShort(trnsData, 0),
+                readUnsignedShort(trnsData, 2),
+                readUnsignedShort(trnsData, 4)
+            };
+        } else {
+            transparentColor = null;
+        }
+    }
+
+    /**
+     * Returns the number of samples per pixel of the color type.
+     *
+     * @param colorType the color type
+     * @return the number of channels
+     */
+    public static int getChannelCount(int colorType) {
+        switch (colorType) {
+            case Ihdr.COLOR_TYPE_GREYSCALE:
+            case Ihdr.COLOR_TYPE_INDEXEDCOLOR:
+                return 1;
+            case Ihdr.COLOR_TYPE_GREYSCALE_WITH_ALPHA:
+                return 2;
+            case Ihdr.COLOR_TYPE_TRUECOLOR:
+                return 3;
+            case Ihdr.COLOR_TYPE_TRUECOLOR_WITH_ALPHA:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Invalid colorType " + colorType);
+        }
+    }
+
+    /**
+     * Checks whether images described by the header can be decoded, that is
+     * whether the combination of color type and bit depth and the interlace
+     * method are valid.
+     *
+     * @param ihdr the image header
+     * @return {@code true} if the image can be decoded
+     */
+    public static boolean isSupported(Ihdr ihdr) {
+        int interlaceMethod = ihdr.getInterlaceMethod();
+        if (interlaceMethod != Ihdr.INTERLACE_METHOD_NOINTERLACE && interlaceMethod != Ihdr.INTERLACE_METHOD_ADAM7) {
+            return false;
+        }
+        int bitDepth = ihdr.getBitDepth();
+        switch (ihdr.getColorType()) {
+            case Ihdr.COLOR_TYPE_GREYSCALE:
+                return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8 || bitDepth == 16;
+            case Ihdr.COLOR_TYPE_INDEXEDCOLOR:
+                return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8;
+            case Ihdr.COLOR_TYPE_TRUECOLOR:
+            case Ihdr.COLOR_TYPE_GREYSCALE_WITH_ALPHA:
+            case Ihdr.COLOR_TYPE_TRUECOLOR_WITH_ALPHA:
+                return bitDepth == 8 || bitDepth == 16;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the size of inflated image data, including filter type bytes.
+     *
+     * @param ihdr the image header
+     * @param width the image width in pixels
+     * @param height the image height in pixels
+     * @return the size in bytes
+     */
+    static long getInflatedSize(Ihdr ihdr, long width, long height) {
+        long bitsPerPixel = (long) getChannelCount(ihdr.getColorType()) * ihdr.getBitDepth();
+        if (ihdr.getInterlaceMethod() != Ihdr.INTERLACE_METHOD_ADAM7) {
+            return ((width * bitsPerPixel + 7) / 8 + 1) * height;
+        }
+        long size = 0;
+        for (int pass = 0; pass < 7; pass++) {
+            long passWidth = (width - ADAM7_START_COL[pass] + ADAM7_COL_INCREMENT[pass] - 1) / ADAM7_COL_INCREMENT[pass];
+            long passHeight = (height - ADAM7_START_ROW[pass] + ADAM7_ROW_INCREMENT[pass] - 1) / ADAM7_ROW_INCREMENT[pass];
+            if (passWidth > 0 && passHeight > 0) {
+                size += ((passWidth * bitsPerPixel + 7) / 8 + 1) * passHeight;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Decodes the compressed image data into a new ARGB image.
+     *
+     * @param data the parts of the zlib datastream (contents of consecutive
+     *     IDAT or fdAT chunks), in order
+     * @param width the image width in pixels
+     * @param height the image height in pixels
+     * @return the decoded image
+     * @throws IOException if the data is corrupted or truncated
+     */
+    public BufferedImage decode(List<ByteBuffer> data, int width, int height) throws IOException {
+        return decode(data, width, height, BufferPool.NONE);
+    }
+
+    /**
+     * Decodes the compressed image data into an ARGB image whose pixel array
+     * is borrowed from the pool.
+     * <p>
+     * Scanline and inflate buffers are borrowed from the pool as well and
+     * returned before this method ends. The pixel array of the image can be
+     * returned by the caller when the image is no longer used.
+     * </p>
+     *
+     * @param data the parts of the zlib datastream (contents of consecutive
+     *     IDAT or fdAT chunks), in order
+     * @param width the image width in pixels
+     * @param height the image height in pixels
+     * @param pool the pool to borrow buffers from
+     * @return the decoded image
+     * @throws IOException if the data is corrupted or truncated
+     */
+    public BufferedImage decode(List<ByteBuffer> data, int width, int height, BufferPool pool) throws IOException {
+        int[] pixels = pool.borrowInts(width * height);
+        boolean success = false;
+        try {
+            decodeAll(data, width, height, pool, pixels, null);
+            success = true;
+        } finally {
+            if (!success) {
+                pool.returnInts(pixels);
+            }
+        }
+        return FrameCompositor.createArgbImage(pixels, width, height);
+    }
+
+    /**
+     * Decodes the compressed image data of an indexed image into palette
+     * indices, one byte per pixel, without expanding them to colors.
+     *
+     * @param data the parts of the zlib datastream, in order
+     * @param width the image width in pixels
+     * @param height the image height in pixels
+     * @param pool the pool to borrow buffers from
+     * @return the palette indices, borrowed from the pool
+     * @throws IOException if the data is corrupted or truncated
+     */
+    byte[] decodeIndices(List<ByteBuffer> data, int width, int height, BufferPool pool) throws IOException {
+        if (colorType != Ihdr.COLOR_TYPE_INDEXEDCOLOR) {
+            throw new IllegalStateException("Image is not indexed");
+        }
+        byte[] indices = pool.borrowBytes(width * height);
+        boolean success = false;
+        try {
+            decodeAll(data, width, height, pool, null, indices);
+            success = true;
+        } finally {
+            if (!success) {
+                pool.returnBytes(indices);
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Returns the palette of an indexed image.
+     *
+     * @return 256 ARGB values including tRNS alpha, entries missing in the
+     *     palette are opaque black, or null for non-indexed images
+     */
+    int[] getPalette() {
+        return palette;
+    }
+
+    /**
+     * Decodes all passes of the image either to ARGB pixels or to palette
+     * indices.
+     */
+    private void decodeAll(List<ByteBuffer> data, int width, int height, BufferPool pool, int[] pixels, byte[] indices) throws IOException {
+        Inflater inflater = new Inflater();
+        InflaterInput input = new InflaterInput(inflater, data, pool);
+        try {
+            if (interlaceMethod == Ihdr.INTERLACE_METHOD_ADAM7) {
+                for (int pass = 0; pass < 7; pass++) {
+                    int passWidth = (width - ADAM7_START_COL[pass] + ADAM7_COL_INCREMENT[pass] - 1) / ADAM7_COL_INCREMENT[pass];
+                    int passHeight = (height - ADAM7_START_ROW[pass] + ADAM7_ROW_INCREMENT[pass] - 1) / ADAM7_ROW_INCREMENT[pass];
+                    if (passWidth <= 0 || passHeight <= 0) {
+                        continue;
+                    }
+                    decodePass(input, pixels, indices, width, passWidth, passHeight,
+                            ADAM7_START_ROW[pass], ADAM7_START_COL[pass],
+                            ADAM7_ROW_INCREMENT[pass], ADAM7_COL_INCREMENT[pass], null);
+                }
+            } else {
+                decodePass(input, pixels, indices, width, width, height, 0, 0, 1, 1, null);
+            }
+        } finally {
+            inflater.end();
+            input.release();
+        }
+    }
+
+    /**
+     * Decodes the compressed image data and passes decoded rows to the
+     * downscaler.
+     * <p>
+     * Non-interlaced images are scaled row by row during unfiltering, only
+     * one row of pixels is kept. Interlaced images are decoded fully first.
+     * </p>
+     *
+     * @param data the parts of the zlib datastream, in order
+     * @param width the image width in pixels
+     * @param height the image height in pixels
+     * @param pool the pool to borrow buffers from
+     * @param scaler the downscaler to pass the rows to
+     * @return the scaled pixels
+     * @throws IOException if the data is corrupted or truncated
+     */
+    int[] decodeScaled(List<ByteBuffer> data, int width, int height, BufferPool pool, Downscaler scaler) throws IOException {
+        if (interlaceMethod == Ihdr.INTERLACE_METHOD_ADAM7) {
+            int[] pixels = FrameCompositor.getArgbPixels(decode(data, width, height, pool));
+            for (int y = 0; y < height; y++) {
+                scaler.addRow(pixels, y * width, y);
+            }
+            pool.returnInts(pixels);
+            return scaler.finish();
+        }
+
+        int[] row = pool.borrowInts(width);
+        Inflater inflater = new Inflater();
+        InflaterInput input = new InflaterInput(inflater, data, pool);
+        try {
+            decodePass(input, row, null, width, width, height, 0, 0, 1, 1, scaler);
+        } finally {
+            inflater.end();
+            input.release();
+            pool.returnInts(row);
+        }
+        return scaler.finish();
+    }
+
+    /**
+     * Decodes single pass of the image. When scaler is specified, pixels is a
+     * row buffer and every row is passed to the scaler. When indices is
+     * specified, palette indices are written to it instead of pixels.
+     */
+    private void decodePass(InflaterInput input, int[] pixels, byte[] indices, int imageWidth, int passWidth, int passHeight,
+            int startRow, int startCol, int rowIncrement, int colIncrement, Downscaler scaler) throws IOException {
+        int rowBytes = (int) (((long) passWidth * bitsPerPixel + 7) / 8);
+        byte[] previousRow = input.pool.borrowBytes(rowBytes);
+        byte[] currentRow = input.pool.borrowBytes(rowBytes);
+        Arrays.fill(previousRow, 0, rowBytes, (byte) 0);
+        byte[] filterType = new byte[1];
+        try {
+            for (int y = 0; y < passHeight; y++) {
+                input.readFully(filterType, 1);
+                input.readFully(currentRow, rowBytes);
+                unfilter(filterType[0] & 0xFF, currentRow, previousRow, rowBytes);
+                if (indices != null) {
+                    int offset = (startRow + y * rowIncrement) * imageWidth + startCol;
+                    for (int x = 0, p = offset; x < passWidth; x++, p += colIncrement) {
+                        indices[p] = (byte) readSample(currentRow, x);
+                    }
+                } else if (scaler != null) {
+                    convertRow(currentRow, pixels, 0, 1, passWidth);
+                    scaler.addRow(pixels, 0, y);
+                } else {
+                    int offset = (startRow + y * rowIncrement) * imageWidth + startCol;
+                    convertRow(currentRow, pixels, offset, colIncrement, passWidth);
+                }
+                byte[] swap = previousRow;
+                previousRow = currentRow;
+                currentRow = swap;
+            }
+        } finally {
+            input.pool.returnBytes(previousRow);
+            input.pool.returnBytes(currentRow);
+        }
+    }
+
+    private void unfilter(int filterType, byte[] row, byte[] previousRow, int rowBytes) throws IOException {
+        int bpp = bytesPerPixel;
+        switch (filterType) {
+            case 0: //None
+                break;
+            case 1: //Sub
+                for (int i = bpp; i < rowBytes; i++) {
+                    row[i] += row[i - bpp];
+                }
+                break;
+            case 2: //Up
+                for (int i = 0; i < rowBytes; i++) {
+                    row[i] += previousRow[i];
+                }
+                break;
+            case 3: //Average
+                for (int i = 0; i < bpp && i < rowBytes; i++) {
+                    row[i] += (previousRow[i] & 0xFF) >>> 1;
+                }
+                for (int i = bpp; i < rowBytes; i++) {
+                    row[i] += ((row[i - bpp] & 0xFF) + (previousRow[i] & 0xFF)) >>> 1;
+                }
+                break;
+            case 4: //Paeth
+                for (int i = 0; i < bpp && i < rowBytes; i++) {
+                    row[i] += previousRow[i];
+                }
+                for (int i = bpp; i < rowBytes; i++) {
+                    int a = row[i - bpp] & 0xFF;
+                    int b = previousRow[i] & 0xFF;
+                    int c = previousRow[i - bpp] & 0xFF;
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a);
+                    int pb = Math.abs(p - b);
+                    int pc = Math.abs(p - c);
+                    int predictor;
+                    if (pa <= pb && pa <= pc) {
+                        predictor = a;
+                    } else if (pb <= pc) {
+                        predictor = b;
+                    } else {
+                        predictor = c;
+                    }
+                    row[i] += predictor;
+                }
+                break;
+            default:
+                throw new IOException("Invalid filter type " + filterType);
+        }
+    }
+
+    private void convertRow(byte[] row, int[] pixels, int offset, int step, int count) {
+        switch (colorType) {
+            case Ihdr.COLOR_TYPE_GREYSCALE:
+                convertGreyscaleRow(row, pixels, offset, step, count);
+                break;
+            case Ihdr.COLOR_TYPE_INDEXEDCOLOR:
+                convertIndexedRow(row, pixels, offset, step, count);
+                break;
+            case Ihdr.COLOR_TYPE_GREYSCALE_WITH_ALPHA:
+                for (int x = 0, p = offset; x < count; x++, p += step) {
+                    int grey;
+                    int alpha;
+                    if (bitDepth == 16) {
+                        grey = row[x * 4] & 0xFF;
+                        alpha = row[x * 4 + 2] & 0xFF;
+                    } else {
+                        grey = row[x * 2] & 0xFF;
+                        alpha = row[x * 2 + 1] & 0xFF;
+                    }
+                    pixels[p] = (alpha << 24) | (grey << 16) | (grey << 8) | grey;
+                }
+                break;
+            case Ihdr.COLOR_TYPE_TRUECOLOR:
+                for (int x = 0, p = offset; x < count; x++, p += step) {
+                    int argb;
+                    boolean transparent;
+                    if (bitDepth == 16) {
+                        int i = x * 6;
+                        argb = 0xFF000000 | ((row[i] & 0xFF) << 16) | ((row[i + 2] & 0xFF) << 8) | (row[i + 4] & 0xFF);
+                        transparent = transparentColor != null
+                                && readUnsignedShort(row, i) == transparentColor[0]
+                                && readUnsignedShort(row, i + 2) == transparentColor[1]
+                                && readUnsignedShort(row, i + 4) == transparentColor[2];
+                    } else {
+                        int i = x * 3;
+                        int r = row[i] & 0xFF;
+                        int g = row[i + 1] & 0xFF;
+                        int b = row[i + 2] & 0xFF;
+                        argb = 0xFF000000 | (r << 16) | (g << 8) | b;
+                        transparent = transparentColor != null
+                                && r == transparentColor[0]
+                                && g == transparentColor[1]
+                                && b == transparentColor[2];
+                    }
+                    pixels[p] = transparent ? argb & 0x00FFFFFF : argb;
+                }
+                break;
+            case Ihdr.COLOR_TYPE_TRUECOLOR_WITH_ALPHA:
+                for (int x = 0, p = offset; x < count; x++, p += step) {
+                    if (bitDepth == 16) {
+                        int i = x * 8;
+                        pixels[p] = ((row[i + 6] & 0xFF) << 24) | ((row[i] & 0xFF) << 16) | ((row[i + 2] & 0xFF) << 8) | (row[i + 4] & 0xFF);
+                    } else {
+                        int i = x * 4;
+                        pixels[p] = ((row[i + 3] & 0xFF) << 24) | ((row[i] & 0xFF) << 16) | ((row[i + 1] & 0xFF) << 8) | (row[i + 2] & 0xFF);
+                    }
+                }
+                break;
+        }
+    }
+
+    private void convertGreyscaleRow(byte[] row, int[] pixels, int offset, int step, int count) {
+        int transparentGrey = transparentColor == null ? -1 : transparentColor[0];
+        if (bitDepth == 16) {
+            for (int x = 0, p = offset; x < count; x++, p += step) {
+                int grey = row[x * 2] & 0xFF;
+                int alpha = readUnsignedShort(row, x * 2) == transparentGrey ? 0 : 0xFF;
+                pixels[p] = (alpha << 24) | (grey << 16) | (grey << 8) | grey;
+            }
+            return;
+        }
+        int maxValue = (1 << bitDepth) - 1;
+        for (int x = 0, p = offset; x < count; x++, p += step) {
+            int sample = readSample(row, x);
+            int grey = sample * 255 / maxValue;
+            int alpha = sample == transparentGrey ? 0 : 0xFF;
+            pixels[p] = (alpha << 24) | (grey << 16) | (grey << 8) | grey;
+        }
+    }
+
+    private void convertIndexedRow(byte[] row, int[] pixels, int offset, int step, int count) {
+        for (int x = 0, p = offset; x < count; x++, p += step) {
+            pixels[p] = palette[readSample(row, x)];
+        }
+    }
+
+    /**
+     * Reads sample of bit depth up to 8 bits.
+     */
+    private int readSample(byte[] row, int x) {
+        switch (bitDepth) {
+            case 1:
+                return (row[x >> 3] >> (7 - (x & 7))) & 0x01;
+            case 2:
+                return (row[x >> 2] >> (6 - ((x & 3) << 1))) & 0x03;
+            case 4:
+                return (row[x >> 1] >> (4 - ((x & 1) << 2))) & 0x0F;
+            default:
+                return row[x] & 0xFF;
+        }
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Feeds the inflater with consecutive parts of the datastream.
+     */
+    private static class InflaterInput {
+
+        private final Inflater inflater;
+        private final List<ByteBuffer> parts;
+        private final BufferPool pool;
+        private int partIndex = 0;
+        private ByteBuffer current;
+        private byte[] copyBuffer;
+
+        InflaterInput(Inflater inflater, List<ByteBuffer> parts, BufferPool pool) {
+            this.inflater = inflater;
+            this.parts = parts;
+            this.pool = pool;
+        }
+
+        void release() {
+            if (copyBuffer != null) {
+                pool.returnBytes(copyBuffer);
+                copyBuffer = null;
+            }
+        }
+
+        void readFully(byte[] buffer, int length) throws IOException {
+            int pos = 0;
+            try {
+                while (pos < length) {
+                    int count = inflater.inflate(buffer, pos, length - pos);
+                    if (count == 0) {
+                        if (inflater.finished() || inflater.needsDictionary()) {
+                            throw new IOException("Unexpected end of image data");
+                        }
+                        if (inflater.needsInput() && !feed()) {
+                            throw new IOException("Unexpected end of image data");
+                        }
+                    }
+                    pos += count;
+                }
+            } catch (DataFormatException ex) {
+                throw new IOException("Invalid image data: " + ex.getMessage(), ex);
+            }
+        }
+
+        private boolean feed() {
+            while (current == null || !current.hasRemaining()) {
+                if (partIndex >= parts.size()) {
+                    return false;
+                }
+                current = parts.get(partIndex++).duplicate();
+            }
+            if (current.hasArray()) {
+                inflater.setInput(current.array(), current.arrayOffset() + current.position(), current.remaining());
+                current.position(current.limit());
+            } else {
+                if (copyBuffer == null) {
+                    copyBuffer = pool.borrowBytes(INPUT_BUFFER_SIZE);
+                }
+                int len = Math.min(INPUT_BUFFER_SIZE, current.remaining());
+                current.get(copyBuffer, 0, len);
+                inflater.setInput(copyBuffer, 0, len);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.jpexs.images.apng;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffer pool with size classes and per-thread cache.
+ * <p>
+ * Requested lengths are rounded up to size classes - eight classes per power
+ * of two, so a borrowed array is at most 12.5% longer than requested. Each
+ * thread caches one array per size class for small arrays, which makes the
+ * common borrow-return cycle lock-free and contention-free. Other arrays are
+ * kept in shared queues up to the configured number of retained bytes.
+ * </p>
+ *
+ * @author JPEXS
+ */
+public class SizeClassBufferPool implements BufferPool {
+
+    private static final int MIN_LENGTH_BITS = 6;
+
+    private static final int MIN_LENGTH = 1 << MIN_LENGTH_BITS;
+
+    /**
+     * Larger arrays are not pooled.
+     */
+    private static final int MAX_LENGTH_BITS = 28;
+
+    private static final int CLASS_COUNT = 1 + (MAX_LENGTH_BITS - MIN_LENGTH_BITS) * 8;
+
+    private final long maxRetainedBytes;
+
+    private final int maxThreadCachedBytes;
+
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    private final ConcurrentLinkedQueue<int[]>[] sharedInts;
+
+    private final ConcurrentLinkedQueue<byte[]>[] sharedBytes;
+
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return new ThreadCache();
+        }
+    };
+
+    private static class ThreadCache {
+
+        final int[][] ints = new int[CLASS_COUNT][];
+        final byte[][] bytes = new byte[CLASS_COUNT][];
+    }
+
+    /**
+     * Constructs a pool retaining at most 64 MB in shared queues and caching
+     * arrays up to 256 KB per thread.
+     */
+    public SizeClassBufferPool() {
+        this(64L * 1024 * 1024, 256 * 1024);
+    }
+
+    /**
+     * Constructs a pool with the specified limits.
+     *
+     * @param maxRetainedBytes the maximum number of bytes retained in shared
+     *     queues
+     * @param maxThreadCachedBytes the maximum size in bytes of an array cached
+     *     per thread
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SizeClassBufferPool(long maxRetainedBytes, int maxThreadCachedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.maxThreadCachedBytes = maxThreadCachedBytes;
+        sharedInts = new ConcurrentLinkedQueue[CLASS_COUNT];
+        sharedBytes = new ConcurrentLinkedQueue[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            sharedInts[i] = new ConcurrentLinkedQueue<>();
+            sharedBytes[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Returns the size class of the length.
+     *
+     * @param length the requested length
+     * @return the size class index, -1 if the length is not pooled
+     */
+    private static int getSizeClass(int length) {
+        if (length <= MIN_LENGTH) {
+            return 0;
+        }
+        int bits = 31 - Integer.numberOfLeadingZeros(length - 1);
+        if (bits >= MAX_LENGTH_BITS) {
+            return -1;
+        }
+        int step = 1 << (bits - 3);
+        int subClass = (length - 1 - (1 << bits)) / step;
+        return 1 + (bits - MIN_LENGTH_BITS) * 8 + subClass;
+    }
+
+    /**
+     * Returns the array length of the size class.
+     */
+    private static int getClassLength(int sizeClass) {
+        if (sizeClass == 0) {
+            return MIN_LENGTH;
+        }
+        int bits = MIN_LENGTH_BITS + (sizeClass - 1) / 8;
+        int subClass = (sizeClass - 1) % 8;
+        return (1 << bits) + (subClass + 1) * (1 << (bits - 3));
+    }
+
+    /**
+     * Returns size class of returned array, -1 if it does not come from the
+     * pool.
+     */
+    private static int getReturnedClass(int length) {
+        int sizeClass = getSizeClass(length);
+        if (sizeClass == -1 || getClassLength(sizeClass) != length) {
+            return -1;
+        }
+        return sizeClass;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int[] borrowInts(int minLength) {
+        int sizeClass = getSizeClass(minLength);
+        if (sizeClass == -1) {
+            return new int[minLength];
+        }
+        int length = getClassLength(sizeClass);
+        if (length * 4L <= maxThreadCachedBytes) {
+            ThreadCache cache = threadCache.get();
+            int[] ret = cache.ints[sizeClass];
+            if (ret != null) {
+                cache.ints[sizeClass] = null;
+                return ret;
+            }
+        }
+        int[] ret = sharedInts[sizeClass].poll();
+        if (ret != null) {
+            retainedBytes.addAndGet(-length * 4L);
+            return ret;
+        }
+        return new int[length];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void returnInts(int[] buffer) {
+        int sizeClass = getReturnedClass(buffer.length);
+        if (sizeClass == -1) {
+            return;
+        }
+        long size = buffer.length * 4L;
+        if (size <= maxThreadCachedBytes) {
+            ThreadCache cache = threadCache.get();
+            if (cache.ints[sizeClass] == null) {
+                cache.ints[sizeClass] = buffer;
+                return;
+            }
+        }
+        if (retainedBytes.addAndGet(size) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-size);
+            return;
+        }
+        sharedInts[sizeClass].offer(buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] borrowBytes(int minLength) {
+        int sizeClass = getSizeClass(minLength);
+        if (sizeClass == -1) {
+            return new byte[minLength];
+        }
+        int length = getClassLength(sizeClass);
+        if (length <= maxThreadCachedBytes) {
+            ThreadCache cache = threadCache.get();
+            byte[] ret = cache.bytes[sizeClass];
+            if (ret != null) {
+                cache.bytes[sizeClass] = null;
+                return ret;
+            }
+        }
+        byte[] ret = sharedBytes[sizeClass].poll();
+        if (ret != null) {
+            retainedBytes.addAndGet(-length);
+            return ret;
+        }
+        return new byte[length];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void returnBytes(byte[] buffer) {
+        int sizeClass = getReturnedClass(buffer.length);
+        if (sizeClass == -1) {
+            return;
+        }
+        long size = buffer.length;
+        if (size <= maxThreadCachedBytes) {
+            ThreadCache cache = threadCache.get();
+            if (cache.bytes[sizeClass] == null) {
+                cache.bytes[sizeClass] = buffer;
+                return;
+            }
+        }
+        if (retainedBytes.addAndGet(size) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-size);
+            return;
+        }
+        sharedBytes[sizeClass].offer(buffer);
+    }
+
+    /**
+     * Returns the number of bytes retained in shared queues.
+     * <p>
+     * Arrays cached per thread are not included.
+     * </p>
+     *
+     * @return the number of retained bytes
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+}
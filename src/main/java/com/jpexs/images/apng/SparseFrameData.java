@@ -0,0 +1,43 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.data.AnimationFrameData;
+import java.awt.image.BufferedImage;
+
+/**
+ * Animation frame whose image is composited on demand from
+ * {@link SparseFrameStore}.
+ * <p>
+ * When an image is set explicitly via {@link #setImage(BufferedImage)}, it
+ * takes precedence over the stored frame.
+ * </p>
+ *
+ * @author JPEXS
+ */
+class SparseFrameData extends AnimationFrameData {
+
+    private final SparseFrameStore store;
+
+    private final int index;
+
+    SparseFrameData(SparseFrameStore store, int index, int delayNumerator, int delayDenominator) {
+        super(null, delayNumerator, delayDenominator);
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The image is composited from the nearest snapshot, a new image is
+     * returned for every frame.
+     * </p>
+     */
+    @Override
+    public BufferedImage getImage() {
+        BufferedImage image = super.getImage();
+        if (image != null) {
+            return image;
+        }
+        return store.getImage(index);
+    }
+}
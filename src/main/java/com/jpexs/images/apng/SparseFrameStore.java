@@ -0,0 +1,209 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Fctl;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact storage of animation frames.
+ * <p>
+ * Keeps decoded subframe regions with their dispose and blend operations and
+ * a full canvas snapshot every N frames. A snapshot holds the canvas state
+ * before its frame is drawn, so any frame can be composited from the nearest
+ * preceding snapshot, including frames disposed to previous.
+ * </p>
+ * <p>
+ * The last composited frame is cached and sequential access continues from
+ * it without going back to the snapshot.
+ * </p>
+ *
+ * @author JPEXS
+ */
+class SparseFrameStore {
+
+    private static class Entry {
+
+        final int x;
+        final int y;
+        final int w;
+        final int h;
+        final int disposeOp;
+        final int blendOp;
+        final int[] pixels;
+
+        Entry(Fctl fctl, FrameRegion region, int[] pixels) {
+            this.x = region.x;
+            this.y = region.y;
+            this.w = region.width;
+            this.h = region.height;
+            this.disposeOp = fctl.getDisposeOp();
+            this.blendOp = fctl.getBlendOp();
+            this.pixels = pixels;
+        }
+    }
+
+    private final int width;
+
+    private final int height;
+
+    private final int snapshotInterval;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private final List<int[]> snapshots = new ArrayList<>();
+
+    /**
+     * Canvas used for compositing, shared by building and rendering.
+     */
+    private int[] workCanvas;
+
+    /**
+     * Saved region for {@link Fctl#DISPOSE_OP_PREVIOUS}.
+     */
+    private int[] workPrevious;
+
+    /**
+     * Index of the last frame drawn on the work canvas, -1 when the canvas
+     * holds a snapshot only.
+     */
+    private int workIndex = -1;
+
+    private int cachedIndex = -1;
+
+    private BufferedImage cachedImage;
+
+    /**
+     * Constructs an empty store.
+     *
+     * @param width the canvas width
+     * @param height the canvas height
+     * @param snapshotInterval the number of frames between snapshots
+     */
+    SparseFrameStore(int width, int height, int snapshotInterval) {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("Invalid snapshot interval " + snapshotInterval);
+        }
+        this.width = width;
+        this.height = height;
+        this.snapshotInterval = snapshotInterval;
+        this.workCanvas = new int[width * height];
+    }
+
+    /**
+     * Adds next frame to the store.
+     *
+     * @param fctl the frame control chunk
+     * @param region the region of the frame on the canvas
+     * @param subFramePixels the decoded subframe pixels, at least
+     *     {@code width * height} of the frame region, they are copied
+     * @return index of the added frame
+     */
+    synchronized int addFrame(Fctl fctl, FrameRegion region, int[] subFramePixels) {
+        int index = entries.size();
+        int[] pixels = new int[region.width * region.height];
+        System.arraycopy(subFramePixels, 0, pixels, 0, pixels.length);
+        Entry entry = new Entry(fctl, region, pixels);
+
+        //continue building from the last added frame
+        if (workIndex != index - 1) {
+            render(index - 1);
+        }
+        if (index > 0) {
+            dispose(entries.get(index - 1));
+        }
+        if (index % snapshotInterval == 0) {
+            snapshots.add(workCanvas.clone());
+        }
+        draw(entry);
+        entries.add(entry);
+        workIndex = index;
+        return index;
+    }
+
+    /**
+     * Returns the composited image of the frame.
+     * <p>
+     * The returned image is not modified by subsequent calls.
+     * </p>
+     *
+     * @param index the frame index
+     * @return the frame image
+     */
+    synchronized BufferedImage getImage(int index) {
+        if (index == cachedIndex) {
+            return cachedImage;
+        }
+        render(index);
+        int[] pixels = workCanvas.clone();
+        cachedImage = FrameCompositor.createArgbImage(pixels, width, height);
+        cachedIndex = index;
+        return cachedImage;
+    }
+
+    /**
+     * Returns the number of stored frames.
+     *
+     * @return the frame count
+     */
+    synchronized int getFrameCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the approximate number of bytes occupied by stored pixels.
+     *
+     * @return the size in bytes
+     */
+    synchronized long getRetainedBytes() {
+        long size = 4L * workCanvas.length * (1 + snapshots.size());
+        for (Entry entry : entries) {
+            size += 4L * entry.pixels.length;
+        }
+        if (workPrevious != null) {
+            size += 4L * workPrevious.length;
+        }
+        return size;
+    }
+
+    private void render(int index) {
+        if (index == workIndex) {
+            return;
+        }
+        int snapshot = index / snapshotInterval;
+        if (index < workIndex || workIndex < snapshot * snapshotInterval) {
+            System.arraycopy(snapshots.get(snapshot), 0, workCanvas, 0, workCanvas.length);
+            workIndex = snapshot * snapshotInterval - 1;
+            draw(entries.get(workIndex + 1));
+            workIndex++;
+        }
+        while (workIndex < index) {
+            dispose(entries.get(workIndex));
+            workIndex++;
+            draw(entries.get(workIndex));
+        }
+    }
+
+    private void draw(Entry entry) {
+        if (entry.disposeOp == Fctl.DISPOSE_OP_PREVIOUS) {
+            if (workPrevious == null || workPrevious.length < entry.w * entry.h) {
+                workPrevious = new int[entry.w * entry.h];
+            }
+            FrameCompositor.saveRegion(workCanvas, width, entry.x, entry.y, entry.w, entry.h, workPrevious);
+        }
+        FrameCompositor.drawFrame(workCanvas, width, entry.pixels, entry.x, entry.y, entry.w, entry.h, entry.blendOp);
+    }
+
+    private void dispose(Entry entry) {
+        switch (entry.disposeOp) {
+            case Fctl.DISPOSE_OP_NONE:
+                break;
+            case Fctl.DISPOSE_OP_BACKGROUND:
+                FrameCompositor.fillRegion(workCanvas, width, entry.x, entry.y, entry.w, entry.h, 0);
+                break;
+            case Fctl.DISPOSE_OP_PREVIOUS:
+                FrameCompositor.restoreRegion(workCanvas, width, entry.x, entry.y, entry.w, entry.h, workPrevious);
+                break;
+        }
+    }
+}
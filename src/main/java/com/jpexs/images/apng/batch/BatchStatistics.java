@@ -0,0 +1,104 @@
+package com.jpexs.images.apng.batch;
+
+/**
+ * Snapshot of batch transcoding progress and throughput.
+ *
+ * @author JPEXS
+ * @see BatchTranscoder
+ */
+public class BatchStatistics {
+
+    private final long completedCount;
+    private final long failedCount;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs statistics.
+     *
+     * @param completedCount the number of transcoded inputs
+     * @param failedCount the number of failed inputs
+     * @param bytesRead the input bytes of transcoded inputs
+     * @param bytesWritten the bytes written to the sink
+     * @param elapsedNanos the time since the batch started
+     */
+    public BatchStatistics(long completedCount, long failedCount, long bytesRead, long bytesWritten, long elapsedNanos) {
+        this.completedCount = completedCount;
+        this.failedCount = failedCount;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the number of transcoded inputs.
+     *
+     * @return the completed count
+     */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Returns the number of inputs which failed.
+     *
+     * @return the failed count
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * Returns the number of input bytes of transcoded inputs.
+     *
+     * @return the bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the number of bytes written to the sink.
+     *
+     * @return the bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the time since the batch started.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the throughput in inputs.
+     *
+     * @return transcoded inputs per second
+     */
+    public double getFilesPerSecond() {
+        return elapsedNanos == 0 ? 0 : completedCount * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Returns the throughput in input bytes.
+     *
+     * @return input bytes per second
+     */
+    public double getBytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytesRead * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[statistics completed=" + completedCount + " failed=" + failedCount + " bytesRead=" + bytesRead + " bytesWritten=" + bytesWritten + " elapsedMs=" + elapsedNanos / 1000000 + "]";
+    }
+}
@@ -0,0 +1,454 @@
+package com.jpexs.images.apng.batch;
+
+import com.jpexs.images.apng.AnimatedPngDecoder;
+import com.jpexs.images.apng.AnimatedPngEncoder;
+import com.jpexs.images.apng.ApngInfo;
+import com.jpexs.images.apng.DecodeOptions;
+import com.jpexs.images.apng.data.AnimatedPngData;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Re-encoding of many PNG and Animated PNG images in parallel.
+ * <p>
+ * Inputs are decoded by {@link AnimatedPngDecoder} and encoded by
+ * {@link AnimatedPngEncoder} on a fixed number of worker threads. Inputs are
+ * pulled from the iterator only when there is room in the bounded work queue,
+ * so millions of inputs can be processed without listing them in memory.
+ * </p>
+ * <p>
+ * Before decoding, the header of each input is probed by {@link ApngInfo} and
+ * the memory needed for its decoded frames is reserved from the memory budget.
+ * Workers wait until enough of the budget is free, an input larger than the
+ * whole budget runs alone.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ * </p>
+ * <pre>{@code
+ * BatchTranscoder transcoder = new BatchTranscoder();
+ * transcoder.setParallelism(8);
+ * transcoder.setMemoryBudget(2L * 1024 * 1024 * 1024);
+ * BatchStatistics statistics = transcoder.transcodeDirectory(Paths.get("in"), Paths.get("out"));
+ * }</pre>
+ * <p>
+ * The same is available from the command line, see {@link #main(String[])}.
+ * </p>
+ *
+ * @author JPEXS
+ * @see TranscodeInput
+ * @see TranscodeSink
+ */
+public class BatchTranscoder {
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private int queueCapacity = 64;
+
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+
+    private DecodeOptions decodeOptions = new DecodeOptions();
+
+    private TranscodeListener listener;
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of worker threads. By default, the number of available
+     * processors.
+     *
+     * @param parallelism the parallelism, at least 1
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of inputs waiting for a worker.
+     *
+     * @return the queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the number of inputs which can wait for a worker. When the queue is
+     * full, the thread calling {@link #transcode(Iterator, TranscodeSink)}
+     * waits. Default is 64.
+     *
+     * @param queueCapacity the queue capacity, at least 0
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid queue capacity " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Returns the memory budget shared by concurrently transcoded inputs.
+     *
+     * @return the budget in bytes
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the memory budget shared by concurrently transcoded inputs. By
+     * default, half of the maximum heap size.
+     *
+     * @param memoryBudget the budget in bytes
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 1) {
+            throw new IllegalArgumentException("Invalid memory budget " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Returns the options used for decoding inputs.
+     *
+     * @return the decoding options
+     */
+    public DecodeOptions getDecodeOptions() {
+        return decodeOptions;
+    }
+
+    /**
+     * Sets the options used for decoding inputs. The options are shared by all
+     * workers.
+     *
+     * @param decodeOptions the decoding options
+     */
+    public void setDecodeOptions(DecodeOptions decodeOptions) {
+        this.decodeOptions = decodeOptions;
+    }
+
+    /**
+     * Returns the progress listener.
+     *
+     * @return the listener, or null
+     */
+    public TranscodeListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Sets the progress listener.
+     *
+     * @param listener the listener, or null
+     */
+    public void setListener(TranscodeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Transcodes all PNG files (with {@code .png} extension) in the directory
+     * and its subdirectories into the output directory, keeping relative
+     * paths.
+     *
+     * @param inputDir the input directory
+     * @param outputDir the output directory
+     * @return the final statistics
+     * @throws IOException if the input directory cannot be listed
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public BatchStatistics transcodeDirectory(Path inputDir, Path outputDir) throws IOException, InterruptedException {
+        try (Stream<Path> files = Files.walk(inputDir)) {
+            Iterator<TranscodeInput> inputs = files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".png"))
+                    .map(file -> TranscodeInput.of(inputDir, file))
+                    .iterator();
+            return transcode(inputs, TranscodeSink.directory(outputDir));
+        }
+    }
+
+    /**
+     * Transcodes the inputs and writes them to the sink. Returns when all
+     * inputs are processed. Failure of an input is reported to the listener
+     * and does not stop the batch.
+     *
+     * @param inputs the inputs, pulled as the queue has room
+     * @param sink the sink
+     * @return the final statistics
+     * @throws InterruptedException if interrupted while waiting for workers,
+     *     the workers are interrupted too
+     */
+    public BatchStatistics transcode(Iterator<? extends TranscodeInput> inputs, TranscodeSink sink) throws InterruptedException {
+        Batch batch = new Batch(sink);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Semaphore slots = new Semaphore(parallelism + queueCapacity);
+        boolean finished = false;
+        try {
+            while (inputs.hasNext()) {
+                TranscodeInput input = inputs.next();
+                slots.acquire();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            batch.process(input);
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    slots.release();
+                    throw ex;
+                }
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            finished = true;
+        } finally {
+            if (!finished) {
+                executor.shutdownNow();
+            }
+        }
+        return batch.getStatistics();
+    }
+
+    /**
+     * Estimates memory needed for transcoding the input: the decoded frames
+     * according to the frame storage, the compositing canvases and the input
+     * and output data.
+     */
+    private long estimateMemory(TranscodeInput input) {
+        long size = Math.max(0, input.getSize());
+        try (InputStream is = new BufferedInputStream(input.openStream())) {
+            return ApngInfo.probe(is).estimateDecodedBytes(decodeOptions) + 2 * size;
+        } catch (IOException | RuntimeException ex) {
+            //decoding will report the error
+            return 2 * size;
+        }
+    }
+
+    /**
+     * State of a single run.
+     */
+    private class Batch {
+
+        private final TranscodeSink sink;
+
+        private final MemoryBudget budget = new MemoryBudget(memoryBudget);
+
+        private final long startTime = System.nanoTime();
+
+        private final AtomicLong completedCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+
+        Batch(TranscodeSink sink) {
+            this.sink = sink;
+        }
+
+        BatchStatistics getStatistics() {
+            return new BatchStatistics(completedCount.get(), failedCount.get(), bytesRead.get(), bytesWritten.get(), System.nanoTime() - startTime);
+        }
+
+        void process(TranscodeInput input) {
+            long reserved = 0;
+            try {
+                reserved = estimateMemory(input);
+                budget.reserve(reserved);
+                CountingInputStream is = new CountingInputStream(new BufferedInputStream(input.openStream()));
+                AnimatedPngData data;
+                try {
+                    data = AnimatedPngDecoder.decode(is, decodeOptions);
+                } finally {
+                    is.close();
+                }
+                CountingOutputStream os = new CountingOutputStream(new BufferedOutputStream(sink.openOutput(input.getName())));
+                try {
+                    AnimatedPngEncoder.encode(data, os);
+                } finally {
+                    os.close();
+                }
+                bytesRead.addAndGet(is.count);
+                bytesWritten.addAndGet(os.count);
+                completedCount.incrementAndGet();
+                if (listener != null) {
+                    listener.completed(input.getName(), getStatistics());
+                }
+            } catch (InterruptedException ex) {
+                reserved = 0;
+                Thread.currentThread().interrupt();
+                failed(input, ex);
+            } catch (IOException | RuntimeException ex) {
+                failed(input, ex);
+            } finally {
+                budget.release(reserved);
+            }
+        }
+
+        private void failed(TranscodeInput input, Exception ex) {
+            failedCount.incrementAndGet();
+            if (listener != null) {
+                listener.failed(input.getName(), ex, getStatistics());
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int ret = super.read();
+            if (ret != -1) {
+                count++;
+            }
+            return ret;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int ret = super.read(b, off, len);
+            if (ret > 0) {
+                count += ret;
+            }
+            return ret;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long ret = super.skip(n);
+            count += ret;
+            return ret;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Command line entry point.
+     * <p>
+     * Usage: {@code BatchTranscoder [-j threads] [-q queue] [-m memoryMB]
+     * inputDir outputDir}. Progress and throughput are printed to the standard
+     * error output every second, failed inputs are listed. Exit code is 1 when
+     * some input failed.
+     * </p>
+     *
+     * @param args command line arguments
+     * @throws IOException if the input directory cannot be listed
+     * @throws InterruptedException if interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BatchTranscoder transcoder = new BatchTranscoder();
+        int pos = 0;
+        try {
+            while (pos < args.length && args[pos].startsWith("-")) {
+                String option = args[pos++];
+                if (pos >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + option);
+                }
+                int value = Integer.parseInt(args[pos++]);
+                switch (option) {
+                    case "-j":
+                        transcoder.setParallelism(value);
+                        break;
+                    case "-q":
+                        transcoder.setQueueCapacity(value);
+                        break;
+                    case "-m":
+                        transcoder.setMemoryBudget(value * 1024L * 1024L);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            if (args.length - pos != 2) {
+                throw new IllegalArgumentException("Expected input and output directory");
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: BatchTranscoder [-j threads] [-q queue] [-m memoryMB] inputDir outputDir");
+            System.exit(2);
+            return;
+        }
+
+        AtomicLong lastReport = new AtomicLong(System.nanoTime());
+        transcoder.setListener(new TranscodeListener() {
+            @Override
+            public void completed(String name, BatchStatistics statistics) {
+                long now = System.nanoTime();
+                long last = lastReport.get();
+                if (now - last >= 1000000000L && lastReport.compareAndSet(last, now)) {
+                    System.err.println(format(statistics));
+                }
+            }
+
+            @Override
+            public void failed(String name, Exception error, BatchStatistics statistics) {
+                System.err.println("Failed " + name + ": " + error);
+            }
+        });
+        BatchStatistics statistics = transcoder.transcodeDirectory(Paths.get(args[pos]), Paths.get(args[pos + 1]));
+        System.err.println(format(statistics));
+        if (statistics.getFailedCount() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String format(BatchStatistics statistics) {
+        return String.format(Locale.ROOT, "%d done, %d failed, %.1f files/s, %.2f MB/s",
+                statistics.getCompletedCount(), statistics.getFailedCount(),
+                statistics.getFilesPerSecond(), statistics.getBytesPerSecond() / (1024 * 1024));
+    }
+}
@@ -0,0 +1,44 @@
+package com.jpexs.images.apng.batch;
+
+/**
+ * Number of bytes which can be reserved by concurrently transcoded inputs.
+ * <p>
+ * A reservation larger than the whole budget is granted when nothing else is
+ * reserved, so huge inputs run alone instead of failing.
+ * </p>
+ *
+ * @author JPEXS
+ */
+class MemoryBudget {
+
+    private final long maxBytes;
+
+    private long reservedBytes = 0;
+
+    MemoryBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reserves bytes, waits until enough of the budget is free.
+     *
+     * @param bytes the number of bytes
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void reserve(long bytes) throws InterruptedException {
+        while (reservedBytes > 0 && reservedBytes + bytes > maxBytes) {
+            wait();
+        }
+        reservedBytes += bytes;
+    }
+
+    /**
+     * Releases previously reserved bytes.
+     *
+     * @param bytes the number of bytes
+     */
+    synchronized void release(long bytes) {
+        reservedBytes -= bytes;
+        notifyAll();
+    }
+}
@@ -0,0 +1,99 @@
+package com.jpexs.images.apng.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Single input of batch transcoding.
+ * <p>
+ * The stream can be opened more than once, first to probe the image header
+ * for memory budgeting, then to decode it.
+ * </p>
+ *
+ * @author JPEXS
+ * @see BatchTranscoder
+ */
+public interface TranscodeInput {
+
+    /**
+     * Returns the name of the input, used as the output name in the sink.
+     *
+     * @return the name, for example a relative path with {@code /} separators
+     */
+    public String getName();
+
+    /**
+     * Returns the size of the input data.
+     *
+     * @return the size in bytes, -1 when unknown
+     */
+    public long getSize();
+
+    /**
+     * Opens new stream of the input data.
+     *
+     * @return the stream positioned at the start of the PNG
+     * @throws IOException if an I/O error occurs
+     */
+    public InputStream openStream() throws IOException;
+
+    /**
+     * Creates input of a file.
+     *
+     * @param baseDir the directory the name is relative to
+     * @param file the file
+     * @return the input
+     */
+    public static TranscodeInput of(Path baseDir, Path file) {
+        String name = baseDir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+        return new TranscodeInput() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public long getSize() {
+                try {
+                    return Files.size(file);
+                } catch (IOException ex) {
+                    return -1;
+                }
+            }
+
+            @Override
+            public InputStream openStream() throws IOException {
+                return Files.newInputStream(file);
+            }
+        };
+    }
+
+    /**
+     * Creates input of PNG data in memory.
+     *
+     * @param name the name
+     * @param data the PNG data
+     * @return the input
+     */
+    public static TranscodeInput of(String name, byte[] data) {
+        return new TranscodeInput() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public long getSize() {
+                return data.length;
+            }
+
+            @Override
+            public InputStream openStream() {
+                return new ByteArrayInputStream(data);
+            }
+        };
+    }
+}
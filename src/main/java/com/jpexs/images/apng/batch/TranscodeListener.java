@@ -0,0 +1,29 @@
+package com.jpexs.images.apng.batch;
+
+/**
+ * Listener of batch transcoding progress. Methods are called from worker
+ * threads.
+ *
+ * @author JPEXS
+ * @see BatchTranscoder#setListener(TranscodeListener)
+ */
+public interface TranscodeListener {
+
+    /**
+     * Called when an input was transcoded and written to the sink.
+     *
+     * @param name the name of the input
+     * @param statistics the statistics including this input
+     */
+    public void completed(String name, BatchStatistics statistics);
+
+    /**
+     * Called when transcoding of an input failed. The batch continues with
+     * other inputs.
+     *
+     * @param name the name of the input
+     * @param error the error
+     * @param statistics the statistics including this input
+     */
+    public void failed(String name, Exception error, BatchStatistics statistics);
+}
@@ -0,0 +1,47 @@
+package com.jpexs.images.apng.batch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Destination of transcoded images.
+ * <p>
+ * Implementations must be thread-safe, outputs are opened from worker threads
+ * concurrently.
+ * </p>
+ *
+ * @author JPEXS
+ * @see BatchTranscoder
+ */
+public interface TranscodeSink {
+
+    /**
+     * Opens output for the transcoded image. The stream is closed by the
+     * caller when the image is written.
+     *
+     * @param name the name of the input
+     * @return the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    public OutputStream openOutput(String name) throws IOException;
+
+    /**
+     * Creates sink writing files to the directory, names are resolved as
+     * relative paths and missing parent directories are created.
+     *
+     * @param dir the output directory
+     * @return the sink
+     */
+    public static TranscodeSink directory(Path dir) {
+        return name -> {
+            Path file = dir.resolve(name);
+            Path parent = file.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            return Files.newOutputStream(file);
+        };
+    }
+}
@@ -3,6 +3,7 @@ package com.jpexs.images.apng.chunks;
 import com.jpexs.images.apng.PngInputStream;
 import com.jpexs.images.apng.PngOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * acTL Animation Control Chunk.
@@ -20,6 +21,11 @@ public class Actl extends Chunk {
      */
     public static final String TYPE = "acTL";
 
+    /**
+     * Chunk type identifier packed to an int.
+     */
+    public static final int TYPE_CODE = 0x6163544C;
+
     /**
      * Indicates the total number of frames in the animation. This must equal
      * the number of fcTL chunks. 0 is not a valid value. 1 is a valid value,
@@ -44,6 +50,15 @@ public class Actl extends Chunk {
         super(TYPE, data);
     }
 
+    /**
+     * Constructs an Actl chunk referencing raw data without copying it.
+     *
+     * @param data the raw chunk data, its remaining bytes are used
+     */
+    public Actl(ByteBuffer data) {
+        super(TYPE, data);
+    }
+
     /**
      * Constructs an Actl chunk with the specified parameters.
      *
@@ -108,6 +123,7 @@ public class Actl extends Chunk {
      */
     public void setNumFrames(long numFrames) {
         this.numFrames = numFrames;
+        invalidate();
     }
 
     /**
@@ -126,6 +142,7 @@ public class Actl extends Chunk {
      */
     public void setNumPlays(long numPlays) {
         this.numPlays = numPlays;
+        invalidate();
     }
 
 }
@@ -1,10 +1,11 @@
 package com.jpexs.images.apng.chunks;
 
+import com.jpexs.images.apng.Crc;
 import com.jpexs.images.apng.PngInputStream;
 import com.jpexs.images.apng.PngOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * PNG Chunk.
@@ -12,20 +13,36 @@ import java.io.IOException;
  * Base class for all PNG chunks. Subclasses implement specific chunk types
  * such as IHDR, acTL, fcTL, etc.
  * </p>
+ * <p>
+ * The serialized data and CRC are cached and discarded by setters. Arrays
+ * returned by getters must be passed back to the setter when modified.
+ * </p>
  *
  * @author JPEXS
  */
 public class Chunk {
 
     /**
-     * The chunk type (4 characters).
+     * The chunk type packed to an int, first character in the highest byte.
+     */
+    private final int typeCode;
+
+    /**
+     * The chunk type (4 characters), created on demand.
      */
-    private final String type;
+    private String type;
 
     /**
-     * The raw chunk data.
+     * The serialized chunk data. Initially a slice of the source the chunk was
+     * read from, null when the chunk needs to be serialized.
      */
-    private final byte[] data;
+    private ByteBuffer data;
+
+    /**
+     * CRC of the chunk type and serialized data as read from the source or
+     * calculated, -1 when not known.
+     */
+    private long crc = -1;
 
     /**
      * Constructs a new chunk with the specified type and data.
@@ -34,8 +51,32 @@ public class Chunk {
      * @param data the chunk data
      */
     public Chunk(String type, byte[] data) {
+        this(type, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Constructs a new chunk with the specified type referencing the data
+     * without copying it.
+     *
+     * @param type the 4-character chunk type
+     * @param data the chunk data, its remaining bytes are used
+     */
+    public Chunk(String type, ByteBuffer data) {
+        this.typeCode = toTypeCode(type);
         this.type = type;
-        this.data = data;
+        this.data = data.slice();
+    }
+
+    /**
+     * Constructs a new chunk with the specified type code referencing the data
+     * without copying it.
+     *
+     * @param typeCode the chunk type packed to an int
+     * @param data the chunk data, its remaining bytes are used
+     */
+    public Chunk(int typeCode, ByteBuffer data) {
+        this.typeCode = typeCode;
+        this.data = data.slice();
     }
 
     /**
@@ -44,7 +85,38 @@ public class Chunk {
      * @param type the 4-character chunk type
      */
     public Chunk(String type) {
-        this(type, new byte[0]);
+        this.typeCode = toTypeCode(type);
+        this.type = type;
+    }
+
+    /**
+     * Packs a chunk type to an int, first character in the highest byte, as it
+     * is stored in PNG data.
+     *
+     * @param type the 4-character chunk type
+     * @return the type code
+     * @throws IllegalArgumentException if the type does not have 4 characters
+     */
+    public static int toTypeCode(String type) {
+        if (type.length() != 4) {
+            throw new IllegalArgumentException("Invalid chunk type: " + type);
+        }
+        return ((type.charAt(0) & 0xFF) << 24) | ((type.charAt(1) & 0xFF) << 16) | ((type.charAt(2) & 0xFF) << 8) | (type.charAt(3) & 0xFF);
+    }
+
+    /**
+     * Unpacks a chunk type from an int.
+     *
+     * @param typeCode the type code
+     * @return the 4-character chunk type
+     */
+    public static String toTypeString(int typeCode) {
+        return new String(new char[]{
+            (char) ((typeCode >>> 24) & 0xFF),
+            (char) ((typeCode >>> 16) & 0xFF),
+            (char) ((typeCode >>> 8) & 0xFF),
+            (char) (typeCode & 0xFF)
+        });
     }
 
     /**
@@ -62,14 +134,27 @@ public class Chunk {
     }
 
     /**
-     * Parses the chunk data from the internal data array.
+     * Parses chunk-specific data from the buffer.
+     * <p>
+     * By default the buffer is read by {@link #parseData(PngInputStream)}.
+     * Subclasses holding large payloads override this method to reference the
+     * buffer instead of copying it.
+     * </p>
+     *
+     * @param data the chunk data
+     * @throws IOException if an I/O error occurs
+     */
+    protected void parseData(ByteBuffer data) throws IOException {
+        parseData(new PngInputStream(data));
+    }
+
+    /**
+     * Parses the chunk data from the internal data buffer.
      *
      * @throws IOException if an I/O error occurs
      */
     public final void parseData() throws IOException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(data);
-        PngInputStream pis = new PngInputStream(bis);
-        parseData(pis);
+        parseData(serialize().duplicate());
     }
 
     /**
@@ -78,9 +163,22 @@ public class Chunk {
      * @return the 4-character chunk type
      */
     public final String getType() {
+        if (type == null) {
+            type = toTypeString(typeCode);
+        }
         return type;
     }
 
+    /**
+     * Returns the chunk type packed to an int, for example
+     * {@link Ihdr#TYPE_CODE}.
+     *
+     * @return the type code
+     */
+    public final int getTypeCode() {
+        return typeCode;
+    }
+
     /**
      * Writes the chunk data to the output stream.
      * <p>
@@ -92,20 +190,107 @@ public class Chunk {
      * @throws IOException if an I/O error occurs
      */
     public void writeData(PngOutputStream os) throws IOException {
-        os.write(data);
+        if (data != null) {
+            os.write(data);
+        }
+    }
+
+    /**
+     * Discards the serialized data and CRC. Subclasses call this method
+     * whenever a field changes.
+     */
+    protected final void invalidate() {
+        data = null;
+        crc = -1;
+    }
+
+    /**
+     * Returns the serialized data, serializes the chunk by
+     * {@link #writeData(PngOutputStream)} when it was modified.
+     *
+     * @return the serialized data
+     * @throws IOException if an I/O error occurs during serialization
+     */
+    private ByteBuffer serialize() throws IOException {
+        if (data == null) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            PngOutputStream pos = new PngOutputStream(baos);
+            writeData(pos);
+            data = ByteBuffer.wrap(baos.toByteArray());
+        }
+        return data;
+    }
+
+    /**
+     * Returns the serialized chunk data without copying it.
+     * <p>
+     * Chunks which were read and not modified return the data as it was read,
+     * other chunks are serialized once until modified again.
+     * </p>
+     *
+     * @return a read-only buffer sharing the content of the serialized data
+     * @throws IOException if an I/O error occurs during serialization
+     */
+    public final ByteBuffer getDataBuffer() throws IOException {
+        return serialize().asReadOnlyBuffer();
     }
 
     /**
      * Returns the chunk data as a byte array.
      *
-     * @return the chunk data
+     * @return a copy of the serialized chunk data
      * @throws IOException if an I/O error occurs during serialization
      */
     public final byte[] getData() throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PngOutputStream pos = new PngOutputStream(baos);
-        writeData(pos);
-        return baos.toByteArray();
+        ByteBuffer data = serialize();
+        byte[] ret = new byte[data.remaining()];
+        data.duplicate().get(ret);
+        return ret;
+    }
+
+    /**
+     * Returns the CRC of the chunk type and data, calculated once until the
+     * chunk is modified.
+     *
+     * @return the CRC-32 as an unsigned 32-bit value
+     * @throws IOException if an I/O error occurs during serialization
+     */
+    public final long getCrc() throws IOException {
+        if (crc == -1) {
+            crc = Crc.calculate(typeCode, serialize());
+        }
+        return crc;
+    }
+
+    /**
+     * Sets the CRC read from the source together with the chunk data, so the
+     * unmodified chunk is written with it without calculating the CRC again.
+     * The CRC is discarded when the chunk is modified.
+     *
+     * @param crc the CRC-32 as an unsigned 32-bit value
+     */
+    public final void setSourceCrc(long crc) {
+        this.crc = crc;
+    }
+
+    /**
+     * Returns the remaining bytes of the buffer as an array.
+     * <p>
+     * The backing array is returned directly when the buffer spans all of it,
+     * otherwise the bytes are copied. Position of the buffer is not modified.
+     * </p>
+     *
+     * @param buffer the buffer
+     * @return the byte array
+     */
+    protected static byte[] toByteArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] ret = new byte[buffer.remaining()];
+        buffer.duplicate().get(ret);
+        return ret;
     }
 
     /**
@@ -3,6 +3,7 @@ package com.jpexs.images.apng.chunks;
 import com.jpexs.images.apng.PngInputStream;
 import com.jpexs.images.apng.PngOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * fcTL Frame Control Chunk.
@@ -20,6 +21,11 @@ public class Fctl extends Chunk {
      */
     public static final String TYPE = "fcTL";
 
+    /**
+     * Chunk type identifier packed to an int.
+     */
+    public static final int TYPE_CODE = 0x6663544C;
+
     /**
      * No disposal is done on this frame before rendering the next; the contents
      * of the output buffer are left as is.
@@ -113,6 +119,15 @@ The width and height fields must equal the corresponding fields from the IHDR ch
         super(TYPE, data);
     }
 
+    /**
+     * Constructs an Fctl chunk referencing raw data without copying it.
+     *
+     * @param data the raw chunk data, its remaining bytes are used
+     */
+    public Fctl(ByteBuffer data) {
+        super(TYPE, data);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -222,6 +237,7 @@ The width and height fields must equal the corresponding fields from the IHDR ch
      */
     public void setSequenceNumber(long sequenceNumber) {
         this.sequenceNumber = sequenceNumber;
+        invalidate();
     }
 
     /**
@@ -240,6 +256,7 @@ The width and height fields must equal the corresponding fields from the IHDR ch
      */
     public void setWidth(long width) {
         this.width = width;
+        invalidate();
     }
 
     /**
@@ -258,6 +275,7 @@ The width and height fields must equal the corresponding fields from the IHDR ch
      */
     public void setHeight(long height) {
         this.height = height;
+        invalidate();
     }
 
     /**
@@ -276,6 +294,7 @@ The width and height fields must equal the corresponding fields from the IHDR ch
      */
     public void setxOffset(long xOffset) {
         this.xOffset = xOffset;
+        invalidate();
     }
 
     /**
@@ -294,6 +313,7 @@ The width and height fields must equal the corresponding fields from the IHDR ch
      */
     public void setyOffset(long yOffset) {
         this.yOffset = yOffset;
+        invalidate();
     }
 
     /**
@@ -312,6 +332,7 @@ The width and height fields must equal the corresponding fields from the IHDR ch
      */
     public void setDelayNum(int delayNum) {
         this.delayNum = delayNum;
+        invalidate();
     }
 
     /**
@@ -330,6 +351,7 @@ The width and height fields must equal the corresponding fields from the IHDR ch
      */
     public void setDelayDen(int delayDen) {
         this.delayDen = delayDen;
+        invalidate();
     }
 
     /**
@@ -348,6 +370,7 @@ The width and height fields must equal the corresponding fields from the IHDR ch
      */
     public void setDisposeOp(int disposeOp) {
         this.disposeOp = disposeOp;
+        invalidate();
     }
 
     /**
@@ -366,6 +389,7 @@ The width and height fields must equal the corresponding fields from the IHDR ch
      */
     public void setBlendOp(int blendOp) {
         this.blendOp = blendOp;
+        invalidate();
     }
 
 }
@@ -3,6 +3,7 @@ package com.jpexs.images.apng.chunks;
 import com.jpexs.images.apng.PngInputStream;
 import com.jpexs.images.apng.PngOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * fdAT Frame Data Chunk.
@@ -20,6 +21,11 @@ public class Fdat extends Chunk {
      */
     public static final String TYPE = "fdAT";
 
+    /**
+     * Chunk type identifier packed to an int.
+     */
+    public static final int TYPE_CODE = 0x66644154;
+
     /**
      * The sequence number of this chunk.
      */
@@ -28,7 +34,7 @@ public class Fdat extends Chunk {
     /**
      * The frame image data.
      */
-    private byte[] frameData;
+    private ByteBuffer frameData;
 
     /**
      * Constructs an Fdat chunk from raw data.
@@ -39,6 +45,15 @@ public class Fdat extends Chunk {
         super(TYPE, data);
     }
 
+    /**
+     * Constructs an Fdat chunk referencing raw data without copying it.
+     *
+     * @param data the raw chunk data, its remaining bytes are used
+     */
+    public Fdat(ByteBuffer data) {
+        super(TYPE, data);
+    }
+
     /**
      * Constructs an Fdat chunk with the specified sequence number and frame
      * data.
@@ -48,10 +63,21 @@ public class Fdat extends Chunk {
      */
     public Fdat(long sequenceNumber, byte[] frameData) {
         super(TYPE);
-        create(sequenceNumber, frameData);
+        create(sequenceNumber, ByteBuffer.wrap(frameData));
     }
 
-    private void create(long sequenceNumber, byte[] frameData) {
+    /**
+     * Constructs an Fdat chunk referencing the frame data without copying it.
+     *
+     * @param sequenceNumber the sequence number
+     * @param frameData the frame image data, its remaining bytes are used
+     */
+    public Fdat(long sequenceNumber, ByteBuffer frameData) {
+        super(TYPE);
+        create(sequenceNumber, frameData.slice());
+    }
+
+    private void create(long sequenceNumber, ByteBuffer frameData) {
         this.sequenceNumber = sequenceNumber;
         this.frameData = frameData;
     }
@@ -63,7 +89,25 @@ public class Fdat extends Chunk {
     public void parseData(PngInputStream pis) throws IOException {
         long sequenceNumber = pis.readUnsignedInt();
         byte[] frameData = pis.readBytes(pis.available());
-        create(sequenceNumber, frameData);
+        create(sequenceNumber, ByteBuffer.wrap(frameData));
+    }
+
+    /**
+     * Reads the sequence number and references the rest of the buffer as the
+     * frame data, without copying it.
+     *
+     * @param data the chunk data
+     * @throws IOException if the data is too short
+     */
+    @Override
+    protected void parseData(ByteBuffer data) throws IOException {
+        if (data.remaining() < 4) {
+            throw new IOException("Invalid fdAT chunk length " + data.remaining());
+        }
+        long sequenceNumber = data.getInt(data.position()) & 0xFFFFFFFFL;
+        ByteBuffer frameData = data.duplicate();
+        frameData.position(data.position() + 4);
+        create(sequenceNumber, frameData.slice());
     }
 
     /**
@@ -80,7 +124,7 @@ public class Fdat extends Chunk {
      */
     @Override
     public String toString() {
-        return "[fdAT sequenceNumber=" + sequenceNumber + " frameData.length=" + frameData.length + "]";
+        return "[fdAT sequenceNumber=" + sequenceNumber + " frameData.length=" + frameData.remaining() + "]";
     }
 
     /**
@@ -99,15 +143,28 @@ public class Fdat extends Chunk {
      */
     public void setSequenceNumber(long sequenceNumber) {
         this.sequenceNumber = sequenceNumber;
+        invalidate();
     }
 
     /**
      * Returns the frame image data.
+     * <p>
+     * When the data is not backed by a whole array, it is copied.
+     * </p>
      *
      * @return the frame data
      */
     public byte[] getFrameData() {
-        return frameData;
+        return toByteArray(frameData);
+    }
+
+    /**
+     * Returns the frame image data without copying it.
+     *
+     * @return a new buffer sharing the content of the frame data
+     */
+    public ByteBuffer getFrameDataBuffer() {
+        return frameData.duplicate();
     }
 
     /**
@@ -116,7 +173,18 @@ public class Fdat extends Chunk {
      * @param frameData the frame data
      */
     public void setFrameData(byte[] frameData) {
-        this.frameData = frameData;
+        this.frameData = ByteBuffer.wrap(frameData);
+        invalidate();
+    }
+
+    /**
+     * Sets the frame image data without copying it.
+     *
+     * @param frameData the frame data, its remaining bytes are used
+     */
+    public void setFrameData(ByteBuffer frameData) {
+        this.frameData = frameData.slice();
+        invalidate();
     }
 
 }
@@ -3,6 +3,7 @@ package com.jpexs.images.apng.chunks;
 import com.jpexs.images.apng.PngInputStream;
 import com.jpexs.images.apng.PngOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * IDAT Image Data Chunk.
@@ -21,10 +22,15 @@ public class Idat extends Chunk {
      */
     public static final String TYPE = "IDAT";
 
+    /**
+     * Chunk type identifier packed to an int.
+     */
+    public static final int TYPE_CODE = 0x49444154;
+
     /**
      * The compressed image data.
      */
-    private byte[] frameData;
+    private ByteBuffer frameData;
 
     /**
      * Constructs an IDAT chunk from raw data.
@@ -33,7 +39,18 @@ public class Idat extends Chunk {
      */
     public Idat(byte[] data) {
         super(TYPE, data);
-        create(data);
+        create(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Constructs an IDAT chunk referencing the compressed image data without
+     * copying it.
+     *
+     * @param frameData the compressed image data, its remaining bytes are used
+     */
+    public Idat(ByteBuffer frameData) {
+        super(TYPE, frameData);
+        create(frameData.slice());
     }
 
     /**
@@ -42,7 +59,17 @@ public class Idat extends Chunk {
     @Override
     public void parseData(PngInputStream pis) throws IOException {
         byte[] frameData = pis.readBytes(pis.available());
-        create(frameData);
+        create(ByteBuffer.wrap(frameData));
+    }
+
+    /**
+     * References the buffer as the image data, without copying it.
+     *
+     * @param data the chunk data
+     */
+    @Override
+    protected void parseData(ByteBuffer data) {
+        create(data.slice());
     }
 
     /**
@@ -53,7 +80,7 @@ public class Idat extends Chunk {
         os.write(frameData);
     }
 
-    private void create(byte[] frameData) {
+    private void create(ByteBuffer frameData) {
         this.frameData = frameData;
     }
 
@@ -62,7 +89,7 @@ public class Idat extends Chunk {
      */
     @Override
     public String toString() {
-        return "[IDAT dataLength=" + frameData.length + "]";
+        return "[IDAT dataLength=" + frameData.remaining() + "]";
     }
 
     /**
@@ -71,15 +98,38 @@ public class Idat extends Chunk {
      * @param frameData the compressed image data
      */
     public void setFrameData(byte[] frameData) {
-        this.frameData = frameData;
+        this.frameData = ByteBuffer.wrap(frameData);
+        invalidate();
+    }
+
+    /**
+     * Sets the compressed image data without copying it.
+     *
+     * @param frameData the compressed image data, its remaining bytes are used
+     */
+    public void setFrameData(ByteBuffer frameData) {
+        this.frameData = frameData.slice();
+        invalidate();
     }
 
     /**
      * Returns the compressed image data.
+     * <p>
+     * When the data is not backed by a whole array, it is copied.
+     * </p>
      *
      * @return the compressed image data
      */
     public byte[] getFrameData() {
-        return frameData;
+        return toByteArray(frameData);
+    }
+
+    /**
+     * Returns the compressed image data without copying it.
+     *
+     * @return a new buffer sharing the content of the image data
+     */
+    public ByteBuffer getFrameDataBuffer() {
+        return frameData.duplicate();
     }
 }
@@ -1,5 +1,7 @@
 package com.jpexs.images.apng.chunks;
 
+import java.nio.ByteBuffer;
+
 /**
  * IEND Image End Chunk.
  * <p>
@@ -16,6 +18,11 @@ public class Iend extends Chunk {
      */
     public static final String TYPE = "IEND";
 
+    /**
+     * Chunk type identifier packed to an int.
+     */
+    public static final int TYPE_CODE = 0x49454E44;
+
     /**
      * Constructs an IEND chunk from raw data.
      *
@@ -25,6 +32,15 @@ public class Iend extends Chunk {
         super(TYPE, data);
     }
 
+    /**
+     * Constructs an IEND chunk referencing raw data without copying it.
+     *
+     * @param data the raw chunk data, its remaining bytes are used
+     */
+    public Iend(ByteBuffer data) {
+        super(TYPE, data);
+    }
+
     /**
      * Constructs an IEND chunk with no data.
      */
@@ -3,6 +3,7 @@ package com.jpexs.images.apng.chunks;
 import com.jpexs.images.apng.PngInputStream;
 import com.jpexs.images.apng.PngOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * IHDR Image header.
@@ -55,6 +56,11 @@ public class Ihdr extends Chunk {
      */
     public static final String TYPE = "IHDR";
 
+    /**
+     * Chunk type identifier packed to an int.
+     */
+    public static final int TYPE_CODE = 0x49484452;
+
     private long width;
     private long height;
     private int bitDepth;
@@ -73,6 +79,15 @@ public class Ihdr extends Chunk {
         super(TYPE, data);
     }
 
+    /**
+     * Constructs an IHDR chunk referencing raw data without copying it.
+     *
+     * @param data the raw chunk data, its remaining bytes are used
+     */
+    public Ihdr(ByteBuffer data) {
+        super(TYPE, data);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -234,6 +249,7 @@ public class Ihdr extends Chunk {
      */
     public void setWidth(long width) {
         this.width = width;
+        invalidate();
     }
 
     /**
@@ -252,6 +268,7 @@ public class Ihdr extends Chunk {
      */
     public void setHeight(long height) {
         this.height = height;
+        invalidate();
     }
 
     /**
@@ -270,6 +287,7 @@ public class Ihdr extends Chunk {
      */
     public void setBitDepth(int bitDepth) {
         this.bitDepth = bitDepth;
+        invalidate();
     }
 
     /**
@@ -288,6 +306,7 @@ public class Ihdr extends Chunk {
      */
     public void setColorType(int colorType) {
         this.colorType = colorType;
+        invalidate();
     }
 
     /**
@@ -306,6 +325,7 @@ public class Ihdr extends Chunk {
      */
     public void setCompressionMethod(int compressionMethod) {
         this.compressionMethod = compressionMethod;
+        invalidate();
     }
 
     /**
@@ -324,6 +344,7 @@ public class Ihdr extends Chunk {
      */
     public void setFilterMethod(int filterMethod) {
         this.filterMethod = filterMethod;
+        invalidate();
     }
 
     /**
@@ -342,6 +363,7 @@ public class Ihdr extends Chunk {
      */
     public void setInterlaceMethod(int interlaceMethod) {
         this.interlaceMethod = interlaceMethod;
+        invalidate();
     }
 
 }
@@ -3,6 +3,7 @@ package com.jpexs.images.apng.chunks;
 import com.jpexs.images.apng.PngInputStream;
 import com.jpexs.images.apng.PngOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * PLTE Palette Chunk.
@@ -21,6 +22,11 @@ public class Plte extends Chunk {
      */
     public static final String TYPE = "PLTE";
 
+    /**
+     * Chunk type identifier packed to an int.
+     */
+    public static final int TYPE_CODE = 0x504C5445;
+
     /**
      * The raw palette data (RGB triplets).
      */
@@ -37,6 +43,15 @@ public class Plte extends Chunk {
         create(data);
     }
 
+    /**
+     * Constructs a PLTE chunk referencing raw data without copying it.
+     *
+     * @param data the raw chunk data, its remaining bytes are used
+     */
+    public Plte(ByteBuffer data) {
+        super(TYPE, data);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -89,5 +104,6 @@ public class Plte extends Chunk {
             throw new IllegalArgumentException("Incorrect palette length: " + paletteData.length + " (not multiple of 3)");
         }
         this.paletteData = paletteData;
+        invalidate();
     }
 }
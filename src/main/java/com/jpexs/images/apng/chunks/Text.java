@@ -4,6 +4,7 @@ import com.jpexs.images.apng.PngInputStream;
 import com.jpexs.images.apng.PngOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * tEXt Text Chunk.
@@ -22,6 +23,11 @@ public class Text extends Chunk {
      */
     public static final String TYPE = "tEXt";
 
+    /**
+     * Chunk type identifier packed to an int.
+     */
+    public static final int TYPE_CODE = 0x74455874;
+
     /**
      * The keyword identifying the text content.
      */
@@ -41,6 +47,15 @@ public class Text extends Chunk {
         super(TYPE, data);
     }
 
+    /**
+     * Constructs a Text chunk referencing raw data without copying it.
+     *
+     * @param data the raw chunk data, its remaining bytes are used
+     */
+    public Text(ByteBuffer data) {
+        super(TYPE, data);
+    }
+
     /**
      * Constructs a Text chunk with the specified keyword and text.
      *
@@ -117,6 +132,7 @@ public class Text extends Chunk {
      */
     public void setKeyword(String keyword) {
         this.keyword = keyword;
+        invalidate();
     }
 
     /**
@@ -135,6 +151,7 @@ public class Text extends Chunk {
      */
     public void setText(String text) {
         this.text = text;
+        invalidate();
     }
 
 }
@@ -3,6 +3,7 @@ package com.jpexs.images.apng.chunks;
 import com.jpexs.images.apng.PngInputStream;
 import com.jpexs.images.apng.PngOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * tRNS Transparency Chunk.
@@ -25,6 +26,11 @@ public class Trns extends Chunk {
      */
     public static final String TYPE = "tRNS";
 
+    /**
+     * Chunk type identifier packed to an int.
+     */
+    public static final int TYPE_CODE = 0x74524E53;
+
     /**
      * The transparency data.
      */
@@ -40,6 +46,15 @@ public class Trns extends Chunk {
         create(transparencyData);
     }
 
+    /**
+     * Constructs a tRNS chunk referencing raw data without copying it.
+     *
+     * @param data the raw chunk data, its remaining bytes are used
+     */
+    public Trns(ByteBuffer data) {
+        super(TYPE, data);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -89,6 +104,7 @@ public class Trns extends Chunk {
      */
     public void setTransparencyData(byte[] transparencyData) {
         this.transparencyData = transparencyData;
+        invalidate();
     }
 
     /**
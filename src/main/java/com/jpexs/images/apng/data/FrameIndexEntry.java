@@ -0,0 +1,211 @@
+package com.jpexs.images.apng.data;
+
+/**
+ * Index entry of single animation frame.
+ * <p>
+ * Describes the fcTL chunk of the frame, its position in the file and the
+ * nearest key frame from which the frame can be composited.
+ * </p>
+ *
+ * @author JPEXS
+ * @see com.jpexs.images.apng.ApngFrameIndex
+ */
+public class FrameIndexEntry {
+
+    /**
+     * Byte offset of the fcTL chunk from the start of the file
+     */
+    private final long offset;
+
+    /**
+     * Sequence number of the fcTL chunk
+     */
+    private final long sequenceNumber;
+
+    /**
+     * X position of the frame region
+     */
+    private final int xOffset;
+
+    /**
+     * Y position of the frame region
+     */
+    private final int yOffset;
+
+    /**
+     * Width of the frame region
+     */
+    private final int width;
+
+    /**
+     * Height of the frame region
+     */
+    private final int height;
+
+    /**
+     * Delay numerator
+     */
+    private final int delayNumerator;
+
+    /**
+     * Delay denominator. 0 == 100
+     */
+    private final int delayDenominator;
+
+    /**
+     * Dispose operation
+     */
+    private final int disposeOp;
+
+    /**
+     * Blend operation
+     */
+    private final int blendOp;
+
+    /**
+     * Index of the nearest key frame at or before this frame
+     */
+    private final int keyFrame;
+
+    /**
+     * Constructs a new FrameIndexEntry.
+     *
+     * @param offset the byte offset of the fcTL chunk
+     * @param sequenceNumber the sequence number of the fcTL chunk
+     * @param xOffset the x position of the frame region
+     * @param yOffset the y position of the frame region
+     * @param width the width of the frame region
+     * @param height the height of the frame region
+     * @param delayNumerator the delay numerator
+     * @param delayDenominator the delay denominator (0 is treated as 100)
+     * @param disposeOp the dispose operation
+     * @param blendOp the blend operation
+     * @param keyFrame the index of the nearest key frame at or before this
+     *     frame
+     */
+    public FrameIndexEntry(long offset, long sequenceNumber, int xOffset, int yOffset, int width, int height,
+            int delayNumerator, int delayDenominator, int disposeOp, int blendOp, int keyFrame) {
+        this.offset = offset;
+        this.sequenceNumber = sequenceNumber;
+        this.xOffset = xOffset;
+        this.yOffset = yOffset;
+        this.width = width;
+        this.height = height;
+        this.delayNumerator = delayNumerator;
+        this.delayDenominator = delayDenominator;
+        this.disposeOp = disposeOp;
+        this.blendOp = blendOp;
+        this.keyFrame = keyFrame;
+    }
+
+    /**
+     * Returns the byte offset of the fcTL chunk from the start of the file.
+     *
+     * @return the offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the sequence number of the fcTL chunk.
+     *
+     * @return the sequence number
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Returns the x position of the frame region.
+     *
+     * @return the x offset in pixels
+     */
+    public int getxOffset() {
+        return xOffset;
+    }
+
+    /**
+     * Returns the y position of the frame region.
+     *
+     * @return the y offset in pixels
+     */
+    public int getyOffset() {
+        return yOffset;
+    }
+
+    /**
+     * Returns the width of the frame region.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the frame region.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the delay numerator.
+     *
+     * @return the delay numerator
+     */
+    public int getDelayNumerator() {
+        return delayNumerator;
+    }
+
+    /**
+     * Returns the delay denominator.
+     *
+     * @return the delay denominator (0 means 100)
+     */
+    public int getDelayDenominator() {
+        return delayDenominator;
+    }
+
+    /**
+     * Returns the dispose operation.
+     *
+     * @return the dispose operation
+     */
+    public int getDisposeOp() {
+        return disposeOp;
+    }
+
+    /**
+     * Returns the blend operation.
+     *
+     * @return the blend operation
+     */
+    public int getBlendOp() {
+        return blendOp;
+    }
+
+    /**
+     * Returns the index of the nearest key frame at or before this frame.
+     * <p>
+     * Compositing frames from the key frame onto a fully transparent canvas
+     * gives the same result as compositing all frames from the start.
+     * </p>
+     *
+     * @return the key frame index
+     */
+    public int getKeyFrame() {
+        return keyFrame;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[frame offset=" + offset + " sequenceNumber=" + sequenceNumber + " xOffset=" + xOffset + " yOffset=" + yOffset + " width=" + width + " height=" + height + " disposeOp=" + disposeOp + " blendOp=" + blendOp + " keyFrame=" + keyFrame + "]";
+    }
+}
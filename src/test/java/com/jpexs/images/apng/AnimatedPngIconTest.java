@@ -0,0 +1,79 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Fctl;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link AnimatedPngIcon} reading frames progressively.
+ *
+ * @author JPEXS
+ */
+public class AnimatedPngIconTest {
+
+    /**
+     * Executor running the task in the calling thread, so the frames are read
+     * when the constructor returns.
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    @Test
+    public void testLoaded() throws IOException {
+        byte[] png = TestPngs.createApng(70, 20, 15, 6, false);
+        AnimatedPngIcon icon = new AnimatedPngIcon(new ByteArrayInputStream(png), new DecodeOptions(), DIRECT);
+        assertTrue(icon.isLoaded());
+        assertNull(icon.getLoadError());
+    }
+
+    @Test
+    public void testRuntimeExceptionRecorded() throws IOException {
+        byte[] png = TestPngs.createApng(71, 20, 15, 6, false);
+        //invalid dispose op of the third frame, with valid CRC
+        int offset = findChunk(png, Fctl.TYPE_CODE, 2);
+        png[offset + 8 + 24] = 5;
+        ByteBuffer buffer = ByteBuffer.wrap(png);
+        buffer.putInt(offset + 8 + 26, (int) Crc.calculate(Fctl.TYPE_CODE, ByteBuffer.wrap(png, offset + 8, 26).slice()));
+
+        AnimatedPngIcon icon = new AnimatedPngIcon(new ByteArrayInputStream(png), new DecodeOptions(), DIRECT);
+        assertTrue(icon.isLoaded());
+        assertTrue(icon.getLoadError().getCause() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testLimitsCountFullFrames() throws IOException {
+        //indexed frames compress to much less than their canvases
+        byte[] png = TestPngs.createApng(72, 30, 20, 10, true);
+        DecodeOptions options = new DecodeOptions();
+        options.setFrameStorage(FrameStorage.COMPRESSED);
+        DecodeLimits limits = new DecodeLimits();
+        limits.setMaxRetainedBytes(15000);
+        options.setLimits(limits);
+        //compressed frames fit
+        AnimatedPngDecoder.decode(new ByteArrayInputStream(png), options);
+
+        AnimatedPngIcon icon = new AnimatedPngIcon(new ByteArrayInputStream(png), options, DIRECT);
+        assertTrue(icon.isLoaded());
+        assertTrue(icon.getLoadError() instanceof DecodeLimitExceededException);
+    }
+
+    /**
+     * Returns offset of the chunk with the specified type.
+     */
+    private static int findChunk(byte[] png, int chunkType, int occurrence) {
+        ByteBuffer buffer = ByteBuffer.wrap(png);
+        int offset = 8;
+        while (offset < png.length) {
+            int length = buffer.getInt(offset);
+            if (buffer.getInt(offset + 4) == chunkType && occurrence-- == 0) {
+                return offset;
+            }
+            offset += 12 + length;
+        }
+        throw new IllegalArgumentException("Chunk not found");
+    }
+}
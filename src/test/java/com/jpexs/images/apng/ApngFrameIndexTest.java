@@ -0,0 +1,154 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.data.AnimatedPngData;
+import com.jpexs.images.apng.data.AnimationFrameData;
+import com.jpexs.images.apng.data.FrameIndexEntry;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link ApngFrameIndex} format and seeking with
+ * {@link ApngFrameReader}.
+ *
+ * @author JPEXS
+ */
+public class ApngFrameIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        byte[] png = TestPngs.createApng(11, 30, 20, 12, false);
+        ApngFrameIndex index = ApngFrameIndex.build(new ByteArrayInputStream(png));
+        assertEquals(12, index.getFrameCount());
+        assertEquals(30, index.getWidth());
+        assertEquals(20, index.getHeight());
+        assertEquals(png.length, index.getSourceLength());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        index.writeTo(baos);
+        ApngFrameIndex read = ApngFrameIndex.readFrom(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(index.getFrameCount(), read.getFrameCount());
+        assertEquals(index.getWidth(), read.getWidth());
+        assertEquals(index.getHeight(), read.getHeight());
+        assertEquals(index.getNumPlays(), read.getNumPlays());
+        assertEquals(index.getSourceLength(), read.getSourceLength());
+        for (int i = 0; i < index.getFrameCount(); i++) {
+            assertEquals(index.getEntry(i).toString(), read.getEntry(i).toString());
+        }
+    }
+
+    @Test
+    public void testInvalidIndex() throws IOException {
+        try {
+            ApngFrameIndex.readFrom(new ByteArrayInputStream("NOTANINDEX".getBytes("US-ASCII")));
+            fail("Invalid index accepted");
+        } catch (IOException ex) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testHugeChunkLength() throws IOException {
+        byte[] png = TestPngs.createApng(13, 10, 10, 2, false);
+        //length of IHDR after the signature
+        png[8] = (byte) 0x80;
+        try {
+            ApngFrameIndex.build(new ByteArrayInputStream(png));
+            fail("Huge chunk length accepted");
+        } catch (IOException ex) {
+            assertEquals("Invalid length 2147483661 of chunk IHDR", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testKeyFrames() throws IOException {
+        byte[] png = TestPngs.createApng(12, 25, 15, 30, false);
+        List<FrameIndexEntry> entries = ApngFrameIndex.build(new ByteArrayInputStream(png)).getEntries();
+        assertEquals(0, entries.get(0).getKeyFrame());
+        for (int i = 1; i < entries.size(); i++) {
+            int keyFrame = entries.get(i).getKeyFrame();
+            assertTrue(keyFrame <= i);
+            assertTrue(keyFrame >= entries.get(i - 1).getKeyFrame());
+        }
+    }
+
+    @Test
+    public void testSeekMatchesSequentialDecoding() throws IOException {
+        for (int seed = 0; seed < 5; seed++) {
+            byte[] png = TestPngs.createApng(20 + seed, 23, 17, 25, seed % 2 == 1);
+            AnimatedPngData sequential = AnimatedPngDecoder.decode(new ByteArrayInputStream(png));
+            File file = folder.newFile();
+            Files.write(file.toPath(), png);
+            ApngFrameIndex index = ApngFrameIndex.build(new ByteArrayInputStream(png));
+            Random random = new Random(seed);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    ApngFrameReader reader = new ApngFrameReader(channel, index)) {
+                for (int i = 0; i < 40; i++) {
+                    int frame = random.nextInt(index.getFrameCount());
+                    AnimationFrameData seeked = reader.seek(frame);
+                    assertSameImage("seed " + seed + " frame " + frame, sequential.getFrame(frame).getImage(), seeked.getImage());
+                    assertEquals(sequential.getFrame(frame).getDelayInMs(), seeked.getDelayInMs());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSeekWithinLimits() throws IOException {
+        byte[] png = TestPngs.createApng(30, 21, 13, 20, false);
+        AnimatedPngData sequential = AnimatedPngDecoder.decode(new ByteArrayInputStream(png));
+        File file = folder.newFile();
+        Files.write(file.toPath(), png);
+        ApngFrameIndex index = ApngFrameIndex.build(new ByteArrayInputStream(png));
+        //limits which the file exactly meets, 8-bit RGBA rows with filter byte
+        long inflatedBytes = 0;
+        for (FrameIndexEntry entry : index.getEntries()) {
+            inflatedBytes += (entry.getWidth() * 4L + 1) * entry.getHeight();
+        }
+        DecodeLimits limits = new DecodeLimits();
+        limits.setMaxFrames(index.getFrameCount());
+        limits.setMaxInflatedBytes(inflatedBytes);
+        DecodeOptions options = new DecodeOptions();
+        options.setLimits(limits);
+        Random random = new Random(1);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                ApngFrameReader reader = new ApngFrameReader(channel, index, options)) {
+            for (int i = 0; i < 60; i++) {
+                int frame = i % 2 == 0 ? index.getFrameCount() - 1 : random.nextInt(index.getFrameCount());
+                assertSameImage("frame " + frame, sequential.getFrame(frame).getImage(), reader.seek(frame).getImage());
+            }
+        }
+    }
+
+    static void assertSameImage(String message, BufferedImage expected, BufferedImage actual) {
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        int[] expectedPixels = expected.getRGB(0, 0, expected.getWidth(), expected.getHeight(), null, 0, expected.getWidth());
+        int[] actualPixels = actual.getRGB(0, 0, actual.getWidth(), actual.getHeight(), null, 0, actual.getWidth());
+        for (int i = 0; i < expectedPixels.length; i++) {
+            if (expectedPixels[i] >>> 24 == 0 && actualPixels[i] >>> 24 == 0) {
+                //color of transparent pixels does not matter
+                expectedPixels[i] = 0;
+                actualPixels[i] = 0;
+            }
+        }
+        assertArrayEquals(message, expectedPixels, actualPixels);
+    }
+}
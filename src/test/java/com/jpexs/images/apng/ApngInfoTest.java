@@ -0,0 +1,94 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Fctl;
+import com.jpexs.images.apng.chunks.Fdat;
+import com.jpexs.images.apng.chunks.Idat;
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.data.AnimatedPngData;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link ApngInfo} probing.
+ *
+ * @author JPEXS
+ */
+public class ApngInfoTest {
+
+    @Test
+    public void testAnimated() throws IOException {
+        byte[] png = TestPngs.createApng(40, 27, 19, 9, true);
+        ApngInfo info = ApngInfo.probe(new ByteArrayInputStream(png), true);
+        assertEquals(27, info.getWidth());
+        assertEquals(19, info.getHeight());
+        assertEquals(8, info.getBitDepth());
+        assertEquals(Ihdr.COLOR_TYPE_INDEXEDCOLOR, info.getColorType());
+        assertTrue(info.isAnimated());
+        assertEquals(9, info.getNumFrames());
+        assertEquals(9, info.getFrameCount());
+        AnimatedPngData data = AnimatedPngDecoder.decode(new ByteArrayInputStream(png));
+        long duration = 0;
+        for (int i = 0; i < data.getFrameCount(); i++) {
+            duration += data.getFrame(i).getDelayInMs();
+        }
+        assertEquals(duration, info.getTotalDurationInMs());
+    }
+
+    @Test
+    public void testNotAnimated() throws IOException {
+        byte[] png = TestPngs.createPng(Ihdr.COLOR_TYPE_GREYSCALE_WITH_ALPHA, 16, true, 0, 5, 3, false, 1);
+        ApngInfo info = ApngInfo.probe(new ByteArrayInputStream(png));
+        assertEquals(5, info.getWidth());
+        assertEquals(3, info.getHeight());
+        assertEquals(16, info.getBitDepth());
+        assertEquals(Ihdr.INTERLACE_METHOD_ADAM7, info.getInterlaceMethod());
+        assertFalse(info.isAnimated());
+        assertEquals(0, info.getFrameCount());
+    }
+
+    @Test
+    public void testEstimateDecodedBytes() throws IOException {
+        byte[] png = TestPngs.createApng(42, 30, 20, 20, false);
+        long frameDataBytes = 0;
+        long subFramePixels = 0;
+        for (Chunk chunk : TestPngs.readChunks(png)) {
+            if (chunk instanceof Idat) {
+                frameDataBytes += ((Idat) chunk).getFrameData().length;
+            } else if (chunk instanceof Fdat) {
+                frameDataBytes += ((Fdat) chunk).getFrameData().length;
+            } else if (chunk instanceof Fctl) {
+                subFramePixels += ((Fctl) chunk).getWidth() * ((Fctl) chunk).getHeight();
+            }
+        }
+        long canvasBytes = 4 * 30 * 20;
+        ApngInfo info = ApngInfo.probe(new ByteArrayInputStream(png));
+        DecodeOptions options = new DecodeOptions();
+        assertEquals((20 + 2) * canvasBytes, info.estimateDecodedBytes(options));
+        options.setFrameStorage(FrameStorage.SPARSE);
+        options.setSnapshotInterval(8);
+        //snapshots of frames 0, 8 and 16
+        assertEquals((3 + 2) * canvasBytes + 4 * subFramePixels, info.estimateDecodedBytes(options));
+        options.setFrameStorage(FrameStorage.COMPRESSED);
+        assertEquals(2 * canvasBytes + frameDataBytes, info.estimateDecodedBytes(options));
+    }
+
+    @Test
+    public void testInvalidCrcOfSkippedChunk() throws IOException {
+        byte[] png = TestPngs.createApng(41, 10, 10, 3, false);
+        //last byte of fdAT CRC before IEND
+        png[png.length - 13] ^= 1;
+        ApngInfo.probe(new ByteArrayInputStream(png), false);
+        try {
+            ApngInfo.probe(new ByteArrayInputStream(png), true);
+            fail("Invalid CRC accepted");
+        } catch (IOException ex) {
+            assertEquals("Invalid CRC value in chunk of type fdAT", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Idat;
+import com.jpexs.images.apng.chunks.Iend;
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.chunks.Text;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of reading chunks by {@link PngInputStream} and
+ * {@link PngBufferReader}.
+ *
+ * @author JPEXS
+ */
+public class ChunkReadingTest {
+
+    private static void putChunk(ByteBuffer buffer, String chunkType, byte[] data) {
+        byte[] typeBytes = chunkType.getBytes(StandardCharsets.US_ASCII);
+        buffer.putInt(data.length);
+        buffer.put(typeBytes);
+        buffer.put(data);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Creates chunks without signature: many empty tEXt chunks followed by
+     * IEND.
+     */
+    private static ByteBuffer createSkippedChunks(int count) {
+        ByteBuffer buffer = ByteBuffer.allocate(count * 12 + 12);
+        for (int i = 0; i < count; i++) {
+            putChunk(buffer, "tEXt", new byte[0]);
+        }
+        putChunk(buffer, "IEND", new byte[0]);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testLargeChunkInSmallReads() throws IOException {
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+        ByteBuffer buffer = ByteBuffer.allocate(data.length + 24);
+        putChunk(buffer, "IDAT", data);
+        putChunk(buffer, "IEND", new byte[0]);
+        //the wrapped stream returns at most 1000 bytes per read
+        PngInputStream pis = new PngInputStream(new FilterInputStream(new ByteArrayInputStream(buffer.array())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        });
+        List<Chunk> chunks = pis.readChunkList();
+        assertEquals(2, chunks.size());
+        assertArrayEquals(data, ((Idat) chunks.get(0)).getFrameData());
+        assertTrue(chunks.get(1) instanceof Iend);
+        assertEquals(buffer.capacity(), pis.getPosition());
+    }
+
+    @Test
+    public void testTruncatedChunk() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(22);
+        putChunk(buffer, "IDAT", new byte[10]);
+        //declare longer data than the stream has
+        buffer.putInt(0, 100);
+        PngInputStream pis = new PngInputStream(new ByteArrayInputStream(buffer.array()));
+        try {
+            pis.readChunk();
+            fail("Truncated chunk accepted");
+        } catch (EOFException ex) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testManySkippedChunksInBuffer() throws IOException {
+        PngBufferReader reader = new PngBufferReader(createSkippedChunks(500000));
+        reader.setChunkFilter(ChunkFilter.DECODING);
+        assertTrue(reader.readChunk() instanceof Iend);
+    }
+
+    @Test
+    public void testManySkippedChunksInStream() throws IOException {
+        PngInputStream pis = new PngInputStream(new ByteArrayInputStream(createSkippedChunks(500000).array()));
+        pis.setChunkFilter(ChunkFilter.DECODING);
+        assertTrue(pis.readChunk() instanceof Iend);
+    }
+
+    @Test
+    public void testRawChunks() throws IOException {
+        byte[] png = TestPngs.createPng(Ihdr.COLOR_TYPE_TRUECOLOR, 8, false, 0, 3, 3, false, 1);
+        PngInputStream pis = new PngInputStream(new ByteArrayInputStream(png));
+        pis.readBytes(8);
+        pis.setChunkFilter(chunkType -> ChunkAction.RAW);
+        Chunk raw = pis.readChunk();
+        assertEquals(Chunk.class, raw.getClass());
+        assertEquals(Ihdr.TYPE, raw.getType());
+        assertEquals(Ihdr.TYPE_CODE, raw.getTypeCode());
+        Chunk parsed = PngInputStream.createChunk(raw.getType(), raw.getDataBuffer());
+        assertEquals(3, ((Ihdr) parsed).getWidth());
+    }
+
+    @Test
+    public void testDecodingFilter() {
+        assertEquals(ChunkAction.SKIP, ChunkFilter.DECODING.getAction("tEXt"));
+        assertEquals(ChunkAction.PARSE, ChunkFilter.DECODING.getAction("fdAT"));
+        assertEquals(ChunkAction.PARSE, ChunkFilter.DECODING.getAction("IDAT"));
+        assertEquals(ChunkAction.RAW, ChunkFilter.DECODING.getAction("gAMA"));
+        assertEquals(ChunkAction.SKIP, ChunkFilter.DECODING.getAction("prVt"));
+    }
+
+    @Test
+    public void testTypeNameFilter() {
+        ChunkFilter filter = ChunkFilter.byTypeName(type -> type.equals("eXIf") ? ChunkAction.SKIP : ChunkAction.RAW);
+        assertEquals(ChunkAction.SKIP, filter.getAction("eXIf"));
+        assertEquals(ChunkAction.SKIP, filter.getAction(Chunk.toTypeCode("eXIf")));
+        assertEquals(ChunkAction.RAW, filter.getAction(Ihdr.TYPE_CODE));
+    }
+
+    @Test
+    public void testTypeCodes() {
+        assertEquals(Ihdr.TYPE_CODE, Chunk.toTypeCode("IHDR"));
+        assertEquals("IHDR", Chunk.toTypeString(Ihdr.TYPE_CODE));
+        assertEquals("fdAT", Chunk.toTypeString(Chunk.toTypeCode("fdAT")));
+        assertEquals(ChunkAction.SKIP, ChunkFilter.DECODING.getAction(Chunk.toTypeCode("tEXt")));
+    }
+
+    @Test
+    public void testChunkLongerThanArray() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putInt(0xC0000000);
+        buffer.put("IDAT".getBytes(StandardCharsets.US_ASCII));
+        PngInputStream pis = new PngInputStream(new ByteArrayInputStream(buffer.array()));
+        try {
+            pis.readChunk();
+            fail("Chunk longer than array accepted");
+        } catch (DecodeLimitExceededException ex) {
+            assertEquals(0xC0000000L, ex.getValue());
+        }
+    }
+
+    @Test
+    public void testSourceCrcKept() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(21);
+        putChunk(buffer, "tEXt", "key\0value".getBytes(StandardCharsets.ISO_8859_1));
+        //CRC which is not verified is kept too
+        buffer.putInt(buffer.limit() - 4, 0x12345678);
+        PngInputStream pis = new PngInputStream(buffer.array());
+        pis.setCrcPolicy(CrcPolicy.NEVER);
+        Text text = (Text) pis.readChunk();
+        assertEquals(0x12345678L, text.getCrc());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new PngOutputStream(baos).writeChunk(text);
+        assertArrayEquals(buffer.array(), baos.toByteArray());
+
+        text.setText("other");
+        assertEquals(Crc.calculate(Text.TYPE_CODE, text.getDataBuffer()), text.getCrc());
+    }
+
+    @Test
+    public void testInvalidCrcInStream() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(12);
+        putChunk(buffer, "IEND", new byte[0]);
+        buffer.put(buffer.limit() - 1, (byte) 0);
+        try {
+            new PngInputStream(buffer.array()).readChunk();
+            fail("Invalid CRC accepted");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().startsWith("Invalid CRC value"));
+        }
+    }
+}
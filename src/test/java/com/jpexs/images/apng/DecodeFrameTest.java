@@ -0,0 +1,43 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.data.AnimatedPngData;
+import com.jpexs.images.apng.data.AnimationFrameData;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares frames extracted by
+ * {@link AnimatedPngDecoder#decodeFrame(java.io.InputStream, int)} with
+ * sequential decoding.
+ *
+ * @author JPEXS
+ */
+public class DecodeFrameTest {
+
+    @Test
+    public void testSameAsSequential() throws IOException {
+        for (int seed = 0; seed < 10; seed++) {
+            byte[] png = TestPngs.createApng(50 + seed, 19, 14, 30, seed % 2 == 1);
+            AnimatedPngData sequential = AnimatedPngDecoder.decode(new ByteArrayInputStream(png));
+            for (int i = 0; i < sequential.getFrameCount(); i++) {
+                AnimationFrameData frame = AnimatedPngDecoder.decodeFrame(new ByteArrayInputStream(png), i);
+                ApngFrameIndexTest.assertSameImage("seed " + seed + " frame " + i, sequential.getFrame(i).getImage(), frame.getImage());
+                assertEquals(sequential.getFrame(i).getDelayInMs(), frame.getDelayInMs());
+            }
+        }
+    }
+
+    @Test
+    public void testFrameOutOfRange() throws IOException {
+        byte[] png = TestPngs.createApng(60, 10, 10, 5, false);
+        try {
+            AnimatedPngDecoder.decodeFrame(new ByteArrayInputStream(png), 5);
+            fail("Frame out of range accepted");
+        } catch (IndexOutOfBoundsException ex) {
+            assertEquals("Frame 5 out of range 0-4", ex.getMessage());
+        }
+    }
+}
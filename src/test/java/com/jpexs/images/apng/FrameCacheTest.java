@@ -0,0 +1,69 @@
+package com.jpexs.images.apng;
+
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of {@link FrameCache} eviction and owners.
+ *
+ * @author JPEXS
+ */
+public class FrameCacheTest {
+
+    private static BufferedImage createImage() {
+        //4 * 10 * 10 bytes
+        return new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        FrameCache cache = new FrameCache(1000);
+        Object owner = new Object();
+        BufferedImage first = createImage();
+        cache.put(owner, 0, first);
+        cache.put(owner, 1, createImage());
+        assertSame(first, cache.get(owner, 0));
+        //frame 1 is the least recently used now
+        cache.put(owner, 2, createImage());
+        assertEquals(2, cache.getCachedFrameCount());
+        assertEquals(800, cache.getCachedBytes());
+        assertNull(cache.peek(owner, 1));
+        assertSame(first, cache.peek(owner, 0));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testOwnersAreSeparate() {
+        FrameCache cache = new FrameCache(10000);
+        Object owner1 = new Object();
+        Object owner2 = new Object();
+        BufferedImage image = createImage();
+        cache.put(owner1, 0, image);
+        assertNull(cache.get(owner2, 0));
+        cache.put(owner2, 0, createImage());
+        cache.removeAll(owner2);
+        assertSame(image, cache.get(owner1, 0));
+        assertEquals(1, cache.getCachedFrameCount());
+        assertEquals(400, cache.getCachedBytes());
+    }
+
+    @Test
+    public void testCollectedOwnerRemoved() throws InterruptedException {
+        FrameCache cache = new FrameCache(10000);
+        Object owner = new Object();
+        cache.put(owner, 0, createImage());
+        cache.put(new Object(), 0, createImage());
+        for (int i = 0; i < 50 && cache.getCachedFrameCount() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, cache.getCachedFrameCount());
+        assertEquals(400, cache.getCachedBytes());
+        assertNotNull(cache.peek(owner, 0));
+    }
+}
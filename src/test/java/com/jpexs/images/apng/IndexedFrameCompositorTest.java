@@ -0,0 +1,78 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.data.AnimatedPngData;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares frames composited in palette index space by
+ * {@link IndexedFrameCompositor} with the ARGB compositing.
+ *
+ * @author JPEXS
+ */
+public class IndexedFrameCompositorTest {
+
+    @Test
+    public void testSameAsArgb() throws IOException {
+        int indexedFrames = 0;
+        int argbFrames = 0;
+        for (int seed = 0; seed < 40; seed++) {
+            byte[] png = TestPngs.createApng(100 + seed, 20 + seed % 13, 15 + seed % 7, 1 + seed % 25, true);
+            AnimatedPngData argb = AnimatedPngDecoder.decode(new ByteArrayInputStream(png));
+            DecodeOptions options = new DecodeOptions();
+            options.setPreservePalette(true);
+            AnimatedPngData indexed = AnimatedPngDecoder.decode(new ByteArrayInputStream(png), options);
+            assertEquals(argb.getFrameCount(), indexed.getFrameCount());
+            for (int i = 0; i < argb.getFrameCount(); i++) {
+                BufferedImage image = indexed.getFrame(i).getImage();
+                if (image.getType() == BufferedImage.TYPE_BYTE_INDEXED) {
+                    indexedFrames++;
+                } else {
+                    argbFrames++;
+                }
+                assertSimilarImage("seed " + seed + " frame " + i, argb.getFrame(i).getImage(), image);
+            }
+        }
+        //partially transparent entries over visible pixels expand some frames
+        assertTrue(indexedFrames > 0);
+        assertTrue(argbFrames > 0);
+    }
+
+    @Test
+    public void testDefaultFrameKeptAsIndexedBackup() throws IOException {
+        //the first frame is the IDAT image
+        byte[] png = TestPngs.createApng(7, 16, 12, 3, true);
+        DecodeOptions options = new DecodeOptions();
+        options.setPreservePalette(true);
+        AnimatedPngData data = AnimatedPngDecoder.decode(new ByteArrayInputStream(png), options);
+        BufferedImage backupImage = data.getBackupImage();
+        assertEquals(BufferedImage.TYPE_BYTE_INDEXED, backupImage.getType());
+        assertSimilarImage("backup image", AnimatedPngDecoder.decode(new ByteArrayInputStream(png)).getBackupImage(), backupImage);
+    }
+
+    /**
+     * Blending of the ARGB canvas may round differently from blending of
+     * palette colors expanded later, by one per channel.
+     */
+    private static void assertSimilarImage(String message, BufferedImage expected, BufferedImage actual) {
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                if (e >>> 24 == 0 && a >>> 24 == 0) {
+                    continue;
+                }
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int diff = Math.abs(((e >> shift) & 0xFF) - ((a >> shift) & 0xFF));
+                    assertTrue(message + ": pixel " + x + "," + y + " is " + Integer.toHexString(a) + ", expected " + Integer.toHexString(e), diff <= 1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Fctl;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link KeyFrameTracker}.
+ *
+ * @author JPEXS
+ */
+public class KeyFrameTrackerTest {
+
+    private static Fctl fctl(int width, int height, int x, int y, int disposeOp, int blendOp) {
+        return new Fctl(0, width, height, x, y, 1, 10, disposeOp, blendOp);
+    }
+
+    @Test
+    public void testFirstFrameIsKeyFrame() {
+        KeyFrameTracker tracker = new KeyFrameTracker(10, 10);
+        assertEquals(0, tracker.addFrame(fctl(5, 5, 1, 1, Fctl.DISPOSE_OP_NONE, Fctl.BLEND_OP_OVER)));
+        assertEquals(0, tracker.addFrame(fctl(5, 5, 2, 2, Fctl.DISPOSE_OP_NONE, Fctl.BLEND_OP_OVER)));
+    }
+
+    @Test
+    public void testFullSourceFrame() {
+        KeyFrameTracker tracker = new KeyFrameTracker(10, 10);
+        tracker.addFrame(fctl(5, 5, 1, 1, Fctl.DISPOSE_OP_NONE, Fctl.BLEND_OP_OVER));
+        assertEquals(1, tracker.addFrame(fctl(10, 10, 0, 0, Fctl.DISPOSE_OP_NONE, Fctl.BLEND_OP_SOURCE)));
+        assertEquals(1, tracker.addFrame(fctl(3, 3, 0, 0, Fctl.DISPOSE_OP_NONE, Fctl.BLEND_OP_OVER)));
+        //over blending shows the previous content through
+        assertEquals(1, tracker.addFrame(fctl(10, 10, 0, 0, Fctl.DISPOSE_OP_NONE, Fctl.BLEND_OP_OVER)));
+    }
+
+    @Test
+    public void testFullFrameDisposedToBackground() {
+        KeyFrameTracker tracker = new KeyFrameTracker(10, 10);
+        tracker.addFrame(fctl(5, 5, 1, 1, Fctl.DISPOSE_OP_NONE, Fctl.BLEND_OP_OVER));
+        assertEquals(0, tracker.addFrame(fctl(10, 10, 0, 0, Fctl.DISPOSE_OP_BACKGROUND, Fctl.BLEND_OP_OVER)));
+        //canvas is clear after the previous frame
+        assertEquals(2, tracker.addFrame(fctl(4, 4, 3, 3, Fctl.DISPOSE_OP_NONE, Fctl.BLEND_OP_OVER)));
+    }
+
+    @Test
+    public void testDisposeToPrevious() {
+        KeyFrameTracker tracker = new KeyFrameTracker(10, 10);
+        //dispose to previous of the first frame clears the canvas
+        assertEquals(0, tracker.addFrame(fctl(5, 5, 1, 1, Fctl.DISPOSE_OP_PREVIOUS, Fctl.BLEND_OP_OVER)));
+        assertEquals(1, tracker.addFrame(fctl(5, 5, 1, 1, Fctl.DISPOSE_OP_NONE, Fctl.BLEND_OP_OVER)));
+        //full source frame restored afterwards is not a key frame for following frames
+        assertEquals(1, tracker.addFrame(fctl(10, 10, 0, 0, Fctl.DISPOSE_OP_PREVIOUS, Fctl.BLEND_OP_SOURCE)));
+        assertEquals(1, tracker.addFrame(fctl(2, 2, 0, 0, Fctl.DISPOSE_OP_NONE, Fctl.BLEND_OP_OVER)));
+    }
+}
@@ -0,0 +1,218 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Actl;
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Fctl;
+import com.jpexs.images.apng.chunks.Fdat;
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.chunks.Plte;
+import com.jpexs.images.apng.chunks.Trns;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link PngPushParser} state machine across fragment boundaries.
+ *
+ * @author JPEXS
+ */
+public class PngPushParserTest {
+
+    /**
+     * Records visited chunks as strings, chunk data is copied as it may be
+     * reused after the callback.
+     */
+    private static class RecordingVisitor extends ChunkVisitor {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onIhdr(Ihdr ihdr) {
+            events.add("IHDR " + ihdr.getWidth() + "x" + ihdr.getHeight() + " " + ihdr.getColorType());
+        }
+
+        @Override
+        public void onActl(Actl actl) {
+            events.add("acTL " + actl.getNumFrames());
+        }
+
+        @Override
+        public void onPlte(Plte plte) {
+            events.add("PLTE " + Arrays.toString(plte.getPaletteData()));
+        }
+
+        @Override
+        public void onTrns(Trns trns) {
+            events.add("tRNS " + Arrays.toString(trns.getTransparencyData()));
+        }
+
+        @Override
+        public void onFctl(Fctl fctl) {
+            events.add("fcTL " + fctl.getSequenceNumber() + " " + fctl.getWidth() + "x" + fctl.getHeight());
+        }
+
+        @Override
+        public void onIdat(ByteBuffer data) {
+            events.add("IDAT " + toString(data));
+        }
+
+        @Override
+        public void onFdat(long sequenceNumber, ByteBuffer data) {
+            events.add("fdAT " + sequenceNumber + " " + toString(data));
+        }
+
+        @Override
+        public void onUnknown(int chunkType, ByteBuffer data) {
+            events.add(Chunk.toTypeString(chunkType) + " " + toString(data));
+        }
+
+        @Override
+        public void onIend() {
+            events.add("IEND");
+        }
+
+        private static String toString(ByteBuffer data) {
+            byte[] bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            return Arrays.toString(bytes);
+        }
+    }
+
+    private static List<String> pull(byte[] png) throws IOException {
+        RecordingVisitor visitor = new RecordingVisitor();
+        PngParser.parse(new ByteArrayInputStream(png), visitor);
+        return visitor.events;
+    }
+
+    @Test
+    public void testByteByByte() throws IOException {
+        for (boolean indexed : new boolean[]{false, true}) {
+            byte[] png = TestPngs.createApng(indexed ? 1 : 2, 13, 7, 5, indexed);
+            RecordingVisitor visitor = new RecordingVisitor();
+            PngPushParser parser = new PngPushParser(visitor);
+            ByteBuffer fragment = ByteBuffer.allocate(1);
+            for (byte b : png) {
+                assertFalse(parser.isFinished());
+                fragment.clear();
+                fragment.put(b);
+                fragment.flip();
+                parser.feed(fragment);
+                assertFalse(fragment.hasRemaining());
+            }
+            parser.end();
+            assertTrue(parser.isFinished());
+            assertEquals(png.length, parser.getPosition());
+            assertEquals(pull(png), visitor.events);
+        }
+    }
+
+    @Test
+    public void testRandomFragments() throws IOException {
+        Random random = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            byte[] png = TestPngs.createApng(i, 20, 11, 1 + i % 6, i % 2 == 0);
+            RecordingVisitor visitor = new RecordingVisitor();
+            PngPushParser parser = new PngPushParser(visitor);
+            int offset = 0;
+            while (offset < png.length) {
+                int length = Math.min(png.length - offset, 1 + random.nextInt(100));
+                parser.feed(ByteBuffer.wrap(png, offset, length));
+                offset += length;
+            }
+            parser.end();
+            assertEquals(pull(png), visitor.events);
+        }
+    }
+
+    @Test
+    public void testDataAfterIendIgnored() throws IOException {
+        byte[] png = TestPngs.createApng(4, 8, 8, 2, false);
+        byte[] extended = Arrays.copyOf(png, png.length + 10);
+        RecordingVisitor visitor = new RecordingVisitor();
+        PngPushParser parser = new PngPushParser(visitor);
+        parser.feed(ByteBuffer.wrap(extended));
+        parser.end();
+        assertEquals(pull(png), visitor.events);
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] png = TestPngs.createApng(5, 8, 8, 2, false);
+        PngPushParser parser = new PngPushParser(new ChunkVisitor());
+        parser.feed(ByteBuffer.wrap(png, 0, png.length - 5));
+        assertFalse(parser.isFinished());
+        try {
+            parser.end();
+            fail("Truncated data accepted");
+        } catch (EOFException ex) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testInvalidSignature() throws IOException {
+        byte[] png = TestPngs.createApng(6, 8, 8, 2, false);
+        png[1] = 'X';
+        try {
+            new PngPushParser(new ChunkVisitor()).feed(ByteBuffer.wrap(png));
+            fail("Invalid signature accepted");
+        } catch (IOException ex) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testInvalidCrc() throws IOException {
+        byte[] png = TestPngs.createApng(7, 8, 8, 2, false);
+        //last byte of the CRC of the last fdAT
+        png[png.length - 13] ^= 1;
+        try {
+            new PngPushParser(new ChunkVisitor()).feed(ByteBuffer.wrap(png));
+            fail("Invalid CRC accepted");
+        } catch (IOException ex) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testMaxChunkLength() throws IOException {
+        byte[] png = TestPngs.createApng(8, 16, 16, 2, false);
+        PngPushParser parser = new PngPushParser(new ChunkVisitor());
+        parser.setMaxChunkLength(20);
+        try {
+            parser.feed(ByteBuffer.wrap(png));
+            fail("Chunk over the limit accepted");
+        } catch (DecodeLimitExceededException ex) {
+            assertEquals(20, ex.getLimit());
+        }
+    }
+
+    @Test
+    public void testSkippedChunks() throws IOException {
+        byte[] png = TestPngs.createApng(9, 10, 10, 3, false);
+        RecordingVisitor visitor = new RecordingVisitor();
+        PngPushParser parser = new PngPushParser(visitor);
+        parser.setChunkFilter(chunkType -> chunkType == Fdat.TYPE_CODE ? ChunkAction.SKIP : ChunkAction.PARSE);
+        for (byte b : png) {
+            parser.feed(ByteBuffer.wrap(new byte[]{b}));
+        }
+        parser.end();
+        List<String> expected = new ArrayList<>();
+        for (String event : pull(png)) {
+            if (!event.startsWith("fdAT")) {
+                expected.add(event);
+            }
+        }
+        assertEquals(expected, visitor.events);
+    }
+}
@@ -0,0 +1,215 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Idat;
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.chunks.Plte;
+import com.jpexs.images.apng.chunks.Trns;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares {@link PngRasterDecoder} with ImageIO on images covering the same
+ * cases as PngSuite - all color types and bit depths, all filter types,
+ * interlacing and transparency.
+ *
+ * @author JPEXS
+ */
+public class PngRasterDecoderTest {
+
+    private static final int[][] BIT_DEPTHS = {
+        {Ihdr.COLOR_TYPE_GREYSCALE, 1, 2, 4, 8, 16},
+        {Ihdr.COLOR_TYPE_TRUECOLOR, 8, 16},
+        {Ihdr.COLOR_TYPE_INDEXEDCOLOR, 1, 2, 4, 8},
+        {Ihdr.COLOR_TYPE_GREYSCALE_WITH_ALPHA, 8, 16},
+        {Ihdr.COLOR_TYPE_TRUECOLOR_WITH_ALPHA, 8, 16}
+    };
+
+    /**
+     * Image sizes, including the small ones of PngSuite s01-s09 series where
+     * some Adam7 passes are empty.
+     */
+    private static final int[][] SIZES = {{1, 1}, {2, 2}, {3, 3}, {5, 5}, {7, 7}, {9, 9}, {32, 32}, {39, 17}};
+
+    @Test
+    public void testAllFormats() throws IOException {
+        int seed = 0;
+        for (int[] depths : BIT_DEPTHS) {
+            int colorType = depths[0];
+            boolean trnsAllowed = colorType == Ihdr.COLOR_TYPE_GREYSCALE || colorType == Ihdr.COLOR_TYPE_TRUECOLOR || colorType == Ihdr.COLOR_TYPE_INDEXEDCOLOR;
+            for (int d = 1; d < depths.length; d++) {
+                for (boolean interlaced : new boolean[]{false, true}) {
+                    for (int filterType = TestPngs.MIXED_FILTERS; filterType <= 4; filterType++) {
+                        for (int[] size : SIZES) {
+                            for (boolean withTrns : trnsAllowed ? new boolean[]{false, true} : new boolean[]{false}) {
+                                byte[] png = TestPngs.createPng(colorType, depths[d], interlaced, filterType, size[0], size[1], withTrns, seed++);
+                                assertSameAsImageIO("colorType " + colorType + ", bitDepth " + depths[d] + ", interlaced " + interlaced
+                                        + ", filter " + filterType + ", size " + size[0] + "x" + size[1] + ", tRNS " + withTrns, png);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidFilterType() throws IOException {
+        byte[] png = TestPngs.createPng(Ihdr.COLOR_TYPE_TRUECOLOR, 8, false, 0, 4, 4, false, 1);
+        List<Chunk> chunks = TestPngs.readChunks(png);
+        Ihdr ihdr = (Ihdr) chunks.get(0);
+        List<ByteBuffer> data = new ArrayList<>();
+        java.util.zip.Deflater deflater = new java.util.zip.Deflater();
+        byte[] raw = new byte[4 * (1 + 4 * 3)];
+        raw[0] = 5;
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] compressed = new byte[256];
+        int length = deflater.deflate(compressed);
+        data.add(ByteBuffer.wrap(compressed, 0, length));
+        try {
+            new PngRasterDecoder(ihdr, null, null).decode(data, 4, 4);
+            fail("Invalid filter type accepted");
+        } catch (IOException ex) {
+            assertEquals("Invalid filter type 5", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testTruncatedData() throws IOException {
+        byte[] png = TestPngs.createPng(Ihdr.COLOR_TYPE_TRUECOLOR_WITH_ALPHA, 8, true, TestPngs.MIXED_FILTERS, 16, 16, false, 2);
+        List<ByteBuffer> data = new ArrayList<>();
+        Ihdr ihdr = null;
+        for (Chunk chunk : TestPngs.readChunks(png)) {
+            if (chunk instanceof Ihdr) {
+                ihdr = (Ihdr) chunk;
+            }
+            if (chunk instanceof Idat) {
+                data.add(ByteBuffer.wrap(((Idat) chunk).getFrameData()));
+            }
+        }
+        ByteBuffer first = data.get(0);
+        List<ByteBuffer> truncated = new ArrayList<>();
+        truncated.add((ByteBuffer) first.limit(first.limit() / 2));
+        try {
+            new PngRasterDecoder(ihdr, null, null).decode(truncated, 16, 16);
+            fail("Truncated data accepted");
+        } catch (IOException ex) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testIsSupported() {
+        assertTrue(PngRasterDecoder.isSupported(new Ihdr(1, 1, 16, Ihdr.COLOR_TYPE_GREYSCALE, 0, 0, 1)));
+        assertTrue(PngRasterDecoder.isSupported(new Ihdr(1, 1, 1, Ihdr.COLOR_TYPE_INDEXEDCOLOR, 0, 0, 0)));
+        Ihdr ihdr = new Ihdr(1, 1, 8, Ihdr.COLOR_TYPE_INDEXEDCOLOR, 0, 0, 0);
+        ihdr.setBitDepth(16);
+        assertFalse(PngRasterDecoder.isSupported(ihdr));
+        ihdr = new Ihdr(1, 1, 8, Ihdr.COLOR_TYPE_TRUECOLOR, 0, 0, 0);
+        ihdr.setBitDepth(4);
+        assertFalse(PngRasterDecoder.isSupported(ihdr));
+        ihdr = new Ihdr(1, 1, 8, Ihdr.COLOR_TYPE_TRUECOLOR, 0, 0, 0);
+        ihdr.setColorType(5);
+        assertFalse(PngRasterDecoder.isSupported(ihdr));
+        ihdr = new Ihdr(1, 1, 8, Ihdr.COLOR_TYPE_TRUECOLOR, 0, 0, 0);
+        ihdr.setInterlaceMethod(2);
+        assertFalse(PngRasterDecoder.isSupported(ihdr));
+    }
+
+    private static void assertSameAsImageIO(String message, byte[] png) throws IOException {
+        Ihdr ihdr = null;
+        Plte plte = null;
+        Trns trns = null;
+        List<ByteBuffer> data = new ArrayList<>();
+        for (Chunk chunk : TestPngs.readChunks(png)) {
+            if (chunk instanceof Ihdr) {
+                ihdr = (Ihdr) chunk;
+            } else if (chunk instanceof Plte) {
+                plte = (Plte) chunk;
+            } else if (chunk instanceof Trns) {
+                trns = (Trns) chunk;
+            } else if (chunk instanceof Idat) {
+                data.add(ByteBuffer.wrap(((Idat) chunk).getFrameData()));
+            }
+        }
+        int width = (int) ihdr.getWidth();
+        int height = (int) ihdr.getHeight();
+        BufferedImage expected = toArgb(ImageIO.read(new ByteArrayInputStream(png)), ihdr, trns);
+        BufferedImage actual = new PngRasterDecoder(ihdr, plte, trns).decode(data, width, height);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, actual.getType());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                if (e >>> 24 == 0 && a >>> 24 == 0) {
+                    //color of transparent pixels does not matter
+                    continue;
+                }
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int diff = Math.abs(((e >> shift) & 0xFF) - ((a >> shift) & 0xFF));
+                    if (diff > 1) {
+                        fail(message + ": pixel " + x + "," + y + " is " + Integer.toHexString(a) + ", expected " + Integer.toHexString(e));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts image read by ImageIO to ARGB.
+     * <p>
+     * ImageIO reads greyscale PNGs to linear gray color space, so they are
+     * gamma corrected when drawn, and it compares tRNS of greyscale images
+     * with bit depth below 8 to samples already scaled to 8 bits. Greyscale
+     * images are therefore converted from their raster samples.
+     * </p>
+     */
+    private static BufferedImage toArgb(BufferedImage image, Ihdr ihdr, Trns trns) {
+        int colorType = ihdr.getColorType();
+        if (colorType == Ihdr.COLOR_TYPE_GREYSCALE || colorType == Ihdr.COLOR_TYPE_GREYSCALE_WITH_ALPHA) {
+            Raster raster = image.getRaster();
+            int maxSample = (1 << raster.getSampleModel().getSampleSize(0)) - 1;
+            int maxOriginalSample = (1 << ihdr.getBitDepth()) - 1;
+            int transparentGray = -1;
+            if (trns != null) {
+                byte[] trnsData = trns.getTransparencyData();
+                transparentGray = ((trnsData[0] & 0xFF) << 8) | (trnsData[1] & 0xFF);
+            }
+            BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    int sample = raster.getSample(x, y, 0);
+                    int gray = Math.round(sample * 255f / maxSample);
+                    int alpha = 255;
+                    if (colorType == Ihdr.COLOR_TYPE_GREYSCALE_WITH_ALPHA) {
+                        alpha = Math.round(raster.getSample(x, y, 1) * 255f / maxSample);
+                    } else if (Math.round(sample * (float) maxOriginalSample / maxSample) == transparentGray) {
+                        alpha = 0;
+                    }
+                    result.setRGB(x, y, (alpha << 24) | (gray << 16) | (gray << 8) | gray);
+                }
+            }
+            return result;
+        }
+        BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return result;
+    }
+}
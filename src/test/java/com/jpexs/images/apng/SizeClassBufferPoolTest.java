@@ -0,0 +1,73 @@
+package com.jpexs.images.apng;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link SizeClassBufferPool} size classes and retention.
+ *
+ * @author JPEXS
+ */
+public class SizeClassBufferPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+        SizeClassBufferPool pool = new SizeClassBufferPool(0, 0);
+        for (int length = 1; length < 100000; length += 1 + length / 50) {
+            int[] ints = pool.borrowInts(length);
+            assertTrue(ints.length >= length);
+            assertTrue("length " + length + " rounded to " + ints.length, ints.length <= Math.max(64, length + length / 8 + 1));
+            byte[] bytes = pool.borrowBytes(length);
+            assertEquals(ints.length, bytes.length);
+        }
+    }
+
+    @Test
+    public void testReuseInSameClass() {
+        SizeClassBufferPool pool = new SizeClassBufferPool(1024 * 1024, 0);
+        int[] ints = pool.borrowInts(1000);
+        pool.returnInts(ints);
+        assertEquals(ints.length * 4L, pool.getRetainedBytes());
+        //any length of the same class gets the array back
+        assertSame(ints, pool.borrowInts(ints.length - 10));
+        assertEquals(0, pool.getRetainedBytes());
+        pool.returnInts(ints);
+        assertNotSame(ints, pool.borrowInts(ints.length * 2));
+
+        byte[] bytes = pool.borrowBytes(5000);
+        pool.returnBytes(bytes);
+        assertSame(bytes, pool.borrowBytes(bytes.length));
+    }
+
+    @Test
+    public void testThreadCache() {
+        SizeClassBufferPool pool = new SizeClassBufferPool(0, 64 * 1024);
+        int[] ints = pool.borrowInts(256);
+        pool.returnInts(ints);
+        //thread cached arrays are not counted as retained
+        assertEquals(0, pool.getRetainedBytes());
+        assertSame(ints, pool.borrowInts(256));
+    }
+
+    @Test
+    public void testForeignArraysNotRetained() {
+        SizeClassBufferPool pool = new SizeClassBufferPool(1024 * 1024, 0);
+        //not a class length, so it does not come from the pool
+        pool.returnInts(new int[1001]);
+        pool.returnBytes(new byte[77]);
+        assertEquals(0, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void testRetainedLimit() {
+        SizeClassBufferPool pool = new SizeClassBufferPool(10000, 0);
+        int[] first = pool.borrowInts(2000);
+        int[] second = pool.borrowInts(2000);
+        pool.returnInts(first);
+        pool.returnInts(second);
+        assertEquals(first.length * 4L, pool.getRetainedBytes());
+    }
+}
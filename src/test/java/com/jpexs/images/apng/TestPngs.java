@@ -0,0 +1,265 @@
+package com.jpexs.images.apng;
+
+import com.jpexs.images.apng.chunks.Actl;
+import com.jpexs.images.apng.chunks.Chunk;
+import com.jpexs.images.apng.chunks.Fctl;
+import com.jpexs.images.apng.chunks.Fdat;
+import com.jpexs.images.apng.chunks.Idat;
+import com.jpexs.images.apng.chunks.Iend;
+import com.jpexs.images.apng.chunks.Ihdr;
+import com.jpexs.images.apng.chunks.Plte;
+import com.jpexs.images.apng.chunks.Trns;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Builds PNG and APNG test data byte by byte, independently of the encoder.
+ *
+ * @author JPEXS
+ */
+class TestPngs {
+
+    private static final int[] ADAM7_START_ROW = {0, 0, 4, 0, 2, 0, 1};
+    private static final int[] ADAM7_START_COL = {0, 4, 0, 2, 0, 1, 0};
+    private static final int[] ADAM7_ROW_INCREMENT = {8, 8, 8, 4, 4, 2, 2};
+    private static final int[] ADAM7_COL_INCREMENT = {8, 8, 4, 4, 2, 2, 1};
+
+    /**
+     * Filter type meaning that each row gets a random filter.
+     */
+    static final int MIXED_FILTERS = -1;
+
+    private TestPngs() {
+    }
+
+    /**
+     * Creates a PNG image with random samples, like images of PngSuite.
+     *
+     * @param colorType the color type
+     * @param bitDepth the bit depth
+     * @param interlaced whether Adam7 interlacing is used
+     * @param filterType the filter type of all rows, or {@link #MIXED_FILTERS}
+     * @param width the image width
+     * @param height the image height
+     * @param withTrns whether to add tRNS chunk
+     * @param seed the random seed
+     * @return the PNG data
+     * @throws IOException on error
+     */
+    static byte[] createPng(int colorType, int bitDepth, boolean interlaced, int filterType, int width, int height, boolean withTrns, long seed) throws IOException {
+        Random random = new Random(seed);
+        int channels = PngRasterDecoder.getChannelCount(colorType);
+        int maxSample = (1 << bitDepth) - 1;
+        int paletteSize = colorType == Ihdr.COLOR_TYPE_INDEXEDCOLOR ? Math.min(1 << bitDepth, 1 + random.nextInt(256)) : 0;
+        int[] samples = new int[width * height * channels];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = paletteSize > 0 ? random.nextInt(paletteSize) : random.nextInt(maxSample + 1);
+        }
+
+        Png png = new Png();
+        png.addChunk(new Ihdr(width, height, bitDepth, colorType, 0, 0, interlaced ? Ihdr.INTERLACE_METHOD_ADAM7 : Ihdr.INTERLACE_METHOD_NOINTERLACE));
+        if (paletteSize > 0) {
+            byte[] palette = new byte[paletteSize * 3];
+            random.nextBytes(palette);
+            png.addChunk(new Plte(palette));
+        }
+        if (withTrns) {
+            byte[] trnsData;
+            if (paletteSize > 0) {
+                trnsData = new byte[random.nextInt(paletteSize + 1)];
+                random.nextBytes(trnsData);
+            } else {
+                //transparent color of the first pixel, so it is used
+                trnsData = new byte[channels * 2];
+                for (int c = 0; c < channels; c++) {
+                    trnsData[c * 2] = (byte) (samples[c] >> 8);
+                    trnsData[c * 2 + 1] = (byte) samples[c];
+                }
+            }
+            Trns trns = new Trns(trnsData);
+            trns.setTransparencyData(trnsData);
+            png.addChunk(trns);
+        }
+        byte[] data = compress(filterImage(samples, width, height, channels, bitDepth, interlaced, filterType, random));
+        //split to several IDAT chunks
+        int offset = 0;
+        while (offset < data.length) {
+            int length = Math.min(data.length - offset, 1 + random.nextInt(Math.max(1, data.length / 2)));
+            png.addChunk(new Idat(Arrays.copyOfRange(data, offset, offset + length)));
+            offset += length;
+        }
+        png.addChunk(new Iend());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        png.writeTo(baos);
+        return baos.toByteArray();
+    }
+
+    private static byte[] filterImage(int[] samples, int width, int height, int channels, int bitDepth, boolean interlaced, int filterType, Random random) {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        if (!interlaced) {
+            filterPass(samples, width, 0, 0, 1, 1, width, height, channels, bitDepth, filterType, random, raw);
+            return raw.toByteArray();
+        }
+        for (int pass = 0; pass < 7; pass++) {
+            int passWidth = (width - ADAM7_START_COL[pass] + ADAM7_COL_INCREMENT[pass] - 1) / ADAM7_COL_INCREMENT[pass];
+            int passHeight = (height - ADAM7_START_ROW[pass] + ADAM7_ROW_INCREMENT[pass] - 1) / ADAM7_ROW_INCREMENT[pass];
+            if (passWidth <= 0 || passHeight <= 0) {
+                continue;
+            }
+            filterPass(samples, width, ADAM7_START_COL[pass], ADAM7_START_ROW[pass], ADAM7_COL_INCREMENT[pass], ADAM7_ROW_INCREMENT[pass],
+                    passWidth, passHeight, channels, bitDepth, filterType, random, raw);
+        }
+        return raw.toByteArray();
+    }
+
+    private static void filterPass(int[] samples, int width, int startCol, int startRow, int colIncrement, int rowIncrement,
+            int passWidth, int passHeight, int channels, int bitDepth, int filterType, Random random, ByteArrayOutputStream raw) {
+        int bitsPerPixel = channels * bitDepth;
+        int rowLength = (passWidth * bitsPerPixel + 7) / 8;
+        int bytesPerPixel = Math.max(1, bitsPerPixel / 8);
+        byte[] previous = new byte[rowLength];
+        for (int y = 0; y < passHeight; y++) {
+            byte[] row = new byte[rowLength];
+            int bitPos = 0;
+            for (int x = 0; x < passWidth; x++) {
+                int pixel = ((startRow + y * rowIncrement) * width + startCol + x * colIncrement) * channels;
+                for (int c = 0; c < channels; c++) {
+                    int sample = samples[pixel + c];
+                    if (bitDepth == 16) {
+                        row[bitPos / 8] = (byte) (sample >> 8);
+                        row[bitPos / 8 + 1] = (byte) sample;
+                    } else {
+                        row[bitPos / 8] |= (byte) (sample << (8 - bitDepth - bitPos % 8));
+                    }
+                    bitPos += bitDepth;
+                }
+            }
+            int type = filterType == MIXED_FILTERS ? random.nextInt(5) : filterType;
+            raw.write(type);
+            for (int i = 0; i < rowLength; i++) {
+                int a = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+                int b = previous[i] & 0xFF;
+                int c = i >= bytesPerPixel ? previous[i - bytesPerPixel] & 0xFF : 0;
+                int predictor;
+                switch (type) {
+                    case 0:
+                        predictor = 0;
+                        break;
+                    case 1:
+                        predictor = a;
+                        break;
+                    case 2:
+                        predictor = b;
+                        break;
+                    case 3:
+                        predictor = (a + b) >> 1;
+                        break;
+                    default:
+                        int p = a + b - c;
+                        int pa = Math.abs(p - a);
+                        int pb = Math.abs(p - b);
+                        int pc = Math.abs(p - c);
+                        predictor = pa <= pb && pa <= pc ? a : (pb <= pc ? b : c);
+                        break;
+                }
+                raw.write((row[i] - predictor) & 0xFF);
+            }
+            previous = row;
+        }
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(baos)) {
+            dos.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Creates an animated PNG with random frame regions, dispose and blend
+     * operations, 8-bit RGBA or indexed with partially transparent palette
+     * entries.
+     *
+     * @param seed the random seed
+     * @param width the canvas width
+     * @param height the canvas height
+     * @param frameCount the number of frames
+     * @param indexed whether the image is indexed
+     * @return the APNG data
+     * @throws IOException on error
+     */
+    static byte[] createApng(long seed, int width, int height, int frameCount, boolean indexed) throws IOException {
+        Random random = new Random(seed);
+        int colorType = indexed ? Ihdr.COLOR_TYPE_INDEXEDCOLOR : Ihdr.COLOR_TYPE_TRUECOLOR_WITH_ALPHA;
+        int channels = indexed ? 1 : 4;
+        Png png = new Png();
+        png.addChunk(new Ihdr(width, height, 8, colorType, 0, 0, 0));
+        png.addChunk(new Actl(frameCount, 0));
+        if (indexed) {
+            byte[] palette = new byte[16 * 3];
+            random.nextBytes(palette);
+            png.addChunk(new Plte(palette));
+            byte[] alpha = new byte[16];
+            for (int i = 0; i < alpha.length; i++) {
+                alpha[i] = (byte) (i == 0 ? 0 : i < 4 ? 128 : 255);
+            }
+            Trns trns = new Trns(alpha);
+            trns.setTransparencyData(alpha);
+            png.addChunk(trns);
+        }
+        png.addChunk(new Chunk("prIv", new byte[]{1, 2, 3}));
+        long sequenceNumber = 0;
+        for (int i = 0; i < frameCount; i++) {
+            int frameWidth = width;
+            int frameHeight = height;
+            int x = 0;
+            int y = 0;
+            if (i > 0 && random.nextInt(5) != 0) {
+                frameWidth = 1 + random.nextInt(width);
+                frameHeight = 1 + random.nextInt(height);
+                x = random.nextInt(width - frameWidth + 1);
+                y = random.nextInt(height - frameHeight + 1);
+            }
+            int[] samples = new int[frameWidth * frameHeight * channels];
+            for (int s = 0; s < samples.length; s++) {
+                if (indexed) {
+                    samples[s] = random.nextInt(16);
+                } else if (s % 4 == 3) {
+                    int alpha = random.nextInt(4);
+                    samples[s] = alpha == 0 ? 0 : alpha == 1 ? 255 : random.nextInt(256);
+                } else {
+                    samples[s] = random.nextInt(256);
+                }
+            }
+            byte[] data = compress(filterImage(samples, frameWidth, frameHeight, channels, 8, false, MIXED_FILTERS, random));
+            png.addChunk(new Fctl(sequenceNumber++, frameWidth, frameHeight, x, y, 1 + i % 7, 10, random.nextInt(3), random.nextInt(2)));
+            if (i == 0) {
+                png.addChunk(new Idat(data));
+            } else {
+                png.addChunk(new Fdat(sequenceNumber++, data));
+            }
+        }
+        png.addChunk(new Iend());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        png.writeTo(baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Returns all chunks of the PNG data.
+     *
+     * @param data the PNG data
+     * @return the chunks
+     * @throws IOException on error
+     */
+    static List<Chunk> readChunks(byte[] data) throws IOException {
+        return new ArrayList<>(new Png(new ByteArrayInputStream(data)).getChunks());
+    }
+}